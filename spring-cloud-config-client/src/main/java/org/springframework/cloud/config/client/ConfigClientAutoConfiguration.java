@@ -21,6 +21,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.refresh.ContextRefresher;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -64,6 +65,31 @@ public class ConfigClientAutoConfiguration {
 		}
 	}
 
+	@Configuration
+	@ConditionalOnClass(ContextRefresher.class)
+	@ConditionalOnBean(ConfigServicePropertySourceLocator.class)
+	protected static class ConfigServerSnapshotConfiguration {
+
+		@Bean
+		public ConfigServerSnapshotRefresher configServerSnapshotRefresher(
+				ConfigServicePropertySourceLocator locator) {
+			return new ConfigServerSnapshotRefresher(locator);
+		}
+	}
+
+	@Configuration
+	@ConditionalOnClass(ContextRefresher.class)
+	@ConditionalOnBean(ConfigServicePropertySourceLocator.class)
+	@ConditionalOnProperty("spring.cloud.config.watch.enabled")
+	protected static class ConfigServerWatchConfiguration {
+
+		@Bean
+		public ConfigServerWatcher configServerWatcher(
+				ConfigServicePropertySourceLocator locator) {
+			return new ConfigServerWatcher(locator);
+		}
+	}
+
 	@ConfigurationProperties("health.config")
 	public static class Health {
 		/**
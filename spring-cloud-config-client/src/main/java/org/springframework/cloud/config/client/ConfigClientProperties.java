@@ -66,7 +66,9 @@ public class ConfigClientProperties {
 	private String password;
 
 	/**
-	 * The URI of the remote server (default http://localhost:8888).
+	 * The URI of the remote server (default http://localhost:8888). Can be a comma
+	 * separated list of servers, in which case requests are spread across the ones that
+	 * are working (the credentials are taken from the first one).
 	 */
 	private String uri = "http://localhost:8888";
 
@@ -79,7 +81,47 @@ public class ConfigClientProperties {
 	 * Flag to indicate that failure to connect to the server is fatal (default false).
 	 */
 	private boolean failFast = false;
-	
+
+	/**
+	 * Timeout in milliseconds for connecting to the remote server.
+	 */
+	private int connectTimeout = 5000;
+
+	/**
+	 * Timeout in milliseconds for reading a response from the remote server (once the
+	 * connection is made).
+	 */
+	private int readTimeout = 60000;
+
+	/**
+	 * Maximum number of connections to the remote server to keep in the pool (only if
+	 * Apache HttpClient is on the classpath).
+	 */
+	private int maxConnections = 10;
+
+	/**
+	 * Time in milliseconds to keep idle connections to the remote server open for reuse
+	 * (only if Apache HttpClient is on the classpath).
+	 */
+	private int keepAlive = 60000;
+
+	/**
+	 * Path to a file to keep a copy of the last environment fetched from the server in
+	 * (none by default). If it is there at startup it is used when the server does not
+	 * answer in time, and updated in the background when it does.
+	 */
+	private String snapshot;
+
+	/**
+	 * Time in milliseconds to wait for the remote server before using the snapshot.
+	 */
+	private int snapshotTimeout = 5000;
+
+	/**
+	 * Watch properties.
+	 */
+	private Watch watch = new Watch();
+
 	private ConfigClientProperties() {
 	}
 
@@ -103,6 +145,17 @@ public class ConfigClientProperties {
 		return extractCredentials()[2];
 	}
 
+	/**
+	 * @return all the server URIs without credentials
+	 */
+	public String[] getRawUris() {
+		String[] uris = StringUtils.commaDelimitedListToStringArray(this.uri);
+		for (int i = 0; i < uris.length; i++) {
+			uris[i] = extractCredentials(uris[i].trim())[2];
+		}
+		return uris;
+	}
+
 	public String getUri() {
 		return uri;
 	}
@@ -167,9 +220,69 @@ public class ConfigClientProperties {
 		this.failFast = failFast;
 	}
 
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(int keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public Watch getWatch() {
+		return watch;
+	}
+
+	public void setWatch(Watch watch) {
+		this.watch = watch;
+	}
+
+	public String getSnapshot() {
+		return snapshot;
+	}
+
+	public void setSnapshot(String snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	public int getSnapshotTimeout() {
+		return snapshotTimeout;
+	}
+
+	public void setSnapshotTimeout(int snapshotTimeout) {
+		this.snapshotTimeout = snapshotTimeout;
+	}
+
 	private String[] extractCredentials() {
+		String[] uris = StringUtils.commaDelimitedListToStringArray(this.uri);
+		return extractCredentials(uris.length > 0 ? uris[0].trim() : this.uri);
+	}
+
+	private String[] extractCredentials(String uri) {
 		String[] result = new String[3];
-		String uri = this.uri;
 		result[2] = uri;
 		String[] creds = getUsernamePassword();
 		result[0] = creds[0];
@@ -237,6 +350,37 @@ public class ConfigClientProperties {
 
 	}
 
+	public static class Watch {
+
+		/**
+		 * Flag to say that the client should keep a request open to the server to hear
+		 * about new versions of its configuration (and refresh when there is one).
+		 */
+		private boolean enabled;
+
+		/**
+		 * Time in milliseconds to wait before watching again after a failure.
+		 */
+		private int delay = 5000;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getDelay() {
+			return delay;
+		}
+
+		public void setDelay(int delay) {
+			this.delay = delay;
+		}
+
+	}
+
 	public ConfigClientProperties override(
 			org.springframework.core.env.Environment environment) {
 		ConfigClientProperties override = new ConfigClientProperties();
@@ -261,6 +405,7 @@ public class ConfigClientProperties {
 				+ ", name=" + name + ", label=" + (label == null ? "" : label)
 				+ ", username=" + username + ", password=" + password + ", uri=" + uri
 				+ ", discovery.enabled=" + discovery.enabled + ", failFast=" + failFast
+				+ ", connectTimeout=" + connectTimeout + ", readTimeout=" + readTimeout
 				+ "]";
 	}
 
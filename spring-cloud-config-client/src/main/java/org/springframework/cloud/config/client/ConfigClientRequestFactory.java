@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Creates the {@link ClientHttpRequestFactory} for talking to the config server, with the
+ * timeouts from the {@link ConfigClientProperties}. If Apache HttpClient is on the
+ * classpath the connections are pooled and kept alive between requests, otherwise the
+ * JDK connection is used (which only has the JVM-wide keep-alive cache).
+ *
+ */
+final class ConfigClientRequestFactory {
+
+	private static final boolean HTTP_CLIENT_PRESENT = ClassUtils.isPresent(
+			"org.apache.http.impl.client.HttpClientBuilder",
+			ConfigClientRequestFactory.class.getClassLoader());
+
+	private ConfigClientRequestFactory() {
+	}
+
+	static ClientHttpRequestFactory create(ConfigClientProperties client) {
+		if (HTTP_CLIENT_PRESENT) {
+			return HttpClientFactory.create(client);
+		}
+		SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+		factory.setConnectTimeout(client.getConnectTimeout());
+		factory.setReadTimeout(client.getReadTimeout());
+		return factory;
+	}
+
+	/**
+	 * Separate class so that HttpClient is only loaded if it is present.
+	 */
+	private static class HttpClientFactory {
+
+		static ClientHttpRequestFactory create(ConfigClientProperties client) {
+			PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+			connections.setMaxTotal(client.getMaxConnections());
+			connections.setDefaultMaxPerRoute(client.getMaxConnections());
+			RequestConfig config = RequestConfig.custom()
+					.setConnectTimeout(client.getConnectTimeout())
+					.setConnectionRequestTimeout(client.getConnectTimeout())
+					.setSocketTimeout(client.getReadTimeout()).build();
+			HttpClientBuilder builder = HttpClientBuilder.create().useSystemProperties()
+					.setConnectionManager(connections).setDefaultRequestConfig(config)
+					.disableCookieManagement();
+			if (client.getKeepAlive() > 0) {
+				builder.evictIdleConnections((long) client.getKeepAlive(),
+						TimeUnit.MILLISECONDS);
+			}
+			else {
+				builder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
+			}
+			return new HttpComponentsClientHttpRequestFactory(builder.build());
+		}
+
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Chooses which of several config servers to send a request to. The first choice is made
+ * with "power of two choices": two servers are picked at random and the one with the
+ * lower expected cost (average latency times the number of requests in flight) wins, so
+ * load is spread evenly without every client herding to the same "best" server. The
+ * other servers follow in order of cost, to fail over to if the first one does not
+ * answer.
+ * <p>
+ * A server that fails is ejected for a while (servers that are ejected are only tried
+ * when all the others have failed). The statistics and the ejections are kept per URI
+ * and shared by all the clients in the JVM, so one locator finding a dead server saves
+ * the others from trying it.
+ *
+ */
+final class ConfigServerLoadBalancer {
+
+	private static Log logger = LogFactory.getLog(ConfigServerLoadBalancer.class);
+
+	/**
+	 * How long a server stays ejected after a failure.
+	 */
+	private static final long EJECTION_TIME = TimeUnit.SECONDS.toNanos(30);
+
+	/**
+	 * Weight of the latest request in the average latency.
+	 */
+	private static final double DECAY = 0.3;
+
+	private static final ConcurrentMap<String, Server> servers = new ConcurrentHashMap<String, Server>();
+
+	private static final Random random = new Random();
+
+	private ConfigServerLoadBalancer() {
+	}
+
+	/**
+	 * @param uris the candidate servers
+	 * @return the servers in the order they should be tried
+	 */
+	static List<String> choose(String[] uris) {
+		if (uris.length == 1) {
+			return Collections.singletonList(uris[0]);
+		}
+		long now = System.nanoTime();
+		// Snapshot the statistics so they don't change while sorting
+		List<Choice> healthy = new ArrayList<Choice>();
+		List<Choice> ejected = new ArrayList<Choice>();
+		Set<String> seen = new HashSet<String>();
+		for (String uri : uris) {
+			if (!seen.add(uri)) {
+				continue;
+			}
+			Server server = getServer(uri);
+			if (server.isEjected(now)) {
+				// The ones that will come back soonest first
+				ejected.add(new Choice(uri, server.ejectedUntil - now));
+			}
+			else {
+				healthy.add(new Choice(uri, server.getCost()));
+			}
+		}
+		List<String> result = new ArrayList<String>(uris.length);
+		if (healthy.size() > 1) {
+			int first = random.nextInt(healthy.size());
+			int second = random.nextInt(healthy.size() - 1);
+			if (second >= first) {
+				second++;
+			}
+			Choice chosen = healthy.get(first).compareTo(healthy.get(second)) <= 0 ? healthy
+					.get(first) : healthy.get(second);
+			healthy.remove(chosen);
+			result.add(chosen.uri);
+			Collections.sort(healthy);
+		}
+		for (Choice choice : healthy) {
+			result.add(choice.uri);
+		}
+		Collections.sort(ejected);
+		for (Choice choice : ejected) {
+			result.add(choice.uri);
+		}
+		return result;
+	}
+
+	/**
+	 * Record the start of a request to a server.
+	 *
+	 * @return the start time to pass to {@link #finished(String, long, boolean)}
+	 */
+	static long started(String uri) {
+		getServer(uri).inFlight.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the end of a request to a server, ejecting it if it failed.
+	 */
+	static void finished(String uri, long start, boolean success) {
+		Server server = getServer(uri);
+		server.inFlight.decrementAndGet();
+		long now = System.nanoTime();
+		if (success) {
+			server.ejectedUntil = 0;
+			double latency = now - start;
+			server.latency = server.latency == 0 ? latency : server.latency
+					* (1 - DECAY) + latency * DECAY;
+		}
+		else {
+			server.ejectedUntil = now + EJECTION_TIME;
+			logger.warn("Config server at " + uri + " failed, not using it for "
+					+ TimeUnit.NANOSECONDS.toSeconds(EJECTION_TIME) + " seconds");
+		}
+	}
+
+	/**
+	 * Forget all the statistics and ejections.
+	 */
+	static void reset() {
+		servers.clear();
+	}
+
+	private static Server getServer(String uri) {
+		Server server = servers.get(uri);
+		if (server == null) {
+			servers.putIfAbsent(uri, new Server());
+			server = servers.get(uri);
+		}
+		return server;
+	}
+
+	private static class Server {
+
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		/**
+		 * Average latency in nanoseconds (0 if there has not been a request yet, so new
+		 * servers are tried early).
+		 */
+		private volatile double latency;
+
+		/**
+		 * System.nanoTime() when the ejection ends, or 0 if it is not ejected.
+		 */
+		private volatile long ejectedUntil;
+
+		boolean isEjected(long now) {
+			long until = this.ejectedUntil;
+			return until != 0 && until - now > 0;
+		}
+
+		double getCost() {
+			return this.latency * (this.inFlight.get() + 1);
+		}
+
+	}
+
+	private static class Choice implements Comparable<Choice> {
+
+		private final String uri;
+
+		private final double cost;
+
+		Choice(String uri, double cost) {
+			this.uri = uri;
+			this.cost = cost;
+		}
+
+		@Override
+		public int compareTo(Choice other) {
+			return Double.compare(this.cost, other.cost);
+		}
+
+	}
+
+}
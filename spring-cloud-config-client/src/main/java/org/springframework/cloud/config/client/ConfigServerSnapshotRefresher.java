@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.client;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.context.refresh.ContextRefresher;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Refreshes the application context if it was started from a config snapshot that turns
+ * out to be out of date once the server answers. Waits until the application is ready,
+ * so that the refresh does not happen half way through starting up.
+ *
+ */
+public class ConfigServerSnapshotRefresher implements
+		ApplicationListener<ApplicationReadyEvent> {
+
+	private static Log logger = LogFactory.getLog(ConfigServerSnapshotRefresher.class);
+
+	private final ConfigServicePropertySourceLocator locator;
+
+	public ConfigServerSnapshotRefresher(ConfigServicePropertySourceLocator locator) {
+		this.locator = locator;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		final ApplicationContext context = event.getApplicationContext();
+		this.locator.setSnapshotCallback(new Runnable() {
+			@Override
+			public void run() {
+				if (context.getBeanNamesForType(ContextRefresher.class).length == 0) {
+					logger.warn("Started with an old config snapshot, but cannot refresh");
+					return;
+				}
+				logger.info("Refreshing after starting with an old config snapshot: "
+						+ context.getBean(ContextRefresher.class).refresh());
+			}
+		});
+	}
+
+}
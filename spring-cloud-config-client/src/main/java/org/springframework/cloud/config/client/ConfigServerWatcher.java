@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.client;
+
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.context.refresh.ContextRefresher;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Keeps a request open to the config server (long polling) to hear about new versions of
+ * the environment the application started with, and refreshes the application context
+ * when there is one. Uses a single background thread, which is started when the
+ * application is ready.
+ *
+ */
+public class ConfigServerWatcher implements ApplicationListener<ApplicationReadyEvent>,
+		DisposableBean {
+
+	private static Log logger = LogFactory.getLog(ConfigServerWatcher.class);
+
+	private final ConfigServicePropertySourceLocator locator;
+
+	private volatile boolean running;
+
+	private Thread thread;
+
+	public ConfigServerWatcher(ConfigServicePropertySourceLocator locator) {
+		this.locator = locator;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		final ApplicationContext context = event.getApplicationContext();
+		final ConfigClientProperties client = this.locator.getDefaults();
+		final Environment environment = this.locator.getLocatedEnvironment();
+		if (environment == null) {
+			logger.warn("Not watching config server: no configuration was located");
+			return;
+		}
+		String label = environment.getLabel();
+		if (!StringUtils.hasText(label) && StringUtils.hasText(client.getLabel())) {
+			label = StringUtils.commaDelimitedListToStringArray(client.getLabel())[0];
+		}
+		if (!StringUtils.hasText(label)) {
+			logger.warn("Not watching config server: label is unknown");
+			return;
+		}
+		final String path = environment.getName() + "/"
+				+ StringUtils.arrayToCommaDelimitedString(environment.getProfiles())
+				+ "/" + label.trim().replace("/", "(_)");
+		synchronized (this) {
+			if (this.thread != null) {
+				return;
+			}
+			this.running = true;
+			this.thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					watch(context, client, path, environment.getVersion());
+				}
+			}, "config-watch");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		Thread thread;
+		synchronized (this) {
+			this.running = false;
+			thread = this.thread;
+			this.thread = null;
+		}
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	private void watch(ApplicationContext context, ConfigClientProperties client,
+			String path, String version) {
+		logger.info("Watching config server for changes to: " + path);
+		List<String> uris = ConfigServerLoadBalancer.choose(client.getRawUris());
+		int index = 0;
+		while (this.running) {
+			String uri = uris.get(index % uris.size());
+			try {
+				String current = watch(uri, path, version);
+				if (current != null && !current.equals(version)) {
+					if (version != null) {
+						refresh(context, current);
+					}
+					version = current;
+				}
+			}
+			catch (HttpStatusCodeException e) {
+				if (e.getStatusCode() == HttpStatus.NOT_IMPLEMENTED
+						|| e.getStatusCode() == HttpStatus.NOT_FOUND) {
+					logger.warn("Config server at " + uri + " cannot watch: " + path);
+					return;
+				}
+				index = retry(uri, index, e);
+			}
+			catch (ResourceAccessException e) {
+				if (e.getCause() instanceof SocketTimeoutException) {
+					// The read timeout is shorter than the server's watch timeout
+					continue;
+				}
+				index = retry(uri, index, e);
+			}
+			catch (Exception e) {
+				index = retry(uri, index, e);
+			}
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private String watch(String uri, String path, String version) {
+		String url = uri + "/" + path + "/watch";
+		Object[] args = new Object[0];
+		if (version != null) {
+			url = url + "?version={version}";
+			args = new Object[] { version };
+		}
+		ResponseEntity<Map> response = this.locator.getRestTemplate().exchange(url,
+				HttpMethod.GET, null, Map.class, args);
+		if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
+			return (String) response.getBody().get("version");
+		}
+		return null;
+	}
+
+	private int retry(String uri, int index, Exception e) {
+		if (!this.running) {
+			return index;
+		}
+		logger.warn("Could not watch config server at " + uri + " (" + e.getMessage()
+				+ "), trying again in " + this.locator.getDefaults().getWatch().getDelay()
+				+ "ms");
+		try {
+			Thread.sleep(this.locator.getDefaults().getWatch().getDelay());
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			this.running = false;
+		}
+		return index + 1;
+	}
+
+	private void refresh(ApplicationContext context, String version) {
+		if (context.getBeanNamesForType(ContextRefresher.class).length == 0) {
+			logger.warn("New config version " + version + " but cannot refresh");
+			return;
+		}
+		logger.info("Refreshing for new config version " + version + ": "
+				+ context.getBean(ContextRefresher.class).refresh());
+	}
+
+}
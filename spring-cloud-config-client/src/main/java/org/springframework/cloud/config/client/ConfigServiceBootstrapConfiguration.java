@@ -31,6 +31,7 @@ import org.springframework.retry.annotation.EnableRetry;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.retry.interceptor.RetryInterceptorBuilder;
 import org.springframework.retry.interceptor.RetryOperationsInterceptor;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
 
 /**
  * @author Dave Syer
@@ -43,6 +44,9 @@ public class ConfigServiceBootstrapConfiguration {
 	@Autowired
 	private ConfigurableEnvironment environment;
 
+	@Autowired(required = false)
+	private TextEncryptor textEncryptor;
+
 	@Bean
 	public ConfigClientProperties configClientProperties() {
 		ConfigClientProperties client = new ConfigClientProperties(this.environment);
@@ -54,6 +58,7 @@ public class ConfigServiceBootstrapConfiguration {
 	public ConfigServicePropertySourceLocator configServicePropertySource() {
 		ConfigServicePropertySourceLocator locator = new ConfigServicePropertySourceLocator(
 				configClientProperties());
+		locator.setTextEncryptor(this.textEncryptor);
 		return locator;
 	}
 
@@ -16,12 +16,24 @@
 
 package org.springframework.cloud.config.client;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.bootstrap.config.PropertySourceLocator;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
@@ -29,6 +41,7 @@ import org.springframework.core.annotation.Order;
 import org.springframework.core.env.CompositePropertySource;
 import org.springframework.core.env.MapPropertySource;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpRequest;
 import org.springframework.http.HttpStatus;
@@ -38,9 +51,11 @@ import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.retry.annotation.Retryable;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -48,14 +63,49 @@ import org.springframework.web.client.RestTemplate;
  *
  */
 @Order(0)
-public class ConfigServicePropertySourceLocator implements PropertySourceLocator {
+public class ConfigServicePropertySourceLocator implements PropertySourceLocator,
+		DisposableBean {
 
 	private static Log logger = LogFactory
 			.getLog(ConfigServicePropertySourceLocator.class);
 
+	private static final String DELTA_HEADER = "X-Config-Since";
+
+	private static final int WAITING = 0;
+
+	private static final int FETCHED = 1;
+
+	private static final int SNAPSHOT = 2;
+
 	private RestTemplate restTemplate;
 	private ConfigClientProperties defaults;
 
+	/**
+	 * The template created from the defaults the first time it is needed (if none was
+	 * provided), so its connections can be reused by later requests.
+	 */
+	private RestTemplate secureRestTemplate;
+
+	/**
+	 * The last environment received for each request (with its ETag), so that the server
+	 * only has to send it again (or the changes since then) if it has changed.
+	 */
+	private final Map<String, ResponseEntity<Environment>> lastResponses = new ConcurrentHashMap<String, ResponseEntity<Environment>>();
+
+	private TextEncryptor textEncryptor;
+
+	/**
+	 * The first environment located (i.e. the one the application started with).
+	 */
+	private volatile Environment located;
+
+	/**
+	 * Set if the snapshot was out of date and there is no callback yet to tell.
+	 */
+	private final AtomicBoolean snapshotChanged = new AtomicBoolean();
+
+	private Runnable snapshotCallback;
+
 	public ConfigServicePropertySourceLocator(ConfigClientProperties defaults) {
 		this.defaults = defaults;
 	}
@@ -66,41 +116,24 @@ public class ConfigServicePropertySourceLocator implements PropertySourceLocator
 			org.springframework.core.env.Environment environment) {
 		ConfigClientProperties client = this.defaults.override(environment);
 		CompositePropertySource composite = new CompositePropertySource("configService");
-		RestTemplate restTemplate = this.restTemplate == null ? getSecureRestTemplate(client)
-				: this.restTemplate;
-		Exception error = null;
-		String errorBody = null;
-		logger.info("Fetching config from server at: " + client.getRawUri());
-		try {
-			String[] labels = new String[]{""};
-			if (StringUtils.hasText(client.getLabel())) {
-				labels = StringUtils.commaDelimitedListToStringArray(client.getLabel());
+		RestTemplate restTemplate = getRestTemplate();
+		// The snapshot is only for startup, other callers (e.g. the health indicator)
+		// want to know what the server says
+		Result result = StringUtils.hasText(client.getSnapshot()) && this.located == null ? fetchOrRead(
+				client, restTemplate) : fetch(client, restTemplate);
+		if (result.environment != null) {
+			if (this.located == null) {
+				this.located = result.environment;
 			}
-			// Try all the labels until one works
-			for (String label : labels) {
-				Environment result = getRemoteEnvironment(restTemplate, client.getRawUri(), client.getName(), client.getProfile(), label.trim());
-				if (result != null) {
-					for (PropertySource source : result.getPropertySources()) {
-						@SuppressWarnings("unchecked")
-						Map<String, Object> map = (Map<String, Object>) source
-								.getSource();
-						composite.addPropertySource(new MapPropertySource(source
-								.getName(), map));
-					}
-					return composite;
-				}
+			for (PropertySource source : result.environment.getPropertySources()) {
+				@SuppressWarnings("unchecked")
+				Map<String, Object> map = (Map<String, Object>) source.getSource();
+				composite.addPropertySource(new MapPropertySource(source.getName(), map));
 			}
+			return composite;
 		}
-		catch (HttpServerErrorException e) {
-			error = e;
-			if (MediaType.APPLICATION_JSON.includes(e.getResponseHeaders()
-					.getContentType())) {
-				errorBody = e.getResponseBodyAsString();
-			}
-		}
-		catch (Exception e) {
-			error = e;
-		}
+		Exception error = result.error;
+		String errorBody = result.errorBody;
 		if (client != null && client.isFailFast()) {
 			throw new IllegalStateException(
 					"Could not locate PropertySource and the fail fast property is set, failing",
@@ -112,6 +145,183 @@ public class ConfigServicePropertySourceLocator implements PropertySourceLocator
 
 	}
 
+	/**
+	 * @return the environment the application started with (or null if there was none)
+	 */
+	Environment getLocatedEnvironment() {
+		return this.located;
+	}
+
+	ConfigClientProperties getDefaults() {
+		return this.defaults;
+	}
+
+	RestTemplate getRestTemplate() {
+		return this.restTemplate == null ? getSecureRestTemplate() : this.restTemplate;
+	}
+
+	/**
+	 * Register a callback for when the snapshot was used at startup, and the environment
+	 * fetched from the server afterwards turned out to be different. If that has
+	 * happened already the callback is run straight away.
+	 */
+	void setSnapshotCallback(Runnable callback) {
+		synchronized (this.snapshotChanged) {
+			this.snapshotCallback = callback;
+			if (!this.snapshotChanged.getAndSet(false)) {
+				return;
+			}
+		}
+		callback.run();
+	}
+
+	private void snapshotChanged() {
+		Runnable callback;
+		synchronized (this.snapshotChanged) {
+			callback = this.snapshotCallback;
+			if (callback == null) {
+				this.snapshotChanged.set(true);
+				return;
+			}
+		}
+		callback.run();
+	}
+
+	/**
+	 * Fetch the environment from the server, but if there is a snapshot and the server
+	 * does not answer in time (or at all) use the snapshot instead, and carry on waiting
+	 * for the server in the background.
+	 */
+	private Result fetchOrRead(final ConfigClientProperties client,
+			final RestTemplate restTemplate) {
+		final EnvironmentSnapshot snapshot = new EnvironmentSnapshot(new File(
+				client.getSnapshot()), this.textEncryptor);
+		final String name = client.getName();
+		final String profile = client.getProfile();
+		final String label = client.getLabel();
+		Environment saved = snapshot.read(name, profile, label);
+		if (saved == null) {
+			Result result = fetch(client, restTemplate);
+			if (result.environment != null) {
+				snapshot.write(result.environment, name, profile, label);
+			}
+			return result;
+		}
+		// WAITING until either the fetch is done or the snapshot has been used
+		final AtomicInteger state = new AtomicInteger(WAITING);
+		FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+			@Override
+			public Result call() throws Exception {
+				Result result = fetch(client, restTemplate);
+				boolean changed = result.environment != null
+						&& snapshot.write(result.environment, name, profile, label);
+				if (!state.compareAndSet(WAITING, FETCHED)) {
+					if (changed) {
+						logger.info("Config snapshot was out of date: " + snapshot);
+						snapshotChanged();
+					}
+					else if (result.environment == null) {
+						logger.warn("Could not update config snapshot from server");
+					}
+				}
+				return result;
+			}
+		});
+		Thread thread = new Thread(task, "config-snapshot");
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			Result result = task.get(client.getSnapshotTimeout(), TimeUnit.MILLISECONDS);
+			if (result.environment != null) {
+				return result;
+			}
+		}
+		catch (TimeoutException e) {
+			// Use the snapshot
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e) {
+			logger.warn("Could not fetch config from server", e.getCause());
+		}
+		if (!state.compareAndSet(WAITING, SNAPSHOT)) {
+			// The fetch finished in the meantime
+			Result result = getQuietly(task);
+			if (result != null && result.environment != null) {
+				return result;
+			}
+		}
+		logger.info("Using config snapshot: " + snapshot);
+		return new Result(saved, null, null);
+	}
+
+	private Result getQuietly(FutureTask<Result> task) {
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	private Result fetch(ConfigClientProperties client, RestTemplate restTemplate) {
+		Exception error = null;
+		String errorBody = null;
+		String[] labels = new String[]{""};
+		if (StringUtils.hasText(client.getLabel())) {
+			labels = StringUtils.commaDelimitedListToStringArray(client.getLabel());
+		}
+		// Fail over to the next server if one is down (but not if it just can't find
+		// the environment)
+		for (String uri : ConfigServerLoadBalancer.choose(client.getRawUris())) {
+			logger.info("Fetching config from server at: " + uri);
+			long start = ConfigServerLoadBalancer.started(uri);
+			boolean success = false;
+			try {
+				// Try all the labels until one works
+				for (String label : labels) {
+					Environment result = getRemoteEnvironment(restTemplate, uri, client.getName(), client.getProfile(), label.trim());
+					if (result != null) {
+						success = true;
+						return new Result(result, null, null);
+					}
+				}
+				success = true;
+				error = null;
+				errorBody = null;
+				break;
+			}
+			catch (HttpServerErrorException e) {
+				error = e;
+				errorBody = null;
+				if (MediaType.APPLICATION_JSON.includes(e.getResponseHeaders()
+						.getContentType())) {
+					errorBody = e.getResponseBodyAsString();
+				}
+			}
+			catch (ResourceAccessException e) {
+				error = e;
+				errorBody = null;
+			}
+			catch (Exception e) {
+				// Not the server's fault (e.g. a 4xx), so don't try the others
+				success = true;
+				error = e;
+				errorBody = null;
+				break;
+			}
+			finally {
+				ConfigServerLoadBalancer.finished(uri, start, success);
+			}
+		}
+		return new Result(null, error, errorBody);
+	}
+
 	private Environment getRemoteEnvironment(RestTemplate restTemplate, String uri, String name, String profile, String label) {
 		String path = "/{name}/{profile}";
 		Object[] args = new String[] { name, profile };
@@ -120,10 +330,25 @@ public class ConfigServicePropertySourceLocator implements PropertySourceLocator
 			path = path + "/{label}";
 		}
 		ResponseEntity<Environment> response = null;
+		String key = uri + StringUtils.arrayToDelimitedString(args, "/");
+		ResponseEntity<Environment> last = this.lastResponses.get(key);
+		HttpHeaders headers = new HttpHeaders();
+		String since = null;
+		if (last != null) {
+			headers.setIfNoneMatch(last.getHeaders().getETag());
+			if (last.getBody() != null) {
+				since = last.getBody().getVersion();
+			}
+		}
+		if (since != null) {
+			args = Arrays.copyOf(args, args.length + 1);
+			args[args.length - 1] = since;
+			path = path + "?since={since}";
+		}
 
 		try {
 			response = restTemplate.exchange(uri + path,
-					HttpMethod.GET, new HttpEntity<Void>((Void) null),
+					HttpMethod.GET, new HttpEntity<Void>((Void) null, headers),
 					Environment.class, args);
 		} catch (HttpClientErrorException e) {
 			if(e.getStatusCode() != HttpStatus.NOT_FOUND ) {
@@ -131,19 +356,98 @@ public class ConfigServicePropertySourceLocator implements PropertySourceLocator
 			}
 		}
 
+		if (response != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED
+				&& last != null) {
+			return last.getBody();
+		}
 		if (response==null || response.getStatusCode()!=HttpStatus.OK) {
+			this.lastResponses.remove(key);
 			return null;
 		}
+		if (since != null
+				&& since.equals(response.getHeaders().getFirst(DELTA_HEADER))) {
+			response = new ResponseEntity<Environment>(applyChanges(last.getBody(),
+					response.getBody()), response.getHeaders(), response.getStatusCode());
+		}
+		if (StringUtils.hasText(response.getHeaders().getETag())) {
+			this.lastResponses.put(key, response);
+		}
+		else {
+			this.lastResponses.remove(key);
+		}
 		Environment result = response.getBody();
 		return result;
 	}
 
+	/**
+	 * The server sent only the changes since the last version: keys with null values
+	 * have been removed, and sources that were not there before are complete.
+	 */
+	private Environment applyChanges(Environment last, Environment changes) {
+		Environment result = new Environment(changes.getName(), changes.getProfiles(),
+				changes.getLabel());
+		result.setVersion(changes.getVersion());
+		result.setState(changes.getState());
+		Map<String, PropertySource> sources = new HashMap<String, PropertySource>();
+		for (PropertySource source : last.getPropertySources()) {
+			sources.put(source.getName(), source);
+		}
+		for (PropertySource source : changes.getPropertySources()) {
+			PropertySource before = sources.get(source.getName());
+			if (before == null) {
+				result.add(source);
+				continue;
+			}
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>(
+					before.getSource());
+			for (Map.Entry<?, ?> entry : source.getSource().entrySet()) {
+				if (entry.getValue() == null) {
+					map.remove(entry.getKey());
+				}
+				else {
+					map.put(entry.getKey(), entry.getValue());
+				}
+			}
+			result.add(new PropertySource(source.getName(), map));
+		}
+		return result;
+	}
+
 	public void setRestTemplate(RestTemplate restTemplate) {
 		this.restTemplate = restTemplate;
 	}
 
+	/**
+	 * @param textEncryptor the encryptor for the snapshot file (if null it is not
+	 * encrypted)
+	 */
+	public void setTextEncryptor(TextEncryptor textEncryptor) {
+		this.textEncryptor = textEncryptor;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		RestTemplate template;
+		synchronized (this) {
+			template = this.secureRestTemplate;
+			this.secureRestTemplate = null;
+		}
+		if (template != null
+				&& template.getRequestFactory() instanceof DisposableBean) {
+			((DisposableBean) template.getRequestFactory()).destroy();
+		}
+	}
+
+	private synchronized RestTemplate getSecureRestTemplate() {
+		if (this.secureRestTemplate == null) {
+			this.secureRestTemplate = getSecureRestTemplate(this.defaults);
+		}
+		return this.secureRestTemplate;
+	}
+
 	private RestTemplate getSecureRestTemplate(ConfigClientProperties client) {
-		RestTemplate template = new RestTemplate();
+		RestTemplate template = new RestTemplate(
+				ConfigClientRequestFactory.create(client));
 		String password = client.getPassword();
 		if (password != null) {
 			template.setInterceptors(Arrays
@@ -153,6 +457,22 @@ public class ConfigServicePropertySourceLocator implements PropertySourceLocator
 		return template;
 	}
 
+	private static class Result {
+
+		private final Environment environment;
+
+		private final Exception error;
+
+		private final String errorBody;
+
+		Result(Environment environment, Exception error, String errorBody) {
+			this.environment = environment;
+			this.error = error;
+			this.errorBody = errorBody;
+		}
+
+	}
+
 	private static class BasicAuthorizationInterceptor implements
 			ClientHttpRequestInterceptor {
 
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A copy of the last {@link Environment} received from the server in a local file, so a
+ * client can start without the server. The file is JSON with the environment (encrypted
+ * if there is a {@link TextEncryptor}) and a SHA-256 checksum of its content, which is
+ * also used to tell whether a new environment is any different. Files that fail the
+ * checksum (e.g. truncated or corrupted) are ignored. The checksum is not keyed, so it
+ * does not protect against deliberate changes. The file is only readable by its owner,
+ * because it holds the values that the server decrypted (in plain text, unless there is
+ * an encryptor).
+ *
+ */
+class EnvironmentSnapshot {
+
+	private static Log logger = LogFactory.getLog(EnvironmentSnapshot.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+
+	private final TextEncryptor encryptor;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * @param file the snapshot file
+	 * @param encryptor the encryptor for the content (can be null)
+	 */
+	EnvironmentSnapshot(File file, TextEncryptor encryptor) {
+		this.file = file;
+		this.encryptor = encryptor;
+	}
+
+	/**
+	 * @param name the application name
+	 * @param profiles the profiles (comma separated)
+	 * @param label the label (can be empty)
+	 * @return the environment in the file if it exists, is valid and is for the same
+	 * application, profiles and label, otherwise null
+	 */
+	Environment read(String name, String profiles, String label) {
+		if (!this.file.exists()) {
+			return null;
+		}
+		try {
+			Map<?, ?> snapshot = this.mapper.readValue(this.file, Map.class);
+			String content = (String) snapshot.get("environment");
+			if (content != null && Boolean.TRUE.equals(snapshot.get("encrypted"))) {
+				if (this.encryptor == null) {
+					logger.warn("Cannot decrypt config snapshot: " + this.file);
+					return null;
+				}
+				content = this.encryptor.decrypt(content);
+			}
+			if (content == null || !checksum(content).equals(snapshot.get("checksum"))) {
+				logger.warn("Ignoring config snapshot with wrong checksum: " + this.file);
+				return null;
+			}
+			Environment environment = this.mapper.readValue(content, Environment.class);
+			Environment requested = key(name, profiles, label);
+			if (!ObjectUtils.nullSafeEquals(requested.getName(), environment.getName())
+					|| !Arrays.equals(requested.getProfiles(), environment.getProfiles())
+					|| !ObjectUtils.nullSafeEquals(requested.getLabel(),
+							environment.getLabel())) {
+				logger.info("Ignoring config snapshot for a different application: "
+						+ this.file);
+				return null;
+			}
+			return environment;
+		}
+		catch (Exception e) {
+			logger.warn("Cannot read config snapshot: " + this.file + " ("
+					+ e.getClass() + ": " + e.getMessage() + ")");
+			return null;
+		}
+	}
+
+	/**
+	 * Save the environment, unless it is the same as the one in the file already. It is
+	 * saved with the application name, profiles and label it was requested with (the
+	 * server might have sent back something slightly different).
+	 *
+	 * @param environment the environment to save
+	 * @return true if the environment was different from the one in the file (and it
+	 * was saved)
+	 */
+	boolean write(Environment environment, String name, String profiles, String label) {
+		try {
+			Environment saved = key(name, profiles, label);
+			saved.setVersion(environment.getVersion());
+			saved.setState(environment.getState());
+			for (PropertySource source : environment.getPropertySources()) {
+				saved.add(source);
+			}
+			String content = this.mapper.writeValueAsString(saved);
+			String checksum = checksum(content);
+			if (checksum.equals(readChecksum())) {
+				return false;
+			}
+			if (this.encryptor == null) {
+				logger.warn("Config snapshot " + this.file + " is not encrypted, so "
+						+ "any values that the server decrypted are stored in plain "
+						+ "text. Set encrypt.key (or a key store) in the bootstrap "
+						+ "configuration to encrypt it.");
+			}
+			Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+			snapshot.put("checksum", checksum);
+			snapshot.put("encrypted", this.encryptor != null);
+			snapshot.put("environment", this.encryptor != null ? this.encryptor
+					.encrypt(content) : content);
+			// Write to a temporary file first so readers never see half a snapshot
+			File parent = this.file.getAbsoluteFile().getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			File temp = new File(parent, this.file.getName() + ".tmp");
+			createForOwner(temp);
+			FileCopyUtils.copy(this.mapper.writeValueAsBytes(snapshot), temp);
+			if (!temp.renameTo(this.file)) {
+				this.file.delete();
+				if (!temp.renameTo(this.file)) {
+					throw new IOException("Cannot rename " + temp + " to " + this.file);
+				}
+			}
+			return true;
+		}
+		catch (Exception e) {
+			logger.warn("Cannot write config snapshot: " + this.file + " ("
+					+ e.getClass() + ": " + e.getMessage() + ")");
+			return false;
+		}
+	}
+
+	/**
+	 * Create an empty file that only its owner can read or write (before anything is
+	 * written to it).
+	 */
+	private void createForOwner(File file) throws IOException {
+		Path path = file.toPath();
+		Files.deleteIfExists(path);
+		if (Files.getFileStore(path.toAbsolutePath().getParent())
+				.supportsFileAttributeView(PosixFileAttributeView.class)) {
+			Files.createFile(path, PosixFilePermissions
+					.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		else {
+			// Best effort (e.g. on Windows the file inherits the folder's permissions)
+			Files.createFile(path);
+			file.setReadable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(false, false);
+			file.setWritable(true, true);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.file.toString();
+	}
+
+	private Environment key(String name, String profiles, String label) {
+		return new Environment(name,
+				StringUtils.commaDelimitedListToStringArray(profiles),
+				label == null ? "" : label);
+	}
+
+	private String readChecksum() {
+		if (!this.file.exists()) {
+			return null;
+		}
+		try {
+			return (String) this.mapper.readValue(this.file, Map.class).get("checksum");
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static String checksum(String content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+					content.getBytes(UTF8));
+			StringBuilder builder = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+				builder.append(Character.forDigit(b & 0xf, 16));
+			}
+			return builder.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not supported", e);
+		}
+	}
+
+}
@@ -39,6 +39,17 @@ public class Environment {
 
 	private String label;
 
+	/**
+	 * The version of the source that the property sources were loaded from (e.g. a
+	 * commit id), if known.
+	 */
+	private String version;
+
+	/**
+	 * Additional information about the state of the source (backend specific), if any.
+	 */
+	private String state;
+
 	private List<PropertySource> propertySources = new ArrayList<PropertySource>();
 
 	public Environment(String name, String... profiles) {
@@ -91,10 +102,27 @@ public class Environment {
 		this.profiles = profiles;
 	}
 
+	public String getVersion() {
+		return version;
+	}
+
+	public void setVersion(String version) {
+		this.version = version;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public void setState(String state) {
+		this.state = state;
+	}
+
 	@Override
 	public String toString() {
 		return "Environment [name=" + name + ", profiles=" + Arrays.asList(profiles)
-				+ ", label=" + label + ", propertySources=" + propertySources + "]";
+				+ ", label=" + label + ", version=" + version + ", state=" + state
+				+ ", propertySources=" + propertySources + "]";
 	}
 
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.environment;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact read-only map for the source of a {@link PropertySource} that is kept for a
+ * long time (e.g. in a cache) and shared between environments. The keys and values are
+ * held in arrays (in the same order as the original map), with an index sorted by hash
+ * code for lookups, so there are no entry objects, and String keys are interned because
+ * the same keys tend to turn up in many sources.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class ImmutablePropertyMap<K, V> extends AbstractMap<K, V> {
+
+	private final Object[] keys;
+
+	private final Object[] values;
+
+	/**
+	 * Hash codes of the keys in ascending order.
+	 */
+	private final int[] hashes;
+
+	/**
+	 * Positions of the keys (in the same order as the hashes).
+	 */
+	private final int[] positions;
+
+	private ImmutablePropertyMap(Map<? extends K, ? extends V> source) {
+		int size = source.size();
+		this.keys = new Object[size];
+		this.values = new Object[size];
+		long[] index = new long[size];
+		int i = 0;
+		for (Map.Entry<? extends K, ? extends V> entry : source.entrySet()) {
+			Object key = entry.getKey();
+			if (key instanceof String) {
+				key = ((String) key).intern();
+			}
+			this.keys[i] = key;
+			this.values[i] = entry.getValue();
+			// Sort by hash (high bits) then position (low bits)
+			index[i] = ((long) hash(key) << 32) | i;
+			i++;
+		}
+		Arrays.sort(index);
+		this.hashes = new int[size];
+		this.positions = new int[size];
+		for (i = 0; i < size; i++) {
+			this.hashes[i] = (int) (index[i] >> 32);
+			this.positions[i] = (int) index[i];
+		}
+	}
+
+	/**
+	 * @param source the map to copy
+	 * @return an immutable copy of the map (or the map itself if it already is one)
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, V> Map<K, V> of(Map<K, V> source) {
+		if (source instanceof ImmutablePropertyMap) {
+			return source;
+		}
+		return new ImmutablePropertyMap<K, V>(source);
+	}
+
+	@Override
+	public int size() {
+		return this.keys.length;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int index = indexOf(key);
+		return index < 0 ? null : (V) this.values[index];
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return ImmutablePropertyMap.this.keys.length;
+			}
+
+		};
+	}
+
+	private int indexOf(Object key) {
+		int hash = hash(key);
+		int low = Arrays.binarySearch(this.hashes, hash);
+		if (low < 0) {
+			return -1;
+		}
+		while (low > 0 && this.hashes[low - 1] == hash) {
+			low--;
+		}
+		for (int i = low; i < this.hashes.length && this.hashes[i] == hash; i++) {
+			int position = this.positions[i];
+			Object candidate = this.keys[position];
+			if (candidate == key || (candidate != null && candidate.equals(key))) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	private static int hash(Object key) {
+		return key == null ? 0 : key.hashCode();
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		private int next;
+
+		@Override
+		public boolean hasNext() {
+			return this.next < ImmutablePropertyMap.this.keys.length;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Map.Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int position = this.next++;
+			return new SimpleImmutableEntry<K, V>(
+					(K) ImmutablePropertyMap.this.keys[position],
+					(V) ImmutablePropertyMap.this.values[position]);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ConfigServerLoadBalancerTests {
+
+	private String[] uris = new String[] { "http://one", "http://two", "http://three" };
+
+	@After
+	public void reset() {
+		ConfigServerLoadBalancer.reset();
+	}
+
+	@Test
+	public void allServersListed() {
+		List<String> order = ConfigServerLoadBalancer.choose(this.uris);
+		assertEquals(new HashSet<String>(Arrays.asList(this.uris)),
+				new HashSet<String>(order));
+		assertEquals(3, order.size());
+	}
+
+	@Test
+	public void spreadAcrossEqualServers() {
+		Map<String, Integer> counts = countFirstChoices(3000);
+		for (String uri : this.uris) {
+			assertTrue("Not used enough: " + counts, counts.get(uri) > 500);
+		}
+	}
+
+	@Test
+	public void slowServerUsedLess() throws Exception {
+		ConfigServerLoadBalancer.finished("http://one",
+				ConfigServerLoadBalancer.started("http://one") - 1000000000L, true);
+		ConfigServerLoadBalancer.finished("http://two",
+				ConfigServerLoadBalancer.started("http://two") - 1000L, true);
+		ConfigServerLoadBalancer.finished("http://three",
+				ConfigServerLoadBalancer.started("http://three") - 1000L, true);
+		Map<String, Integer> counts = countFirstChoices(3000);
+		// Only chosen if it is paired with itself, which never happens
+		assertEquals(null, counts.get("http://one"));
+	}
+
+	@Test
+	public void failedServerEjected() {
+		for (String uri : this.uris) {
+			ConfigServerLoadBalancer.finished(uri,
+					ConfigServerLoadBalancer.started(uri) - 1000000L, true);
+		}
+		ConfigServerLoadBalancer.finished("http://two",
+				ConfigServerLoadBalancer.started("http://two"), false);
+		for (int i = 0; i < 100; i++) {
+			assertEquals("http://two", ConfigServerLoadBalancer.choose(this.uris).get(2));
+		}
+		// Back again (and faster than the others) when it works
+		ConfigServerLoadBalancer.finished("http://two",
+				ConfigServerLoadBalancer.started("http://two"), true);
+		Map<String, Integer> counts = countFirstChoices(300);
+		assertTrue(counts.containsKey("http://two"));
+	}
+
+	private Map<String, Integer> countFirstChoices(int times) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < times; i++) {
+			String first = ConfigServerLoadBalancer.choose(this.uris).get(0);
+			counts.put(first, counts.containsKey(first) ? counts.get(first) + 1 : 1);
+		}
+		return counts;
+	}
+
+}
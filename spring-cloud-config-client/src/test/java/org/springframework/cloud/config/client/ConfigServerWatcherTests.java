@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.context.refresh.ContextRefresher;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+public class ConfigServerWatcherTests {
+
+	private ConfigServicePropertySourceLocator locator = Mockito
+			.mock(ConfigServicePropertySourceLocator.class);
+
+	private RestTemplate restTemplate = Mockito.mock(RestTemplate.class);
+
+	private ConfigServerWatcher watcher = new ConfigServerWatcher(this.locator);
+
+	@After
+	public void close() throws Exception {
+		this.watcher.destroy();
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void refreshesOnNewVersion() throws Exception {
+		Environment environment = new Environment("app", "default");
+		environment.setLabel("master");
+		environment.setVersion("v1");
+		Mockito.when(this.locator.getLocatedEnvironment()).thenReturn(environment);
+		Mockito.when(this.locator.getDefaults()).thenReturn(
+				new ConfigClientProperties(new StandardEnvironment()));
+		Mockito.when(this.locator.getRestTemplate()).thenReturn(this.restTemplate);
+		String url = "http://localhost:8888/app/default/master/watch?version={version}";
+		Mockito.when(
+				this.restTemplate.exchange(Matchers.eq(url), Matchers.eq(HttpMethod.GET),
+						Mockito.any(HttpEntity.class), Matchers.eq(Map.class),
+						Matchers.eq("v1"))).thenReturn(
+				new ResponseEntity<Map>(Collections.singletonMap("version", "v2"),
+						HttpStatus.OK));
+		Mockito.when(
+				this.restTemplate.exchange(Matchers.eq(url), Matchers.eq(HttpMethod.GET),
+						Mockito.any(HttpEntity.class), Matchers.eq(Map.class),
+						Matchers.eq("v2"))).thenAnswer(new Answer<ResponseEntity<Map>>() {
+			@Override
+			public ResponseEntity<Map> answer(InvocationOnMock invocation)
+					throws Throwable {
+				// Nothing new (the server would hold the request open for a while)
+				Thread.sleep(50);
+				return new ResponseEntity<Map>(HttpStatus.NOT_MODIFIED);
+			}
+		});
+		ConfigurableApplicationContext context = Mockito
+				.mock(ConfigurableApplicationContext.class);
+		ContextRefresher refresher = Mockito.mock(ContextRefresher.class);
+		Mockito.when(context.getBeanNamesForType(ContextRefresher.class)).thenReturn(
+				new String[] { "contextRefresher" });
+		Mockito.when(context.getBean(ContextRefresher.class)).thenReturn(refresher);
+		this.watcher.onApplicationEvent(new ApplicationReadyEvent(
+				new SpringApplication(), new String[0], context));
+		Mockito.verify(refresher, Mockito.timeout(5000)).refresh();
+		Thread.sleep(200);
+		// Only once for the new version
+		Mockito.verify(refresher, Mockito.times(1)).refresh();
+	}
+
+}
@@ -1,20 +1,37 @@
 package org.springframework.cloud.config.client;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.hamcrest.core.IsInstanceOf;
 import org.hamcrest.core.IsNull;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.boot.test.EnvironmentTestUtils;
 import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.StandardEnvironment;
 import org.springframework.http.HttpEntity;
@@ -26,8 +43,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 public class ConfigServicePropertySourceLocatorTests {
@@ -35,6 +55,9 @@ public class ConfigServicePropertySourceLocatorTests {
 	@Rule
 	public ExpectedException expected = ExpectedException.none();
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private ConfigurableEnvironment environment = new StandardEnvironment();
 
 	private ConfigServicePropertySourceLocator locator = new ConfigServicePropertySourceLocator(
@@ -62,6 +85,64 @@ public class ConfigServicePropertySourceLocatorTests {
 		assertNotNull(locator.locate(environment));
 	}
 
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void sendsLastEtag() {
+		Environment body = new Environment("app", "master");
+		HttpHeaders headers = new HttpHeaders();
+		headers.setETag("\"abc\"");
+		mockRequestResponseWithoutLabel(new ResponseEntity<Environment>(body, headers,
+				HttpStatus.OK));
+		locator.setRestTemplate(restTemplate);
+		assertNotNull(locator.locate(environment));
+		mockRequestResponseWithoutLabel(new ResponseEntity<Environment>(
+				HttpStatus.NOT_MODIFIED));
+		assertNotNull(locator.locate(environment));
+		ArgumentCaptor<HttpEntity> entity = ArgumentCaptor.forClass(HttpEntity.class);
+		Mockito.verify(restTemplate, Mockito.times(2)).exchange(
+				Mockito.any(String.class), Mockito.any(HttpMethod.class),
+				entity.capture(), Mockito.any(Class.class), Matchers.anyString(),
+				Matchers.anyString());
+		assertEquals("[\"abc\"]", entity.getValue().getHeaders().getIfNoneMatch()
+				.toString());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void appliesChangesSinceLastVersion() {
+		Environment body = new Environment("app", "master");
+		body.setVersion("v1");
+		body.add(new PropertySource("one", Collections.singletonMap("a", "b")));
+		body.add(new PropertySource("two", Collections.singletonMap("c", "d")));
+		HttpHeaders headers = new HttpHeaders();
+		headers.setETag("\"abc\"");
+		mockRequestResponseWithoutLabel(new ResponseEntity<Environment>(body, headers,
+				HttpStatus.OK));
+		locator.setRestTemplate(restTemplate);
+		assertNotNull(locator.locate(environment));
+		Environment changes = new Environment("app", "master");
+		changes.setVersion("v2");
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("a", null);
+		map.put("e", "f");
+		changes.add(new PropertySource("one", map));
+		changes.add(new PropertySource("two", Collections.emptyMap()));
+		headers = new HttpHeaders();
+		headers.setETag("\"def\"");
+		headers.set("X-Config-Since", "v1");
+		Mockito.when(
+				restTemplate.exchange(Mockito.any(String.class),
+						Mockito.any(HttpMethod.class), Mockito.any(HttpEntity.class),
+						Mockito.any(Class.class), Matchers.anyString(),
+						Matchers.anyString(), Matchers.eq("v1"))).thenReturn(
+				new ResponseEntity<Environment>(changes, headers, HttpStatus.OK));
+		org.springframework.core.env.PropertySource<?> result = locator
+				.locate(environment);
+		assertNull(result.getProperty("a"));
+		assertEquals("f", result.getProperty("e"));
+		assertEquals("d", result.getProperty("c"));
+	}
+
 	@Test
 	public void sunnyDayWithNoSuchLabel() {
 		mockRequestResponseWithLabel(new ResponseEntity<Void>((Void) null,
@@ -135,6 +216,130 @@ public class ConfigServicePropertySourceLocatorTests {
 		assertNull(locator.locate(environment));
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void failOverToNextServer() {
+		ConfigClientProperties defaults = new ConfigClientProperties(environment);
+		defaults.setUri("http://one:8888,http://two:8888");
+		locator = new ConfigServicePropertySourceLocator(defaults);
+		Mockito.when(
+				restTemplate.exchange(Matchers.startsWith("http://one"),
+						Mockito.any(HttpMethod.class), Mockito.any(HttpEntity.class),
+						Mockito.any(Class.class), Matchers.anyString(),
+						Matchers.anyString())).thenThrow(
+				new ResourceAccessException("Connection refused"));
+		Mockito.when(
+				restTemplate.exchange(Matchers.startsWith("http://two"),
+						Mockito.any(HttpMethod.class), Mockito.any(HttpEntity.class),
+						Mockito.any(Class.class), Matchers.anyString(),
+						Matchers.anyString())).thenReturn(
+				new ResponseEntity<Environment>(new Environment("app", "master"),
+						HttpStatus.OK));
+		locator.setRestTemplate(restTemplate);
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertNotNull(locator.locate(environment));
+			}
+			// The first server is only tried once, then it is ejected
+			Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+					Matchers.startsWith("http://one"), Mockito.any(HttpMethod.class),
+					Mockito.any(HttpEntity.class), Mockito.any(Class.class),
+					Matchers.anyString(), Matchers.anyString());
+		}
+		finally {
+			ConfigServerLoadBalancer.reset();
+		}
+	}
+
+	@Test
+	public void readTimeout() throws Exception {
+		// A server that accepts connections but never answers
+		ServerSocket server = new ServerSocket(0);
+		try {
+			ConfigClientProperties defaults = new ConfigClientProperties(environment);
+			defaults.setUri("http://localhost:" + server.getLocalPort());
+			defaults.setReadTimeout(200);
+			defaults.setFailFast(true);
+			locator = new ConfigServicePropertySourceLocator(defaults);
+			long start = System.currentTimeMillis();
+			try {
+				locator.locate(environment);
+				fail("Expected timeout");
+			}
+			catch (IllegalStateException e) {
+				assertTrue(e.getCause() instanceof ResourceAccessException);
+				assertTrue(e.getCause().getCause() instanceof SocketTimeoutException);
+			}
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			// The template (and its connection pool) is created once and reused
+			RestTemplate template = (RestTemplate) ReflectionTestUtils.getField(
+					locator, "secureRestTemplate");
+			assertTrue(template.getRequestFactory() instanceof HttpComponentsClientHttpRequestFactory);
+			try {
+				locator.locate(environment);
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			assertSame(template,
+					ReflectionTestUtils.getField(locator, "secureRestTemplate"));
+			locator.destroy();
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void startsFromSnapshotWhenServerIsSlow() throws Exception {
+		ConfigClientProperties defaults = new ConfigClientProperties(environment);
+		defaults.setSnapshot(new File(this.folder.getRoot(), "snapshot.json").getPath());
+		defaults.setSnapshotTimeout(100);
+		locator = new ConfigServicePropertySourceLocator(defaults);
+		Environment body = new Environment("app", "master");
+		body.add(new PropertySource("one", Collections.singletonMap("a", "1")));
+		mockRequestResponseWithoutLabel(new ResponseEntity<Environment>(body,
+				HttpStatus.OK));
+		locator.setRestTemplate(restTemplate);
+		assertEquals("1", locator.locate(environment).getProperty("a"));
+
+		// Restart with a server that does not answer until it is told to
+		final CountDownLatch answer = new CountDownLatch(1);
+		final Environment changed = new Environment("app", "master");
+		changed.add(new PropertySource("one", Collections.singletonMap("a", "2")));
+		RestTemplate slow = Mockito.mock(RestTemplate.class);
+		Mockito.when(
+				slow.exchange(Mockito.any(String.class), Mockito.any(HttpMethod.class),
+						Mockito.any(HttpEntity.class), Mockito.any(Class.class),
+						Matchers.anyString(), Matchers.anyString())).thenAnswer(
+				new Answer<ResponseEntity<Environment>>() {
+					@Override
+					public ResponseEntity<Environment> answer(InvocationOnMock invocation)
+							throws Throwable {
+						answer.await();
+						return new ResponseEntity<Environment>(changed, HttpStatus.OK);
+					}
+				});
+		locator = new ConfigServicePropertySourceLocator(defaults);
+		locator.setRestTemplate(slow);
+		assertEquals("1", locator.locate(environment).getProperty("a"));
+		final CountDownLatch reconciled = new CountDownLatch(1);
+		locator.setSnapshotCallback(new Runnable() {
+			@Override
+			public void run() {
+				reconciled.countDown();
+			}
+		});
+		answer.countDown();
+		assertTrue(reconciled.await(5, TimeUnit.SECONDS));
+
+		// The next restart has the new values even without a server
+		locator = new ConfigServicePropertySourceLocator(defaults);
+		locator.setRestTemplate(Mockito.mock(RestTemplate.class));
+		assertEquals("2", locator.locate(environment).getProperty("a"));
+	}
+
 	@SuppressWarnings("unchecked")
 	private void mockRequestResponseWithLabel(ResponseEntity<?> response, String label) {
 		Mockito.when(
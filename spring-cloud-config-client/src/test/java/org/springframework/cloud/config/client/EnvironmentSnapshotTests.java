@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.util.FileCopyUtils;
+
+public class EnvironmentSnapshotTests {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Environment environment = new Environment("app", "dev", "mysql");
+
+	public EnvironmentSnapshotTests() {
+		this.environment.setVersion("v1");
+		this.environment.add(new PropertySource("one", Collections.singletonMap("a",
+				"b")));
+	}
+
+	@Test
+	public void writeAndRead() throws Exception {
+		EnvironmentSnapshot snapshot = new EnvironmentSnapshot(file(), null);
+		assertNull(snapshot.read("app", "dev,mysql", "master"));
+		assertTrue(snapshot.write(this.environment, "app", "dev,mysql", "master"));
+		Environment result = snapshot.read("app", "dev,mysql", "master");
+		assertEquals("v1", result.getVersion());
+		assertEquals("b", result.getPropertySources().get(0).getSource().get("a"));
+		// Only good for the same request
+		assertNull(snapshot.read("app", "dev", "master"));
+		assertNull(snapshot.read("app", "dev,mysql", null));
+	}
+
+	@Test
+	public void onlyOwnerCanRead() throws Exception {
+		EnvironmentSnapshot snapshot = new EnvironmentSnapshot(file(), null);
+		snapshot.write(this.environment, "app", "dev", null);
+		assumeTrue(Files.getFileStore(file().toPath()).supportsFileAttributeView(
+				PosixFileAttributeView.class));
+		assertEquals("rw-------", PosixFilePermissions.toString(Files
+				.getPosixFilePermissions(file().toPath())));
+	}
+
+	@Test
+	public void notChangedIfNotWritten() throws Exception {
+		File folder = this.folder.newFile("folder");
+		EnvironmentSnapshot snapshot = new EnvironmentSnapshot(new File(folder,
+				"snapshot.json"), null);
+		assertFalse(snapshot.write(this.environment, "app", "dev", null));
+	}
+
+	@Test
+	public void unchanged() throws Exception {
+		EnvironmentSnapshot snapshot = new EnvironmentSnapshot(file(), null);
+		assertTrue(snapshot.write(this.environment, "app", "dev", null));
+		assertFalse(snapshot.write(this.environment, "app", "dev", null));
+		this.environment.setVersion("v2");
+		assertTrue(snapshot.write(this.environment, "app", "dev", null));
+	}
+
+	@Test
+	public void encrypted() throws Exception {
+		EnvironmentSnapshot snapshot = new EnvironmentSnapshot(file(),
+				new ReversingTextEncryptor());
+		snapshot.write(this.environment, "app", "dev", null);
+		String content = new String(FileCopyUtils.copyToByteArray(file()), UTF8);
+		assertFalse(content.contains("\"a\""));
+		assertEquals("v1", snapshot.read("app", "dev", null).getVersion());
+		// Can't be read without the key
+		assertNull(new EnvironmentSnapshot(file(), null).read("app", "dev", null));
+	}
+
+	@Test
+	public void wrongChecksum() throws Exception {
+		EnvironmentSnapshot snapshot = new EnvironmentSnapshot(file(), null);
+		snapshot.write(this.environment, "app", "dev", null);
+		String content = new String(FileCopyUtils.copyToByteArray(file()), UTF8);
+		FileCopyUtils.copy(content.replace("v1", "v2").getBytes(UTF8),
+				file());
+		assertNull(snapshot.read("app", "dev", null));
+	}
+
+	private File file() {
+		return new File(this.folder.getRoot(), "snapshot.json");
+	}
+
+	private static class ReversingTextEncryptor implements TextEncryptor {
+
+		@Override
+		public String encrypt(String text) {
+			return new StringBuilder(text).reverse().toString();
+		}
+
+		@Override
+		public String decrypt(String encryptedText) {
+			return encrypt(encryptedText);
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.environment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ImmutablePropertyMapTests {
+
+	@Test
+	public void sameAsSource() {
+		Map<String, Object> source = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < 100; i++) {
+			source.put("key" + (100 - i), i % 3 == 0 ? null : "value" + i);
+		}
+		// Different keys with the same hash code
+		source.put("Aa", "x");
+		source.put("BB", "y");
+		Map<String, Object> map = ImmutablePropertyMap.of(source);
+		assertEquals(source, map);
+		assertEquals(source.hashCode(), map.hashCode());
+		assertEquals(source.toString(), map.toString());
+		assertEquals("x", map.get("Aa"));
+		assertEquals("y", map.get("BB"));
+		assertTrue(map.containsKey("key100"));
+		assertNull(map.get("key100"));
+		assertFalse(map.containsKey("key0"));
+		assertFalse(map.containsKey(null));
+	}
+
+	@Test
+	public void internedKeys() {
+		Map<String, Object> source = new LinkedHashMap<String, Object>();
+		source.put(new String("foo"), "bar");
+		assertSame("foo", ImmutablePropertyMap.of(source).keySet().iterator().next());
+	}
+
+	@Test
+	public void notCopiedTwice() {
+		Map<String, Object> map = ImmutablePropertyMap
+				.of(new LinkedHashMap<String, Object>());
+		assertSame(map, ImmutablePropertyMap.of(map));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void readOnly() {
+		ImmutablePropertyMap.of(new LinkedHashMap<String, Object>()).put("foo", "bar");
+	}
+
+}
@@ -20,6 +20,8 @@ import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cloud.config.server.EnvironmentRepository;
+import org.springframework.cloud.config.server.EnvironmentWatcher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -36,8 +38,26 @@ public class EnvironmentMonitorAutoConfiguration {
 	@Autowired(required=false)
 	private List<PropertyPathNotificationExtractor> extractors;
 
+	/**
+	 * The repository beans are declared as plain EnvironmentRepository, so the listener
+	 * works out what is behind this one (e.g. a cache and git) when it needs to.
+	 */
+	@Autowired(required = false)
+	private EnvironmentRepository repository;
+
+	@Autowired(required = false)
+	private EnvironmentWatcher watcher;
+
 	@Bean
 	public PropertyPathEndpoint propertyPathEndpoint() {
 		return new PropertyPathEndpoint(new CompositePropertyPathNotificationExtractor(this.extractors));
 	}
+
+	@Bean
+	public RepositoryRefreshListener repositoryRefreshListener() {
+		RepositoryRefreshListener listener = new RepositoryRefreshListener(
+				this.repository);
+		listener.setWatcher(this.watcher);
+		return listener;
+	}
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.monitor;
+
+import org.springframework.cloud.bus.event.RefreshRemoteApplicationEvent;
+import org.springframework.cloud.config.server.CachingEnvironmentRepository;
+import org.springframework.cloud.config.server.EnvironmentRepository;
+import org.springframework.cloud.config.server.EnvironmentWatcher;
+import org.springframework.cloud.config.server.JGitEnvironmentRepository;
+import org.springframework.context.ApplicationListener;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.apachecommons.CommonsLog;
+
+/**
+ * Listens for the refresh events sent by the {@link PropertyPathEndpoint} (or from
+ * anywhere else), fetches the latest changes into the git repository (if there is one)
+ * and evicts the affected environments from the server's cache (if there is one), so that
+ * the clients being refreshed do not get stale values back. Clients that are watching
+ * for changes (if there are any) are told about new versions. The git repository and the
+ * cache are found by looking at the server's repository (and what it delegates to) when
+ * an event arrives, not by their bean types, which are only known once they exist.
+ *
+ */
+@RequiredArgsConstructor
+@CommonsLog
+public class RepositoryRefreshListener
+		implements ApplicationListener<RefreshRemoteApplicationEvent> {
+
+	/**
+	 * The server's repository (can be null).
+	 */
+	private final EnvironmentRepository repository;
+
+	private EnvironmentWatcher watcher;
+
+	/**
+	 * @param watcher the watcher to tell about the changes (can be null)
+	 */
+	public void setWatcher(EnvironmentWatcher watcher) {
+		this.watcher = watcher;
+	}
+
+	@Override
+	public void onApplicationEvent(RefreshRemoteApplicationEvent event) {
+		JGitEnvironmentRepository git = find(JGitEnvironmentRepository.class);
+		if (git != null) {
+			log.info("Fetching changes for repository: " + git.getUri());
+			git.refresh();
+		}
+		CachingEnvironmentRepository cache = find(CachingEnvironmentRepository.class);
+		if (cache != null) {
+			evict(cache, event);
+		}
+		if (this.watcher != null) {
+			// Covers changes that are not fetched (e.g. in a local repository)
+			this.watcher.checkLater();
+		}
+	}
+
+	private <T extends EnvironmentRepository> T find(Class<T> type) {
+		EnvironmentRepository repository = this.repository;
+		while (repository != null) {
+			if (type.isInstance(repository)) {
+				return type.cast(repository);
+			}
+			repository = repository instanceof CachingEnvironmentRepository
+					? ((CachingEnvironmentRepository) repository).getDelegate() : null;
+		}
+		return null;
+	}
+
+	private void evict(CachingEnvironmentRepository cache,
+			RefreshRemoteApplicationEvent event) {
+		String service = event.getDestinationService();
+		if (service != null && service.contains(":")) {
+			service = service.substring(0, service.indexOf(":"));
+		}
+		if (service == null || service.contains("*")) {
+			log.info("Evicting all cached environments");
+			cache.evictAll();
+		}
+		else {
+			log.info("Evicting cached environments for: " + service);
+			cache.evict(service);
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.monitor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.bus.event.RefreshRemoteApplicationEvent;
+import org.springframework.cloud.config.server.CachingEnvironmentRepository;
+import org.springframework.cloud.config.server.EnvironmentRepository;
+import org.springframework.cloud.config.server.EnvironmentWatcher;
+import org.springframework.cloud.config.server.JGitEnvironmentRepository;
+
+/**
+ */
+public class RepositoryRefreshListenerTests {
+
+	private JGitEnvironmentRepository repository = Mockito
+			.mock(JGitEnvironmentRepository.class);
+
+	private CachingEnvironmentRepository cache = Mockito
+			.mock(CachingEnvironmentRepository.class);
+
+	private RepositoryRefreshListener listener = new RepositoryRefreshListener(
+			this.cache);
+
+	@Before
+	public void init() {
+		Mockito.when(this.cache.getDelegate()).thenReturn(this.repository);
+	}
+
+	@Test
+	public void refreshService() {
+		this.listener.onApplicationEvent(new RefreshRemoteApplicationEvent(this, "app",
+				"foo:**"));
+		Mockito.verify(this.repository).refresh();
+		Mockito.verify(this.cache).evict("foo");
+	}
+
+	@Test
+	public void refreshAll() {
+		this.listener.onApplicationEvent(new RefreshRemoteApplicationEvent(this, "app",
+				"*"));
+		Mockito.verify(this.repository).refresh();
+		Mockito.verify(this.cache).evictAll();
+	}
+
+	@Test
+	public void noCache() {
+		new RepositoryRefreshListener(this.repository)
+				.onApplicationEvent(new RefreshRemoteApplicationEvent(this, "app", "foo"));
+		Mockito.verify(this.repository).refresh();
+	}
+
+	@Test
+	public void checksWatchedVersions() {
+		EnvironmentWatcher watcher = Mockito.mock(EnvironmentWatcher.class);
+		this.listener.setWatcher(watcher);
+		this.listener.onApplicationEvent(new RefreshRemoteApplicationEvent(this, "app",
+				"foo"));
+		Mockito.verify(watcher).checkLater();
+	}
+
+	@Test
+	public void noRepository() {
+		new RepositoryRefreshListener(null)
+				.onApplicationEvent(new RefreshRemoteApplicationEvent(this, "app", "foo"));
+	}
+
+	@Test
+	public void cacheWithoutGit() {
+		Mockito.when(this.cache.getDelegate()).thenReturn(
+				Mockito.mock(EnvironmentRepository.class));
+		this.listener.onApplicationEvent(new RefreshRemoteApplicationEvent(this, "app",
+				"foo"));
+		Mockito.verify(this.cache).evict("foo");
+		Mockito.verifyZeroInteractions(this.repository);
+	}
+
+}
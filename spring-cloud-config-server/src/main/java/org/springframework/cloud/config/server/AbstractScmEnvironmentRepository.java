@@ -144,20 +144,73 @@ public abstract class AbstractScmEnvironmentRepository implements EnvironmentRep
 	protected String[] getSearchLocations(File dir) {
 		List<String> locations = new ArrayList<String>();
 		locations.add(dir.toURI().toString());
+		addSearchLocations(locations, dir, "");
+		return locations.toArray(new String[0]);
+	}
+
+	private void addSearchLocations(List<String> locations, File dir, String prefix) {
 		String[] list = dir.list();
 		if (list!=null) {
-			for (String path : list) {
-				File file = new File(dir, path);
-				if (file.isDirectory() && PatternMatchUtils.simpleMatch(searchPaths, path)) {
-					locations.add(file.toURI().toString());
+			for (String name : list) {
+				File file = new File(dir, name);
+				String path = prefix + name;
+				if (file.isDirectory()) {
+					if (isSearchPath(path)) {
+						locations.add(file.toURI().toString());
+					}
+					if (isSearchPathParent(path)) {
+						addSearchLocations(locations, file, path + "/");
+					}
 				}
 			}
 		}
-		return locations.toArray(new String[0]);
+	}
+
+	/**
+	 * @param path a directory relative to the root of the repository (with "/" between
+	 * the directories)
+	 * @return true if the directory matches one of the search paths (a directory at a
+	 * time, so "*" only matches the top level and "config/*" the one below "config")
+	 */
+	protected boolean isSearchPath(String path) {
+		String[] dirs = StringUtils.tokenizeToStringArray(path, "/");
+		for (String searchPath : searchPaths) {
+			String[] patterns = StringUtils.tokenizeToStringArray(searchPath, "/");
+			if (patterns.length == dirs.length && matches(patterns, dirs)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param path a directory relative to the root of the repository
+	 * @return true if one of the search paths might match a directory below this one
+	 */
+	protected boolean isSearchPathParent(String path) {
+		String[] dirs = StringUtils.tokenizeToStringArray(path, "/");
+		for (String searchPath : searchPaths) {
+			String[] patterns = StringUtils.tokenizeToStringArray(searchPath, "/");
+			if (patterns.length > dirs.length && matches(patterns, dirs)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matches(String[] patterns, String[] dirs) {
+		for (int i = 0; i < dirs.length; i++) {
+			if (!PatternMatchUtils.simpleMatch(patterns[i], dirs[i])) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	protected Environment clean(Environment value) {
 		Environment result = new Environment(value.getName(), value.getProfiles(), value.getLabel());
+		result.setVersion(value.getVersion());
+		result.setState(value.getState());
 		for (PropertySource source : value.getPropertySources()) {
 			String name = source.getName().replace(
 					getWorkingDirectory().toURI().toString(), "");
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.util.List;
+
+import org.springframework.cloud.config.environment.Environment;
+
+/**
+ * An {@link EnvironmentRepository} that can load several environments in one go more
+ * cheaply than one at a time, e.g. by reading all the ones with the same label from the
+ * same snapshot of the repository and parsing the files they share only once.
+ *
+ */
+public interface BatchEnvironmentRepository extends EnvironmentRepository {
+
+	/**
+	 * @param requests the environments to load (only the name, profiles and label are
+	 * used, and the label must not be null)
+	 * @return the environments in the same order as the requests
+	 */
+	List<Environment> findAll(List<Environment> requests);
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.ImmutablePropertyMap;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * {@link EnvironmentRepository} that remembers the environments resolved by another
+ * repository. The cache key includes the version (e.g. commit id) that the label resolves
+ * to now according to the delegate (a {@link VersionedEnvironmentRepository}), so new
+ * commits are picked up without any explicit invalidation. If there is no version (e.g.
+ * the delegate does not know versions, or the files might not be committed) the cache is
+ * bypassed and every request goes to the delegate. Entries live until they are evicted
+ * explicitly (e.g. by the config monitor) or pushed out by newer entries (least recently
+ * used first). Several environments can be loaded at once, and the ones that are not
+ * cached are passed on together if the delegate is a {@link BatchEnvironmentRepository}.
+ *
+ */
+public class CachingEnvironmentRepository implements VersionedEnvironmentRepository,
+		BatchEnvironmentRepository {
+
+	private static Log logger = LogFactory.getLog(CachingEnvironmentRepository.class);
+
+	private static final int DEFAULT_MAX_SIZE = 1000;
+
+	private final EnvironmentRepository delegate;
+
+	private final Map<CacheKey, Environment> cache;
+
+	private final ConcurrentMap<CacheKey, FutureTask<Environment>> loading = new ConcurrentHashMap<CacheKey, FutureTask<Environment>>();
+
+	public CachingEnvironmentRepository(EnvironmentRepository delegate) {
+		this(delegate, DEFAULT_MAX_SIZE);
+	}
+
+	public CachingEnvironmentRepository(EnvironmentRepository delegate,
+			final int maxSize) {
+		Assert.notNull(delegate, "EnvironmentRepository must not be null");
+		Assert.isTrue(maxSize > 0, "Cache size must be positive");
+		this.delegate = delegate;
+		this.cache = new LinkedHashMap<CacheKey, Environment>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, Environment> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public EnvironmentRepository getDelegate() {
+		return this.delegate;
+	}
+
+	@Override
+	public String getDefaultLabel() {
+		return this.delegate.getDefaultLabel();
+	}
+
+	@Override
+	public Environment findOne(final String application, final String profile,
+			final String label) {
+		String version = getVersion(application, profile, label);
+		if (version == null) {
+			// Nothing to tell whether a cached copy is still up to date
+			return this.delegate.findOne(application, profile, label);
+		}
+		CacheKey key = new CacheKey(application, profile, label, version);
+		Environment result;
+		synchronized (this.cache) {
+			result = this.cache.get(key);
+		}
+		if (result == null) {
+			// Cached under the version that was actually loaded (which might be newer)
+			result = load(key, new Callable<Environment>() {
+				@Override
+				public Environment call() throws Exception {
+					return CachingEnvironmentRepository.this.delegate.findOne(
+							application, profile, label);
+				}
+			});
+		}
+		return result == null ? null : copy(result);
+	}
+
+	@Override
+	public List<Environment> findAll(List<Environment> requests) {
+		Environment[] result = new Environment[requests.size()];
+		List<Environment> misses = new ArrayList<Environment>();
+		List<Integer> indexes = new ArrayList<Integer>();
+		List<CacheKey> keys = new ArrayList<CacheKey>();
+		// The version only depends on the label (and the repository the application
+		// maps to), so it is looked up once for each of them
+		Map<String, String> versions = new HashMap<String, String>();
+		for (int i = 0; i < requests.size(); i++) {
+			Environment request = requests.get(i);
+			String profile = StringUtils.arrayToCommaDelimitedString(request
+					.getProfiles());
+			String versionKey = request.getName() + "@" + request.getLabel();
+			if (!versions.containsKey(versionKey)) {
+				versions.put(versionKey, getVersion(request.getName(), profile,
+						request.getLabel()));
+			}
+			String version = versions.get(versionKey);
+			CacheKey key = version == null ? null : new CacheKey(request.getName(),
+					profile, request.getLabel(), version);
+			if (key != null) {
+				Environment cached;
+				synchronized (this.cache) {
+					cached = this.cache.get(key);
+				}
+				if (cached != null) {
+					result[i] = copy(cached);
+					continue;
+				}
+			}
+			misses.add(request);
+			indexes.add(i);
+			keys.add(key);
+		}
+		if (!misses.isEmpty()) {
+			List<Environment> loaded = loadAll(misses);
+			for (int j = 0; j < loaded.size(); j++) {
+				Environment environment = loaded.get(j);
+				if (environment != null && keys.get(j) != null) {
+					environment = copy(store(keys.get(j), environment));
+				}
+				result[indexes.get(j)] = environment;
+			}
+		}
+		return Arrays.asList(result);
+	}
+
+	private List<Environment> loadAll(List<Environment> requests) {
+		if (this.delegate instanceof BatchEnvironmentRepository) {
+			return ((BatchEnvironmentRepository) this.delegate).findAll(requests);
+		}
+		List<Environment> loaded = new ArrayList<Environment>();
+		for (Environment request : requests) {
+			loaded.add(this.delegate.findOne(request.getName(),
+					StringUtils.arrayToCommaDelimitedString(request.getProfiles()),
+					request.getLabel()));
+		}
+		return loaded;
+	}
+
+	/**
+	 * Remove all cached environments for an application.
+	 *
+	 * @param application the application name
+	 */
+	public void evict(String application) {
+		synchronized (this.cache) {
+			for (Iterator<CacheKey> iter = this.cache.keySet().iterator(); iter
+					.hasNext();) {
+				if (ObjectUtils.nullSafeEquals(application, iter.next().application)) {
+					iter.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached environments.
+	 */
+	public void evictAll() {
+		synchronized (this.cache) {
+			this.cache.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (this.cache) {
+			return this.cache.size();
+		}
+	}
+
+	@Override
+	public String getVersion(String application, String profile, String label) {
+		if (this.delegate instanceof VersionedEnvironmentRepository) {
+			return ((VersionedEnvironmentRepository) this.delegate).getVersion(
+					application, profile, label);
+		}
+		return null;
+	}
+
+	@Override
+	public String getLocalVersion(String application, String profile, String label) {
+		if (this.delegate instanceof VersionedEnvironmentRepository) {
+			return ((VersionedEnvironmentRepository) this.delegate).getLocalVersion(
+					application, profile, label);
+		}
+		return null;
+	}
+
+	/**
+	 * Load an environment from the delegate, making sure that concurrent requests for the
+	 * same key only cause one load.
+	 */
+	private Environment load(CacheKey key, Callable<Environment> callable) {
+		FutureTask<Environment> task = new FutureTask<Environment>(callable);
+		FutureTask<Environment> existing = this.loading.putIfAbsent(key, task);
+		if (existing == null) {
+			existing = task;
+			task.run();
+		}
+		try {
+			Environment result = existing.get();
+			return result == null ? null : store(key, result);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading environment", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Cannot load environment", e.getCause());
+		}
+		finally {
+			this.loading.remove(key, existing);
+		}
+	}
+
+	/**
+	 * Cache a loaded environment under the version that was actually loaded (which might
+	 * be newer than the one in the key).
+	 *
+	 * @return the cached copy
+	 */
+	private Environment store(CacheKey key, Environment environment) {
+		Environment result = compact(environment);
+		CacheKey loaded = key;
+		if (result.getVersion() != null) {
+			loaded = key.withVersion(result.getVersion());
+		}
+		synchronized (this.cache) {
+			this.cache.put(loaded, result);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Cached environment for: " + loaded);
+		}
+		return result;
+	}
+
+	/**
+	 * Callers are free to add property sources to the result, so they never see the
+	 * cached instance.
+	 */
+	private Environment copy(Environment value) {
+		Environment result = new Environment(value.getName(), value.getProfiles(),
+				value.getLabel());
+		result.setVersion(value.getVersion());
+		result.setState(value.getState());
+		for (PropertySource source : value.getPropertySources()) {
+			result.add(source);
+		}
+		return result;
+	}
+
+	/**
+	 * Cached environments can be kept for a long time, so their sources are stored as
+	 * compact immutable maps.
+	 */
+	private Environment compact(Environment value) {
+		Environment result = new Environment(value.getName(), value.getProfiles(),
+				value.getLabel());
+		result.setVersion(value.getVersion());
+		result.setState(value.getState());
+		for (PropertySource source : value.getPropertySources()) {
+			result.add(new PropertySource(source.getName(), ImmutablePropertyMap
+					.of(source.getSource())));
+		}
+		return result;
+	}
+
+	private static class CacheKey {
+
+		private final String application;
+		private final String profile;
+		private final String label;
+		private final String version;
+
+		public CacheKey(String application, String profile, String label,
+				String version) {
+			this.application = application;
+			this.profile = profile;
+			this.label = label;
+			this.version = version;
+		}
+
+		public CacheKey withVersion(String version) {
+			return new CacheKey(this.application, this.profile, this.label, version);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return ObjectUtils.nullSafeEquals(this.application, other.application)
+					&& ObjectUtils.nullSafeEquals(this.profile, other.profile)
+					&& ObjectUtils.nullSafeEquals(this.label, other.label)
+					&& ObjectUtils.nullSafeEquals(this.version, other.version);
+		}
+
+		@Override
+		public int hashCode() {
+			return ObjectUtils.nullSafeHashCode(new Object[] { this.application,
+					this.profile, this.label, this.version });
+		}
+
+		@Override
+		public String toString() {
+			return "[application=" + this.application + ", profile=" + this.profile
+					+ ", label=" + this.label + ", version=" + this.version + "]";
+		}
+
+	}
+
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.env.EnumerableCompositePropertySource;
+import org.springframework.boot.env.PropertySourceLoader;
+import org.springframework.boot.env.PropertySourcesLoader;
+import org.springframework.cloud.config.environment.ImmutablePropertyMap;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.util.Assert;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Loads configuration files using the same rules as a Spring Boot application (config
+ * names, search locations, profile-specific files and documents, and the precedence
+ * between them), but without running a SpringApplication. The
+ * <code>spring.config.name</code>, <code>spring.config.location</code> and
+ * <code>spring.profiles.active</code> properties are read from the environment that is
+ * passed in, exactly as they would be by the <code>ConfigFileApplicationListener</code>
+ * in Spring Boot, so the resulting property sources (names and order) are the same.
+ *
+ */
+public class ConfigFileLoader {
+
+	private static Log logger = LogFactory.getLog(ConfigFileLoader.class);
+
+	private static final String ACTIVE_PROFILES_PROPERTY = "spring.profiles.active";
+
+	private static final String INCLUDE_PROFILES_PROPERTY = "spring.profiles.include";
+
+	private static final String CONFIG_NAME_PROPERTY = "spring.config.name";
+
+	private static final String CONFIG_LOCATION_PROPERTY = "spring.config.location";
+
+	private static final String DEFAULT_SEARCH_LOCATIONS = "classpath:/,classpath:/config/,file:./,file:./config/";
+
+	private static final String DEFAULT_NAMES = "application";
+
+	private static final Object NONE = new Object();
+
+	private static final int MAX_CACHED = 1000;
+
+	private final ResourceLoader resourceLoader;
+
+	private final List<PropertySourceLoader> loaders = SpringFactoriesLoader
+			.loadFactories(PropertySourceLoader.class,
+					PropertySourcesLoader.class.getClassLoader());
+
+	private ConcurrentMap<String, Object> cache;
+
+	public ConfigFileLoader() {
+		this(new DefaultResourceLoader());
+	}
+
+	public ConfigFileLoader(ResourceLoader resourceLoader) {
+		Assert.notNull(resourceLoader, "ResourceLoader must not be null");
+		this.resourceLoader = resourceLoader;
+	}
+
+	/**
+	 * Share parsed config files with other loaders that read the same version of the
+	 * same files (e.g. one commit in a git repository). Without a cache (the default)
+	 * the files are parsed every time they are loaded.
+	 *
+	 * @param cache the parsed files, keyed by location and profile (the values are
+	 * opaque, and the cache is cleared if it gets too big)
+	 */
+	public void setCache(ConcurrentMap<String, Object> cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Load the config files for the given environment. The environment itself is not
+	 * changed, except that profiles included from config files are added to its active
+	 * profiles (as in a Spring Boot application).
+	 *
+	 * @param environment the environment that provides the names, locations and profiles
+	 * @return the property sources in order of precedence (highest first)
+	 */
+	public List<PropertySource<?>> load(ConfigurableEnvironment environment) {
+		try {
+			return new Loader(environment).load();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to load configuration files", e);
+		}
+	}
+
+	/**
+	 * Loads candidate property sources and manages the active profiles.
+	 */
+	private class Loader {
+
+		private final ConfigurableEnvironment environment;
+
+		private MutablePropertySources propertySources;
+
+		private Queue<String> profiles;
+
+		private List<String> processedProfiles;
+
+		private boolean activatedProfiles;
+
+		Loader(ConfigurableEnvironment environment) {
+			this.environment = environment;
+		}
+
+		public List<PropertySource<?>> load() throws IOException {
+			this.propertySources = new MutablePropertySources();
+			this.activatedProfiles = false;
+			this.profiles = Collections.asLifoQueue(new LinkedList<String>());
+			this.processedProfiles = new LinkedList<String>();
+			Set<String> initialActiveProfiles = initializeActiveProfiles();
+			this.profiles.addAll(getUnprocessedActiveProfiles(initialActiveProfiles));
+			if (this.profiles.isEmpty()) {
+				for (String defaultProfile : this.environment.getDefaultProfiles()) {
+					if (!this.profiles.contains(defaultProfile)) {
+						this.profiles.add(defaultProfile);
+					}
+				}
+			}
+			// The default profile is represented as null and added last so that it is
+			// processed first (lowest precedence)
+			this.profiles.add(null);
+			while (!this.profiles.isEmpty()) {
+				String profile = this.profiles.poll();
+				for (String location : getSearchLocations()) {
+					if (!location.endsWith("/")) {
+						// location is a filename already
+						load(location, null, profile);
+					}
+					else {
+						for (String name : getSearchNames()) {
+							load(location, name, profile);
+						}
+					}
+				}
+				this.processedProfiles.add(profile);
+			}
+			return flatten();
+		}
+
+		private Set<String> initializeActiveProfiles() {
+			if (!this.environment.containsProperty(ACTIVE_PROFILES_PROPERTY)) {
+				return Collections.emptySet();
+			}
+			// Profiles that are already active take precedence over those added in
+			// config files
+			Set<String> activeProfiles = getProfilesForValue(this.environment
+					.getProperty(ACTIVE_PROFILES_PROPERTY));
+			maybeActivateProfiles(activeProfiles);
+			return activeProfiles;
+		}
+
+		private List<String> getUnprocessedActiveProfiles(
+				Set<String> initialActiveProfiles) {
+			List<String> unprocessedActiveProfiles = new ArrayList<String>();
+			for (String profile : this.environment.getActiveProfiles()) {
+				if (!initialActiveProfiles.contains(profile)) {
+					unprocessedActiveProfiles.add(profile);
+				}
+			}
+			// Reverse them so the order is the same as from getProfilesForValue()
+			Collections.reverse(unprocessedActiveProfiles);
+			return unprocessedActiveProfiles;
+		}
+
+		private void load(String location, String name, String profile)
+				throws IOException {
+			String group = "profile=" + (profile == null ? "" : profile);
+			if (!StringUtils.hasText(name)) {
+				loadIntoGroup(group, location, profile);
+				return;
+			}
+			for (String ext : getAllFileExtensions()) {
+				if (profile != null) {
+					// Try the profile specific file
+					loadIntoGroup(group, location + name + "-" + profile + "." + ext, null);
+					for (String processedProfile : this.processedProfiles) {
+						if (processedProfile != null) {
+							loadIntoGroup(group, location + name + "-" + processedProfile
+									+ "." + ext, profile);
+						}
+					}
+					// Sometimes people put "spring.profiles: dev" in application-dev.yml
+					loadIntoGroup(group, location + name + "-" + profile + "." + ext,
+							profile);
+				}
+				// Also try the profile specific section (if any) of the normal file
+				loadIntoGroup(group, location + name + "." + ext, profile);
+			}
+		}
+
+		private PropertySource<?> loadIntoGroup(String identifier, String location,
+				String profile) throws IOException {
+			Resource resource = ConfigFileLoader.this.resourceLoader
+					.getResource(location);
+			PropertySource<?> propertySource = null;
+			if (resource != null && resource.exists()) {
+				String name = "applicationConfig: [" + location + "]";
+				String group = "applicationConfig: [" + identifier + "]";
+				propertySource = load(resource, group, name, profile);
+				if (propertySource != null) {
+					handleProfileProperties(propertySource);
+				}
+			}
+			if (logger.isTraceEnabled()) {
+				logger.trace((propertySource == null ? "Skipped" : "Loaded")
+						+ " config file '" + location + "'"
+						+ (profile == null ? "" : " for profile " + profile));
+			}
+			return propertySource;
+		}
+
+		private void handleProfileProperties(PropertySource<?> propertySource) {
+			maybeActivateProfiles(getProfilesForValue(propertySource
+					.getProperty(ACTIVE_PROFILES_PROPERTY)));
+			addProfiles(getProfilesForValue(propertySource
+					.getProperty(INCLUDE_PROFILES_PROPERTY)));
+		}
+
+		private void maybeActivateProfiles(Set<String> profiles) {
+			if (this.activatedProfiles) {
+				if (!profiles.isEmpty() && logger.isDebugEnabled()) {
+					logger.debug("Profiles already activated, '" + profiles
+							+ "' will not be applied");
+				}
+				return;
+			}
+			if (profiles.size() > 0) {
+				addProfiles(profiles);
+				this.activatedProfiles = true;
+			}
+		}
+
+		private Set<String> getProfilesForValue(Object property) {
+			return asResolvedSet(property == null ? null : property.toString(), null);
+		}
+
+		private void addProfiles(Set<String> profiles) {
+			for (String profile : profiles) {
+				this.profiles.add(profile);
+				if (!this.environment.acceptsProfiles(profile)) {
+					// If it's already accepted we assume the order was set intentionally
+					prependProfile(profile);
+				}
+			}
+		}
+
+		private void prependProfile(String profile) {
+			Set<String> profiles = new LinkedHashSet<String>();
+			profiles.add(profile);
+			profiles.addAll(Arrays.asList(this.environment.getActiveProfiles()));
+			this.environment.setActiveProfiles(profiles.toArray(new String[profiles
+					.size()]));
+		}
+
+		private Set<String> getSearchLocations() {
+			Set<String> locations = new LinkedHashSet<String>();
+			// User-configured settings take precedence, so we do them first
+			if (this.environment.containsProperty(CONFIG_LOCATION_PROPERTY)) {
+				for (String path : asResolvedSet(
+						this.environment.getProperty(CONFIG_LOCATION_PROPERTY), null)) {
+					if (!path.contains("$")) {
+						path = StringUtils.cleanPath(path);
+						if (!ResourceUtils.isUrl(path)) {
+							path = ResourceUtils.FILE_URL_PREFIX + path;
+						}
+					}
+					locations.add(path);
+				}
+			}
+			locations.addAll(asResolvedSet(null, DEFAULT_SEARCH_LOCATIONS));
+			return locations;
+		}
+
+		private Set<String> getSearchNames() {
+			if (this.environment.containsProperty(CONFIG_NAME_PROPERTY)) {
+				return asResolvedSet(
+						this.environment.getProperty(CONFIG_NAME_PROPERTY), null);
+			}
+			return asResolvedSet(null, DEFAULT_NAMES);
+		}
+
+		private Set<String> asResolvedSet(String value, String fallback) {
+			List<String> list = Arrays.asList(StringUtils
+					.commaDelimitedListToStringArray(value != null ? this.environment
+							.resolvePlaceholders(value) : fallback));
+			Collections.reverse(list);
+			return new LinkedHashSet<String>(list);
+		}
+
+		private Set<String> getAllFileExtensions() {
+			Set<String> extensions = new LinkedHashSet<String>();
+			for (PropertySourceLoader loader : ConfigFileLoader.this.loaders) {
+				extensions.addAll(Arrays.asList(loader.getFileExtensions()));
+			}
+			return extensions;
+		}
+
+		/**
+		 * The same as {@link PropertySourcesLoader#load(Resource, String, String, String)}
+		 * (for a resource that exists), except that the parsed file may come from the
+		 * cache.
+		 */
+		private PropertySource<?> load(Resource resource, String group, String name,
+				String profile) throws IOException {
+			if (!StringUtils.hasText(StringUtils.getFilenameExtension(resource
+					.getFilename()))) {
+				return null;
+			}
+			String sourceName = profile == null ? name : name + "#" + profile;
+			for (PropertySourceLoader loader : ConfigFileLoader.this.loaders) {
+				if (canLoadFileExtension(loader, resource)) {
+					PropertySource<?> source = parse(loader, sourceName, resource,
+							profile);
+					addPropertySource(group, source);
+					return source;
+				}
+			}
+			return null;
+		}
+
+		private boolean canLoadFileExtension(PropertySourceLoader loader,
+				Resource resource) {
+			String filename = resource.getFilename().toLowerCase();
+			for (String extension : loader.getFileExtensions()) {
+				if (filename.endsWith("." + extension.toLowerCase())) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private PropertySource<?> parse(PropertySourceLoader loader, String name,
+				Resource resource, String profile) throws IOException {
+			ConcurrentMap<String, Object> cache = ConfigFileLoader.this.cache;
+			if (cache == null) {
+				return loader.load(name, resource, profile);
+			}
+			Object source = cache.get(name);
+			if (source == null) {
+				source = loader.load(name, resource, profile);
+				if (source instanceof MapPropertySource) {
+					// Cached files can be kept for a long time, so make them compact
+					source = new MapPropertySource(name,
+							ImmutablePropertyMap.of(((MapPropertySource) source)
+									.getSource()));
+				}
+				if (cache.size() >= MAX_CACHED) {
+					// Profiles come from the client, so there could be any number of them
+					cache.clear();
+				}
+				cache.put(name, source == null ? NONE : source);
+			}
+			return source == NONE ? null : (PropertySource<?>) source;
+		}
+
+		private void addPropertySource(String group, PropertySource<?> source) {
+			if (source == null) {
+				return;
+			}
+			PropertySource<?> existing = this.propertySources.get(group);
+			EnumerableCompositePropertySource composite;
+			if (existing instanceof EnumerableCompositePropertySource) {
+				composite = (EnumerableCompositePropertySource) existing;
+			}
+			else {
+				composite = new EnumerableCompositePropertySource(group);
+			}
+			composite.add(source);
+			if (this.propertySources.contains(group)) {
+				this.propertySources.replace(group, composite);
+			}
+			else {
+				this.propertySources.addFirst(composite);
+			}
+		}
+
+		/**
+		 * The loaded sources are grouped by profile (most specific group first), so
+		 * unpack them into a single list.
+		 */
+		private List<PropertySource<?>> flatten() {
+			List<PropertySource<?>> result = new ArrayList<PropertySource<?>>();
+			for (PropertySource<?> source : this.propertySources) {
+				if (source instanceof EnumerableCompositePropertySource) {
+					Collection<PropertySource<?>> nested = ((EnumerableCompositePropertySource) source)
+							.getSource();
+					result.addAll(nested);
+				}
+				else {
+					result.add(source);
+				}
+			}
+			return result;
+		}
+
+	}
+
+}
@@ -38,6 +38,12 @@ public class ConfigServerHealthIndicator extends AbstractHealthIndicator {
 
 	@Override
 	protected void doHealthCheck(Health.Builder builder) throws Exception {
+		if (environmentRepository instanceof JGitEnvironmentRepository
+				&& ((JGitEnvironmentRepository) environmentRepository).isCloning()) {
+			// Not ready yet (and a request would block until the clone is finished)
+			builder.outOfService().withDetail("cloning", true);
+			return;
+		}
 		builder.up();
 		List<Map<String, Object>> details = new ArrayList<>();
 		for (String name : repositories.keySet()) {
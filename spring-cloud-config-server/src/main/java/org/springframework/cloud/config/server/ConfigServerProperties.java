@@ -72,10 +72,28 @@ public class ConfigServerProperties {
 	 */
 	private Encrypt encrypt = new Encrypt();
 
+	/**
+	 * Configuration for caching environments resolved by the repository.
+	 */
+	private Cache cache = new Cache();
+
+	/**
+	 * Configuration for clients watching environments for changes.
+	 */
+	private Watch watch = new Watch();
+
 	public Encrypt getEncrypt() {
 		return this.encrypt;
 	}
 
+	public Cache getCache() {
+		return this.cache;
+	}
+
+	public Watch getWatch() {
+		return this.watch;
+	}
+
 	public String getDefaultLabel() {
 		return this.defaultLabel;
 	}
@@ -138,6 +156,112 @@ public class ConfigServerProperties {
 		 */
 		private boolean enabled = true;
 
+		/**
+		 * Maximum number of decrypted values to keep in memory, keyed by cipher text and
+		 * encryption key (the least recently used are evicted first). Set to 0 to
+		 * decrypt every value on every request.
+		 */
+		private int cacheSize = 0;
+
+		/**
+		 * Time to live in seconds for a decrypted value in the cache (0 means no limit).
+		 */
+		private long cacheTimeToLive = 300;
+
+		/**
+		 * Number of background threads for decrypting environments with a lot of
+		 * encrypted values (0 means decrypt them all on the request thread).
+		 */
+		private int parallelism = 0;
+
+		/**
+		 * Minimum number of encrypted values in an environment for it to be decrypted in
+		 * parallel.
+		 */
+		private int parallelThreshold = 100;
+
+		/**
+		 * Interval in seconds between checks for a modified keystore (when it is a
+		 * file). The keys and the decrypted values are thrown away when it changes. Set
+		 * to 0 to only reload the keystore when the environment is refreshed.
+		 */
+		private long keyStoreCheckInterval = 5;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getCacheSize() {
+			return this.cacheSize;
+		}
+
+		public void setCacheSize(int cacheSize) {
+			this.cacheSize = cacheSize;
+		}
+
+		public long getCacheTimeToLive() {
+			return this.cacheTimeToLive;
+		}
+
+		public void setCacheTimeToLive(long cacheTimeToLive) {
+			this.cacheTimeToLive = cacheTimeToLive;
+		}
+
+		public int getParallelism() {
+			return this.parallelism;
+		}
+
+		public void setParallelism(int parallelism) {
+			this.parallelism = parallelism;
+		}
+
+		public int getParallelThreshold() {
+			return this.parallelThreshold;
+		}
+
+		public void setParallelThreshold(int parallelThreshold) {
+			this.parallelThreshold = parallelThreshold;
+		}
+
+		public long getKeyStoreCheckInterval() {
+			return this.keyStoreCheckInterval;
+		}
+
+		public void setKeyStoreCheckInterval(long keyStoreCheckInterval) {
+			this.keyStoreCheckInterval = keyStoreCheckInterval;
+		}
+	}
+
+	public static class Cache {
+		/**
+		 * Enable caching of resolved environments (keyed by application, profile, label
+		 * and the version the label resolves to, if the repository supports it).
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of environments to keep in the cache (the least recently used
+		 * are evicted first).
+		 */
+		private int maxSize = 1000;
+
+		/**
+		 * Maximum number of environments rendered as properties, YAML or JSON to keep in
+		 * the cache (with a gzipped copy of each one). Set to 0 to switch it off.
+		 */
+		private int maxRendered = 100;
+
+		/**
+		 * Maximum number of versions of environments sent to clients to remember (not
+		 * decrypted), so that clients can ask for the changes since one of them (whether
+		 * or not the cache is enabled).
+		 */
+		private int maxVersions = 100;
+
 		public boolean isEnabled() {
 			return this.enabled;
 		}
@@ -145,5 +269,74 @@ public class ConfigServerProperties {
 		public void setEnabled(boolean enabled) {
 			this.enabled = enabled;
 		}
+
+		public int getMaxSize() {
+			return this.maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public int getMaxRendered() {
+			return this.maxRendered;
+		}
+
+		public void setMaxRendered(int maxRendered) {
+			this.maxRendered = maxRendered;
+		}
+
+		public int getMaxVersions() {
+			return this.maxVersions;
+		}
+
+		public void setMaxVersions(int maxVersions) {
+			this.maxVersions = maxVersions;
+		}
+	}
+
+	public static class Watch {
+		/**
+		 * Time in milliseconds to hold a watch request before answering that nothing has
+		 * changed (should be less than the read timeout of the clients).
+		 */
+		private long timeout = 30000;
+
+		/**
+		 * Time in milliseconds to keep an event stream open before closing it (the
+		 * clients should then reconnect).
+		 */
+		private long streamTimeout = 300000;
+
+		/**
+		 * Time in milliseconds between background checks of the versions that are being
+		 * watched. A check only looks at what the repository has locally, so new commits
+		 * are seen when the repository fetches them (which also triggers a check).
+		 */
+		private long interval = 1000;
+
+		public long getTimeout() {
+			return this.timeout;
+		}
+
+		public void setTimeout(long timeout) {
+			this.timeout = timeout;
+		}
+
+		public long getStreamTimeout() {
+			return this.streamTimeout;
+		}
+
+		public void setStreamTimeout(long streamTimeout) {
+			this.streamTimeout = streamTimeout;
+		}
+
+		public long getInterval() {
+			return this.interval;
+		}
+
+		public void setInterval(long interval) {
+			this.interval = interval;
+		}
 	}
 }
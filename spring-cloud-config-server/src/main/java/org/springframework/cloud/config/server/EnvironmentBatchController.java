@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * The endpoint for loading several environments in one request (see
+ * {@link EnvironmentController#batch(List)}). It is separate because every mapping in
+ * the {@link EnvironmentController} is for GET, and a POST mapping there would match GET
+ * as well.
+ *
+ */
+@RestController
+@RequestMapping(method = RequestMethod.POST, value = "${spring.cloud.config.server.prefix:}")
+public class EnvironmentBatchController {
+
+	private final EnvironmentController controller;
+
+	public EnvironmentBatchController(EnvironmentController controller) {
+		this.controller = controller;
+	}
+
+	@RequestMapping("/")
+	public List<Environment> batch(@RequestBody List<Environment> requests) {
+		return this.controller.batch(requests);
+	}
+
+	@ExceptionHandler(NoSuchLabelException.class)
+	public void noSuchLabel(HttpServletResponse response) throws IOException {
+		response.sendError(HttpStatus.NOT_FOUND.value());
+	}
+
+	@ExceptionHandler(IllegalArgumentException.class)
+	public void illegalArgument(HttpServletResponse response) throws IOException {
+		response.sendError(HttpStatus.BAD_REQUEST.value());
+	}
+
+}
@@ -15,7 +15,12 @@
  */
 package org.springframework.cloud.config.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -29,25 +34,30 @@ import java.util.TreeMap;
 
 import javax.servlet.http.HttpServletResponse;
 
-import org.springframework.boot.bind.PropertiesConfigurationFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.encryption.EnvironmentEncryptor;
-import org.springframework.core.env.MapPropertySource;
-import org.springframework.core.env.MutablePropertySources;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.BindException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.yaml.snakeyaml.DumperOptions.FlowStyle;
-import org.yaml.snakeyaml.Yaml;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.yaml.snakeyaml.nodes.Tag;
 
 /**
@@ -62,7 +72,14 @@ import org.yaml.snakeyaml.nodes.Tag;
 @RequestMapping(method = RequestMethod.GET, value = "${spring.cloud.config.server.prefix:}")
 public class EnvironmentController {
 
-	private static final String MAP_PREFIX = "map";
+	private static Log logger = LogFactory.getLog(EnvironmentController.class);
+
+	private static final String DELTA_HEADER = "X-Config-Since";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final MediaType TEXT_PLAIN_UTF8 = new MediaType("text", "plain",
+			UTF8);
 
 	private EnvironmentRepository repository;
 
@@ -74,6 +91,16 @@ public class EnvironmentController {
 
 	private boolean stripDocument = true;
 
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	private RenderedEnvironmentCache renderedCache;
+
+	private RecentEnvironments recent = new RecentEnvironments(100);
+
+	private final YamlRenderer yaml = new YamlRenderer();
+
+	private EnvironmentWatcher watcher;
+
 	public EnvironmentController(EnvironmentRepository repository,
 			EnvironmentEncryptor environmentEncryptor) {
 		this.repository = repository;
@@ -93,22 +120,149 @@ public class EnvironmentController {
 
 	@RequestMapping("/{name}/{profiles:.*[^-].*}")
 	public Environment defaultLabel(@PathVariable String name,
-			@PathVariable String profiles) {
+			@PathVariable String profiles, WebRequest request) {
+		return labelled(name, profiles, this.defaultLabel, request);
+	}
+
+	public Environment defaultLabel(String name, String profiles) {
 		return labelled(name, profiles, this.defaultLabel);
 	}
 
 	@RequestMapping("/{name}/{profiles}/{label:.*}")
 	public Environment labelled(@PathVariable String name, @PathVariable String profiles,
-			@PathVariable String label) {
-		if (label == null) {
-			label = this.defaultLabel;
+			@PathVariable String label, WebRequest request) {
+		Environment environment = load(name, profiles, label);
+		this.recent.put(name, profiles, resolveLabel(label), environment);
+		if (checkNotModified(request, environment)) {
+			return null;
 		}
-		if (label != null && label.contains("(_)")) {
-			// "(_)" is uncommon in a git branch name, but "/" cannot be matched
-			// by Spring MVC
-			label = label.replace("(_)", "/");
+		return postProcess(environment);
+	}
+
+	@RequestMapping(value = "/{name}/{profiles:.*[^-].*}", params = "since")
+	public ResponseEntity<Environment> defaultLabelSince(@PathVariable String name,
+			@PathVariable String profiles, @RequestParam String since,
+			WebRequest request) {
+		return labelledSince(name, profiles, this.defaultLabel, since, request);
+	}
+
+	/**
+	 * Only send the changes since the given version, if the client has it. The changes
+	 * are sent as an environment with the same property sources in the same order, but
+	 * only the keys that were added or changed (or removed, with a null value). Sources
+	 * that are new are sent in full, and the response has a header with the version it
+	 * applies to. The previous version has to be one that was sent recently (the
+	 * repository is not asked to load an old version, which might mean a checkout or a
+	 * fetch), otherwise the whole environment is sent instead (without the header). The
+	 * changes are worked out before decryption, so only the values that changed are
+	 * decrypted.
+	 */
+	@RequestMapping(value = "/{name}/{profiles}/{label:.*}", params = "since")
+	public ResponseEntity<Environment> labelledSince(@PathVariable String name,
+			@PathVariable String profiles, @PathVariable String label,
+			@RequestParam String since, WebRequest request) {
+		Environment environment = load(name, profiles, label);
+		this.recent.put(name, profiles, resolveLabel(label), environment);
+		if (checkNotModified(request, environment)) {
+			return null;
+		}
+		Environment previous = environment;
+		if (!since.equals(environment.getVersion())) {
+			previous = this.recent.get(name, profiles, resolveLabel(label), since);
+		}
+		if (previous == null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Version " + since + " of " + name
+						+ " is not known, sending all of it");
+			}
+			return new ResponseEntity<>(postProcess(environment), HttpStatus.OK);
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(DELTA_HEADER, since);
+		return new ResponseEntity<>(postProcess(getChanges(previous, environment)),
+				headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Wait for the version of an environment to be different from the one the client
+	 * has, and send the new version (or 304 Not Modified if it does not change in time).
+	 * The request is asynchronous, so it does not hold a container thread while it waits.
+	 */
+	@RequestMapping("/{name}/{profiles}/{label}/watch")
+	public DeferredResult<ResponseEntity<Map<String, String>>> watch(
+			@PathVariable String name, @PathVariable String profiles,
+			@PathVariable String label,
+			@RequestParam(required = false) String version) {
+		if (this.watcher == null) {
+			DeferredResult<ResponseEntity<Map<String, String>>> result = new DeferredResult<ResponseEntity<Map<String, String>>>();
+			result.setResult(new ResponseEntity<Map<String, String>>(
+					HttpStatus.NOT_IMPLEMENTED));
+			return result;
 		}
-		Environment environment = this.repository.findOne(name, profiles, label);
+		return this.watcher.watch(name, profiles, resolveLabel(label), version);
+	}
+
+	/**
+	 * Open a stream of Server-Sent Events with the current version of an environment,
+	 * followed by an event for each new version (or 404 Not Found if there is no current
+	 * version, e.g. the label does not exist).
+	 */
+	@RequestMapping("/{name}/{profiles}/{label}/events")
+	public SseEmitter events(@PathVariable String name, @PathVariable String profiles,
+			@PathVariable String label, HttpServletResponse response) throws IOException {
+		if (this.watcher == null || !this.watcher.isSupported()) {
+			response.sendError(HttpStatus.NOT_IMPLEMENTED.value());
+			return null;
+		}
+		return this.watcher.subscribe(name, profiles, resolveLabel(label));
+	}
+
+	public Environment labelled(String name, String profiles, String label) {
+		return postProcess(load(name, profiles, label));
+	}
+
+	private Environment load(String name, String profiles, String label) {
+		return this.repository.findOne(name, profiles, resolveLabel(label));
+	}
+
+	/**
+	 * Load several environments in one request. Each request is an environment with a
+	 * name, profiles and (optionally) a label, and the result has the environments in the
+	 * same order. If the repository supports it they are loaded together (e.g. all the
+	 * ones with the same label from the same git commit). Sent with a POST to the
+	 * {@link EnvironmentBatchController}.
+	 */
+	public List<Environment> batch(List<Environment> requests) {
+		List<Environment> resolved = new ArrayList<Environment>();
+		for (Environment request : requests) {
+			if (!StringUtils.hasText(request.getName())) {
+				throw new IllegalArgumentException("Application name is required");
+			}
+			resolved.add(new Environment(request.getName(),
+					request.getProfiles() == null ? new String[0] : request
+							.getProfiles(), resolveLabel(request.getLabel())));
+		}
+		List<Environment> environments;
+		if (this.repository instanceof BatchEnvironmentRepository) {
+			environments = ((BatchEnvironmentRepository) this.repository)
+					.findAll(resolved);
+		}
+		else {
+			environments = new ArrayList<Environment>();
+			for (Environment request : resolved) {
+				environments.add(this.repository.findOne(request.getName(),
+						StringUtils.arrayToCommaDelimitedString(request.getProfiles()),
+						request.getLabel()));
+			}
+		}
+		List<Environment> result = new ArrayList<Environment>();
+		for (Environment environment : environments) {
+			result.add(postProcess(environment));
+		}
+		return result;
+	}
+
+	private Environment postProcess(Environment environment) {
 		if (this.environmentEncryptor != null) {
 			environment = this.environmentEncryptor.decrypt(environment);
 		}
@@ -119,90 +273,281 @@ public class EnvironmentController {
 	}
 
 	@RequestMapping("/{name}-{profiles}.properties")
-	public ResponseEntity<String> properties(@PathVariable String name,
-			@PathVariable String profiles) throws IOException {
+	public ResponseEntity<byte[]> properties(@PathVariable String name,
+			@PathVariable String profiles, WebRequest request) throws Exception {
+		return labelledProperties(name, profiles, this.defaultLabel, request);
+	}
+
+	public ResponseEntity<String> properties(String name, String profiles)
+			throws IOException {
 		return labelledProperties(name, profiles, this.defaultLabel);
 	}
 
 	@RequestMapping("/{label}/{name}-{profiles}.properties")
-	public ResponseEntity<String> labelledProperties(@PathVariable String name,
-			@PathVariable String profiles, @PathVariable String label)
-					throws IOException {
+	public ResponseEntity<byte[]> labelledProperties(@PathVariable String name,
+			@PathVariable String profiles, @PathVariable String label,
+			WebRequest request) throws Exception {
+		return render(name, profiles, label, Format.PROPERTIES, request);
+	}
+
+	public ResponseEntity<String> labelledProperties(String name, String profiles,
+			String label) throws IOException {
 		validateNameAndProfiles(name, profiles);
-		Map<String, Object> properties = convertToProperties(
-				labelled(name, profiles, label));
-		return getSuccess(getPropertiesString(properties));
+		return getSuccess(getPropertiesString(name, profiles, label));
 	}
 
 	@RequestMapping("{name}-{profiles}.json")
-	public ResponseEntity<Map<String, Object>> jsonProperties(@PathVariable String name,
-			@PathVariable String profiles) throws Exception {
+	public ResponseEntity<byte[]> jsonProperties(@PathVariable String name,
+			@PathVariable String profiles, WebRequest request) throws Exception {
+		return labelledJsonProperties(name, profiles, this.defaultLabel, request);
+	}
+
+	public ResponseEntity<Map<String, Object>> jsonProperties(String name,
+			String profiles) throws Exception {
 		return labelledJsonProperties(name, profiles, this.defaultLabel);
 	}
 
 	@RequestMapping("/{label}/{name}-{profiles}.json")
-	public ResponseEntity<Map<String, Object>> labelledJsonProperties(
-			@PathVariable String name, @PathVariable String profiles,
-			@PathVariable String label) throws Exception {
+	public ResponseEntity<byte[]> labelledJsonProperties(@PathVariable String name,
+			@PathVariable String profiles, @PathVariable String label,
+			WebRequest request) throws Exception {
+		return render(name, profiles, label, Format.JSON, request);
+	}
+
+	public ResponseEntity<Map<String, Object>> labelledJsonProperties(String name,
+			String profiles, String label) throws Exception {
 		validateNameAndProfiles(name, profiles);
 		Map<String, Object> properties = convertToMap(labelled(name, profiles, label));
 		return getSuccess(properties, MediaType.APPLICATION_JSON);
 	}
 
-	private String getPropertiesString(Map<String, Object> properties) {
-		StringBuilder output = new StringBuilder();
+	private String getPropertiesString(String name, String profiles, String label)
+			throws IOException {
+		StringWriter output = new StringWriter();
+		writeProperties(labelled(name, profiles, label), output);
+		return output.toString();
+	}
+
+	private void writeProperties(Environment environment, Writer output)
+			throws IOException {
+		Map<String, Object> properties = convertToProperties(environment);
+		boolean first = true;
 		for (Entry<String, Object> entry : properties.entrySet()) {
-			if (output.length() > 0) {
-				output.append("\n");
+			if (!first) {
+				output.write("\n");
 			}
-			String line = entry.getKey() + ": " + entry.getValue();
-			output.append(line);
+			output.write(entry.getKey() + ": " + entry.getValue());
+			first = false;
 		}
-		return output.toString();
+		output.flush();
 	}
 
 	@RequestMapping({ "/{name}-{profiles}.yml", "/{name}-{profiles}.yaml" })
-	public ResponseEntity<String> yaml(@PathVariable String name,
-			@PathVariable String profiles) throws Exception {
+	public ResponseEntity<byte[]> yaml(@PathVariable String name,
+			@PathVariable String profiles, WebRequest request) throws Exception {
+		return labelledYaml(name, profiles, this.defaultLabel, request);
+	}
+
+	public ResponseEntity<String> yaml(String name, String profiles) throws Exception {
 		return labelledYaml(name, profiles, this.defaultLabel);
 	}
 
 	@RequestMapping({ "/{label}/{name}-{profiles}.yml",
 			"/{label}/{name}-{profiles}.yaml" })
-	public ResponseEntity<String> labelledYaml(@PathVariable String name,
-			@PathVariable String profiles, @PathVariable String label) throws Exception {
+	public ResponseEntity<byte[]> labelledYaml(@PathVariable String name,
+			@PathVariable String profiles, @PathVariable String label,
+			WebRequest request) throws Exception {
+		return render(name, profiles, label, Format.YAML, request);
+	}
+
+	public ResponseEntity<String> labelledYaml(String name, String profiles,
+			String label) throws Exception {
 		validateNameAndProfiles(name, profiles);
-		Map<String, Object> result = convertToMap(labelled(name, profiles, label));
+		return getSuccess(getYamlString(name, profiles, label));
+	}
+
+	private String getYamlString(String name, String profiles, String label)
+			throws IOException, BindException {
+		StringWriter output = new StringWriter();
+		writeYaml(labelled(name, profiles, label), output);
+		return output.toString();
+	}
+
+	private void writeYaml(Environment environment, Writer output) throws IOException,
+			BindException {
+		Map<String, Object> result = convertToMap(environment);
 		if (this.stripDocument && result.size() == 1
 				&& result.keySet().iterator().next().equals("document")) {
 			Object value = result.get("document");
 			if (value instanceof Collection) {
-				return getSuccess(new Yaml().dumpAs(value, Tag.SEQ, FlowStyle.BLOCK));
+				this.yaml.render(value, Tag.SEQ, output);
 			}
 			else {
-				return getSuccess(new Yaml().dumpAs(value, Tag.STR, FlowStyle.BLOCK));
+				this.yaml.render(value, Tag.STR, output);
+			}
+		}
+		else {
+			this.yaml.render(result, Tag.MAP, output);
+		}
+	}
+
+	/**
+	 * Render the environment in one of the flat formats. If the rendered cache is enabled
+	 * and the environment has a version the result is cached (along with a gzipped copy,
+	 * which is sent if the client accepts it), so it is not decrypted or rendered again.
+	 */
+	private ResponseEntity<byte[]> render(String name, String profiles, String label,
+			Format format, WebRequest request) throws Exception {
+		validateNameAndProfiles(name, profiles);
+		Environment environment = load(name, profiles, label);
+		boolean gzip = this.renderedCache != null && environment.getVersion() != null
+				&& acceptsGzip(request);
+		// The gzipped body is a different representation, so it has its own ETag
+		if (checkNotModified(request, environment, gzip ? "gzip" : null)) {
+			return null;
+		}
+		RenderedEnvironmentCache.CacheKey key = null;
+		RenderedEnvironmentCache.Rendered rendered = null;
+		if (this.renderedCache != null && environment.getVersion() != null) {
+			key = new RenderedEnvironmentCache.CacheKey(name, profiles,
+					resolveLabel(label), getState(environment.getVersion()),
+					format.name());
+			rendered = this.renderedCache.get(key);
+		}
+		byte[] body;
+		if (rendered == null) {
+			body = renderBody(postProcess(environment), format);
+			if (key != null) {
+				rendered = this.renderedCache.put(key, body);
+			}
+		}
+		else {
+			body = rendered.getBody();
+		}
+		HttpHeaders headers = getHttpHeaders(format.mediaType);
+		if (rendered != null) {
+			headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			if (gzip) {
+				headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+				body = rendered.getGzipped();
+			}
+		}
+		return new ResponseEntity<>(body, headers, HttpStatus.OK);
+	}
+
+	private byte[] renderBody(Environment environment, Format format) throws Exception {
+		if (format == Format.JSON) {
+			return this.objectMapper.writeValueAsBytes(convertToMap(environment));
+		}
+		// Write straight into the buffer instead of building a String first
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		Writer output = new OutputStreamWriter(bytes, UTF8);
+		if (format == Format.PROPERTIES) {
+			writeProperties(environment, output);
+		}
+		else {
+			writeYaml(environment, output);
+		}
+		return bytes.toByteArray();
+	}
+
+	private boolean acceptsGzip(WebRequest request) {
+		String accept = request == null ? null : request
+				.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		return accept != null && accept.contains("gzip");
+	}
+
+	private Environment getChanges(Environment previous, Environment environment) {
+		Environment result = new Environment(environment.getName(),
+				environment.getProfiles(), environment.getLabel());
+		result.setVersion(environment.getVersion());
+		result.setState(environment.getState());
+		Map<String, PropertySource> sources = new HashMap<String, PropertySource>();
+		for (PropertySource source : previous.getPropertySources()) {
+			sources.put(source.getName(), source);
+		}
+		for (PropertySource source : environment.getPropertySources()) {
+			PropertySource before = sources.get(source.getName());
+			if (before == null) {
+				result.add(source);
+				continue;
+			}
+			Map<Object, Object> changes = new LinkedHashMap<Object, Object>();
+			for (Entry<?, ?> entry : source.getSource().entrySet()) {
+				if (!before.getSource().containsKey(entry.getKey())
+						|| !ObjectUtils.nullSafeEquals(entry.getValue(), before
+								.getSource().get(entry.getKey()))) {
+					changes.put(entry.getKey(), entry.getValue());
+				}
+			}
+			for (Object key : before.getSource().keySet()) {
+				if (!source.getSource().containsKey(key)) {
+					changes.put(key, null);
+				}
 			}
+			result.add(new PropertySource(source.getName(), changes));
 		}
-		return getSuccess(new Yaml().dumpAsMap(result));
+		return result;
+	}
+
+	private String resolveLabel(String label) {
+		if (label == null) {
+			label = this.defaultLabel;
+		}
+		if (label != null && label.contains("(_)")) {
+			// "(_)" is uncommon in a git branch name, but "/" cannot be matched
+			// by Spring MVC
+			label = label.replace("(_)", "/");
+		}
+		return label;
+	}
+
+	/**
+	 * Set the ETag for the response (if the environment has a version) and check it
+	 * against the request. The result only depends on the version and the settings of
+	 * this controller, so if they match the client already has it. The environment has
+	 * been loaded already (so the repository only goes to its backend once), but it does
+	 * not need to be decrypted or sent.
+	 *
+	 * @return true if the client has the current version (and the response is 304 Not
+	 * Modified)
+	 */
+	private boolean checkNotModified(WebRequest request, Environment environment) {
+		return checkNotModified(request, environment, null);
+	}
+
+	/**
+	 * @param variant the name of the representation if it is not the plain one (e.g.
+	 * "gzip"), so that it has its own ETag
+	 */
+	private boolean checkNotModified(WebRequest request, Environment environment,
+			String variant) {
+		if (request == null) {
+			return false;
+		}
+		String state = getState(environment.getVersion());
+		return state != null && request.checkNotModified(getEtag(state, variant));
+	}
+
+	/**
+	 * @return a description of everything the response depends on, or null if the
+	 * version is not known
+	 */
+	private String getState(String version) {
+		if (version == null) {
+			return null;
+		}
+		return version + "," + (this.environmentEncryptor != null) + ","
+				+ this.stripDocument + "," + new TreeMap<String, String>(this.overrides);
+	}
+
+	private String getEtag(String state, String variant) {
+		return "\"" + DigestUtils.md5DigestAsHex(state.getBytes(UTF8))
+				+ (variant == null ? "" : "-" + variant) + "\"";
 	}
 
 	private Map<String, Object> convertToMap(Environment input) throws BindException {
-		Map<String, Object> target = new LinkedHashMap<String, Object>();
-		PropertiesConfigurationFactory<Map<String, Object>> factory = new PropertiesConfigurationFactory<Map<String, Object>>(
-				target);
-		Map<String, Object> data = convertToProperties(input);
-		LinkedHashMap<String, Object> properties = new LinkedHashMap<String, Object>();
-		for (String key : data.keySet()) {
-			properties.put(MAP_PREFIX + "." + key, data.get(key));
-		}
-		addArrays(target, properties);
-		MutablePropertySources propertySources = new MutablePropertySources();
-		propertySources.addFirst(new MapPropertySource("properties", properties));
-		factory.setPropertySources(propertySources);
-		factory.bindPropertiesToTarget();
-		@SuppressWarnings("unchecked")
-		Map<String, Object> result = (Map<String, Object>) target.get(MAP_PREFIX);
-		return result == null ? new LinkedHashMap<String, Object>() : result;
+		return PropertyTreeConverter.convert(convertToProperties(input));
 	}
 
 	@ExceptionHandler(NoSuchLabelException.class)
@@ -238,55 +583,6 @@ public class EnvironmentController {
 		return new ResponseEntity<>(body, getHttpHeaders(mediaType), HttpStatus.OK);
 	}
 
-	/**
-	 * Create Lists of the right size for any YAML arrays that are going to need to be
-	 * bound. Some of this might be do-able in RelaxedDataBinder, but we need to do it
-	 * here for now. Only supports arrays at leaf level currently (i.e. the properties
-	 * keys end in [*]).
-	 *
-	 * @param target the target Map
-	 * @param properties the properties (with key names to check)
-	 */
-	private void addArrays(Map<String, Object> target, Map<String, Object> properties) {
-		for (String key : properties.keySet()) {
-			int index = key.indexOf("[");
-			Map<String, Object> current = target;
-			if (index > 0) {
-				String stem = key.substring(0, index);
-				String[] keys = StringUtils.delimitedListToStringArray(stem, ".");
-				for (int i = 0; i < keys.length - 1; i++) {
-					if (current.get(keys[i]) == null) {
-						LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
-						current.put(keys[i], map);
-						current = map;
-					}
-					else {
-						@SuppressWarnings("unchecked")
-						Map<String, Object> map = (Map<String, Object>) current
-								.get(keys[i]);
-						current = map;
-					}
-				}
-				String name = keys[keys.length - 1];
-				if (current.get(name) == null) {
-					current.put(name, new ArrayList<Object>());
-				}
-				@SuppressWarnings("unchecked")
-				List<Object> value = (List<Object>) current.get(name);
-				int position = Integer
-						.valueOf(key.substring(index + 1, key.indexOf("]")));
-				while (position >= value.size()) {
-					if (key.indexOf("].", index) > 0) {
-						value.add(new LinkedHashMap<String, Object>());
-					}
-					else {
-						value.add("");
-					}
-				}
-			}
-		}
-	}
-
 	private Map<String, Object> convertToProperties(Environment profiles) {
 		Map<String, Object> map = new TreeMap<String, Object>();
 		List<PropertySource> sources = new ArrayList<PropertySource>(
@@ -310,6 +606,43 @@ public class EnvironmentController {
 		}
 	}
 
+	/**
+	 * @param objectMapper the object mapper used to render JSON
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Maximum number of rendered (properties, YAML or JSON) environments to cache. Only
+	 * used if the repository knows the version of a label, and 0 (the default) switches
+	 * it off.
+	 *
+	 * @param renderedCacheSize the cache size to set
+	 */
+	public void setRenderedCacheSize(int renderedCacheSize) {
+		this.renderedCache = renderedCacheSize > 0 ? new RenderedEnvironmentCache(
+				renderedCacheSize) : null;
+	}
+
+	/**
+	 * Maximum number of versions of environments sent to clients to remember, so the
+	 * clients can ask for the changes since then.
+	 *
+	 * @param recentVersions the number of versions to remember
+	 */
+	public void setRecentVersions(int recentVersions) {
+		this.recent = new RecentEnvironments(recentVersions);
+	}
+
+	/**
+	 * @param watcher the watcher for clients waiting for a new version (if null they are
+	 * told it is not implemented)
+	 */
+	public void setWatcher(EnvironmentWatcher watcher) {
+		this.watcher = watcher;
+	}
+
 	/**
 	 * @param defaultLabel
 	 */
@@ -329,4 +662,18 @@ public class EnvironmentController {
 		}
 	}
 
+	private enum Format {
+
+		// The charset is explicit because text/plain would otherwise mean ISO-8859-1
+		PROPERTIES(TEXT_PLAIN_UTF8), YAML(TEXT_PLAIN_UTF8), JSON(
+				MediaType.APPLICATION_JSON);
+
+		private final MediaType mediaType;
+
+		Format(MediaType mediaType) {
+			this.mediaType = mediaType;
+		}
+
+	}
+
 }
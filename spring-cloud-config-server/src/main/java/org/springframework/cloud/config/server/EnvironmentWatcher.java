@@ -0,0 +1,562 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Tells clients when the version of an environment changes, either by answering a
+ * request that has been held open (long polling) or by sending an event to a stream
+ * (Server-Sent Events). The requests are asynchronous, so an idle client does not take a
+ * container thread.
+ * <p>
+ * The version of each application, profiles and label that is being watched is checked
+ * once, however many clients are watching it, and the result is shared by all of them.
+ * Checks are made when the repository fetches new commits (see
+ * {@link RepositoryFetchedEvent}), when {@link #checkLater()} is called (e.g. by the
+ * config monitor) and every so often in the background by a single thread, in case
+ * anything else changes the repository. A check only asks the repository for the
+ * version it already has locally (see {@link VersionedEnvironmentRepository}), so it
+ * never goes to the network: hearing about new commits promptly depends on the
+ * repository fetching them (e.g. with a background refresh).
+ * <p>
+ * A long poll that sees no change before its timeout is answered with 304 Not Modified,
+ * and the client is expected to ask again. A stream starts with an event for the current
+ * version, and the client is expected to reconnect when it times out.
+ *
+ */
+public class EnvironmentWatcher implements DisposableBean,
+		ApplicationListener<RepositoryFetchedEvent> {
+
+	private static Log logger = LogFactory.getLog(EnvironmentWatcher.class);
+
+	private static final String EVENT_NAME = "version";
+
+	private final EnvironmentRepository repository;
+
+	private final Map<WatchKey, Watched> watched = new HashMap<WatchKey, Watched>();
+
+	private final AtomicBoolean checkPending = new AtomicBoolean();
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private long timeout = 30000;
+
+	private long streamTimeout = 300000;
+
+	private long interval = 1000;
+
+	private volatile ScheduledExecutorService scheduler;
+
+	public EnvironmentWatcher(EnvironmentRepository repository) {
+		Assert.notNull(repository, "EnvironmentRepository must not be null");
+		this.repository = repository;
+	}
+
+	/**
+	 * @param timeout the time in milliseconds to hold a watch before answering it with
+	 * 304 Not Modified
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param streamTimeout the time in milliseconds to keep an event stream open before
+	 * closing it (the client should then reconnect)
+	 */
+	public void setStreamTimeout(long streamTimeout) {
+		this.streamTimeout = streamTimeout;
+	}
+
+	/**
+	 * @param interval the time in milliseconds between background checks of the
+	 * versions being watched (a check is cheap, it only looks at local refs)
+	 */
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * @return true if the repository knows the versions of its environments (otherwise
+	 * there is nothing to watch)
+	 */
+	public boolean isSupported() {
+		return this.repository instanceof VersionedEnvironmentRepository;
+	}
+
+	/**
+	 * Watch an environment for a change of version.
+	 *
+	 * @param application the application name
+	 * @param profiles the profiles (comma separated)
+	 * @param label the label (already resolved, e.g. to the default)
+	 * @param version the version the client has (if null the current version is sent
+	 * straight away)
+	 * @return a result that is set to the new version when there is one
+	 */
+	public DeferredResult<ResponseEntity<Map<String, String>>> watch(
+			String application, String profiles, String label, String version) {
+		ResponseEntity<Map<String, String>> notModified = new ResponseEntity<Map<String, String>>(
+				HttpStatus.NOT_MODIFIED);
+		DeferredResult<ResponseEntity<Map<String, String>>> result = new DeferredResult<ResponseEntity<Map<String, String>>>(
+				this.timeout, notModified);
+		if (!isSupported()) {
+			result.setResult(new ResponseEntity<Map<String, String>>(
+					HttpStatus.NOT_IMPLEMENTED));
+			return result;
+		}
+		WatchKey key = new WatchKey(application, profiles, label);
+		String current = getCurrentVersion(key);
+		if (current == null) {
+			// Nothing to watch (e.g. the label does not exist)
+			result.setResult(new ResponseEntity<Map<String, String>>(
+					HttpStatus.NOT_FOUND));
+			return result;
+		}
+		if (!current.equals(version)) {
+			result.setResult(changed(current));
+			return result;
+		}
+		final Watch watch = new Watch(key, version, result);
+		synchronized (this.watched) {
+			getWatched(key, current).watches.add(watch);
+		}
+		result.onCompletion(new Runnable() {
+			@Override
+			public void run() {
+				remove(watch.key, watch, null);
+			}
+		});
+		start();
+		return result;
+	}
+
+	/**
+	 * Open a stream of events for an environment, starting with its current version and
+	 * then one for each new version. The events are named "version", their id is the
+	 * version and their data is JSON with the name, profiles, label and version.
+	 *
+	 * @param application the application name
+	 * @param profiles the profiles (comma separated)
+	 * @param label the label (already resolved, e.g. to the default)
+	 * @return the event stream
+	 * @throws NoSuchLabelException if there is no version to start with (e.g. the label
+	 * does not exist)
+	 */
+	public SseEmitter subscribe(String application, String profiles, String label) {
+		Assert.state(isSupported(), "Repository does not know versions");
+		final WatchKey key = new WatchKey(application, profiles, label);
+		String current = getCurrentVersion(key);
+		if (current == null) {
+			// Nothing to stream, so fail before the stream is opened
+			throw new NoSuchLabelException("No such label: " + label);
+		}
+		final SseEmitter emitter = new SseEmitter(this.streamTimeout);
+		synchronized (this.watched) {
+			Watched watched = getWatched(key, current);
+			watched.emitters.add(emitter);
+			if (watched.version != null) {
+				// Sent under the lock, so it can't overtake a newer version (the emitter
+				// only buffers it until the response is ready)
+				send(emitter, watched.version, event(key, watched.version));
+			}
+		}
+		Runnable remove = new Runnable() {
+			@Override
+			public void run() {
+				remove(key, null, emitter);
+			}
+		};
+		emitter.onCompletion(remove);
+		emitter.onTimeout(remove);
+		start();
+		return emitter;
+	}
+
+	/**
+	 * Check the version of everything that is being watched now, and tell the clients
+	 * that have an older one. Normally this happens in the background, but it can be
+	 * called explicitly to react more quickly to a change that is known about.
+	 */
+	public void check() {
+		List<WatchKey> keys;
+		synchronized (this.watched) {
+			keys = new ArrayList<WatchKey>(this.watched.keySet());
+		}
+		for (WatchKey key : keys) {
+			String current = getVersion(key);
+			if (current == null) {
+				continue;
+			}
+			List<Watch> changed = new ArrayList<Watch>();
+			List<SseEmitter> emitters = Collections.emptyList();
+			synchronized (this.watched) {
+				Watched watched = this.watched.get(key);
+				if (watched == null) {
+					continue;
+				}
+				for (Iterator<Watch> iter = watched.watches.iterator(); iter.hasNext();) {
+					Watch watch = iter.next();
+					if (!current.equals(watch.version)) {
+						changed.add(watch);
+						iter.remove();
+					}
+				}
+				if (!current.equals(watched.version)) {
+					watched.version = current;
+					emitters = new ArrayList<SseEmitter>(watched.emitters);
+				}
+				if (watched.isEmpty()) {
+					this.watched.remove(key);
+				}
+			}
+			if (changed.isEmpty() && emitters.isEmpty()) {
+				continue;
+			}
+			// Computed once for all the clients
+			ResponseEntity<Map<String, String>> response = changed(current);
+			for (Watch watch : changed) {
+				watch.result.setResult(response);
+			}
+			String event = event(key, current);
+			for (SseEmitter emitter : emitters) {
+				if (!send(emitter, current, event)) {
+					remove(key, null, emitter);
+				}
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Notified " + (changed.size() + emitters.size())
+						+ " clients of version " + current + " for: " + key);
+			}
+		}
+	}
+
+	/**
+	 * Check the versions being watched as soon as possible in the background. Several
+	 * calls before the check starts only cause one check.
+	 */
+	public void checkLater() {
+		ScheduledExecutorService scheduler = this.scheduler;
+		if (scheduler == null) {
+			// Nobody is watching
+			return;
+		}
+		if (this.checkPending.compareAndSet(false, true)) {
+			scheduler.execute(new Runnable() {
+				@Override
+				public void run() {
+					EnvironmentWatcher.this.checkPending.set(false);
+					safeCheck();
+				}
+			});
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(RepositoryFetchedEvent event) {
+		checkLater();
+	}
+
+	/**
+	 * @return the number of long polls waiting for a change
+	 */
+	public int getWatchCount() {
+		int count = 0;
+		synchronized (this.watched) {
+			for (Watched watched : this.watched.values()) {
+				count += watched.watches.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of open event streams
+	 */
+	public int getSubscriberCount() {
+		int count = 0;
+		synchronized (this.watched) {
+			for (Watched watched : this.watched.values()) {
+				count += watched.emitters.size();
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		ScheduledExecutorService scheduler;
+		synchronized (this) {
+			scheduler = this.scheduler;
+			this.scheduler = null;
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		List<Watch> pending = new ArrayList<Watch>();
+		List<SseEmitter> emitters = new ArrayList<SseEmitter>();
+		synchronized (this.watched) {
+			for (Watched watched : this.watched.values()) {
+				pending.addAll(watched.watches);
+				emitters.addAll(watched.emitters);
+			}
+			this.watched.clear();
+		}
+		for (Watch watch : pending) {
+			watch.result.setResult(new ResponseEntity<Map<String, String>>(
+					HttpStatus.NOT_MODIFIED));
+		}
+		for (SseEmitter emitter : emitters) {
+			emitter.complete();
+		}
+	}
+
+	private void start() {
+		if (this.scheduler != null) {
+			return;
+		}
+		synchronized (this) {
+			if (this.scheduler == null) {
+				this.scheduler = Executors
+						.newSingleThreadScheduledExecutor(new ThreadFactory() {
+							@Override
+							public Thread newThread(Runnable runnable) {
+								Thread thread = new Thread(runnable, "config-watch");
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+				this.scheduler.scheduleWithFixedDelay(new Runnable() {
+					@Override
+					public void run() {
+						safeCheck();
+					}
+				}, this.interval, this.interval, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private void safeCheck() {
+		try {
+			check();
+		}
+		catch (Exception e) {
+			logger.warn("Could not check watched environments", e);
+		}
+	}
+
+	/**
+	 * Must be called with the lock on the map held.
+	 */
+	private Watched getWatched(WatchKey key, String version) {
+		Watched watched = this.watched.get(key);
+		if (watched == null) {
+			watched = new Watched(version);
+			this.watched.put(key, watched);
+		}
+		return watched;
+	}
+
+	private void remove(WatchKey key, Watch watch, SseEmitter emitter) {
+		synchronized (this.watched) {
+			Watched watched = this.watched.get(key);
+			if (watched != null) {
+				watched.watches.remove(watch);
+				watched.emitters.remove(emitter);
+				if (watched.isEmpty()) {
+					this.watched.remove(key);
+				}
+			}
+		}
+	}
+
+	private boolean send(SseEmitter emitter, String version, String event) {
+		try {
+			emitter.send(SseEmitter.event().name(EVENT_NAME).id(version).data(event));
+			return true;
+		}
+		catch (IOException e) {
+			// The client has gone away
+			return false;
+		}
+		catch (IllegalStateException e) {
+			// The stream is already complete
+			return false;
+		}
+	}
+
+	private String getVersion(WatchKey key) {
+		try {
+			return ((VersionedEnvironmentRepository) this.repository).getLocalVersion(
+					key.application, key.profiles, key.label);
+		}
+		catch (Exception e) {
+			logger.warn("Could not resolve version for: " + key, e);
+			return null;
+		}
+	}
+
+	/**
+	 * The version for a new client. The repository only knows versions it has loaded
+	 * locally, so if there is none yet the environment is loaded once to find out (which
+	 * also tells whether the label exists at all).
+	 */
+	private String getCurrentVersion(WatchKey key) {
+		String current = getVersion(key);
+		if (current != null) {
+			return current;
+		}
+		try {
+			Environment environment = this.repository.findOne(key.application,
+					key.profiles, key.label);
+			return environment == null ? null : environment.getVersion();
+		}
+		catch (Exception e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Could not load environment for: " + key, e);
+			}
+			return null;
+		}
+	}
+
+	private ResponseEntity<Map<String, String>> changed(String version) {
+		return new ResponseEntity<Map<String, String>>(Collections.singletonMap(
+				"version", version), HttpStatus.OK);
+	}
+
+	private String event(WatchKey key, String version) {
+		Map<String, String> data = new LinkedHashMap<String, String>();
+		data.put("name", key.application);
+		data.put("profiles", key.profiles);
+		data.put("label", key.label);
+		data.put("version", version);
+		try {
+			return this.objectMapper.writeValueAsString(data);
+		}
+		catch (JsonProcessingException e) {
+			throw new IllegalStateException("Cannot render event", e);
+		}
+	}
+
+	/**
+	 * Everything that is watching one application, profiles and label.
+	 */
+	private static class Watched {
+
+		/**
+		 * The version last sent to the streams.
+		 */
+		private String version;
+
+		private final List<Watch> watches = new ArrayList<Watch>();
+
+		private final List<SseEmitter> emitters = new ArrayList<SseEmitter>();
+
+		Watched(String version) {
+			this.version = version;
+		}
+
+		boolean isEmpty() {
+			return this.watches.isEmpty() && this.emitters.isEmpty();
+		}
+
+	}
+
+	private static class Watch {
+
+		private final WatchKey key;
+
+		private final String version;
+
+		private final DeferredResult<ResponseEntity<Map<String, String>>> result;
+
+		Watch(WatchKey key, String version,
+				DeferredResult<ResponseEntity<Map<String, String>>> result) {
+			this.key = key;
+			this.version = version;
+			this.result = result;
+		}
+
+	}
+
+	private static class WatchKey {
+
+		private final String application;
+		private final String profiles;
+		private final String label;
+
+		WatchKey(String application, String profiles, String label) {
+			this.application = application;
+			this.profiles = profiles;
+			this.label = label;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof WatchKey)) {
+				return false;
+			}
+			WatchKey other = (WatchKey) obj;
+			return ObjectUtils.nullSafeEquals(this.application, other.application)
+					&& ObjectUtils.nullSafeEquals(this.profiles, other.profiles)
+					&& ObjectUtils.nullSafeEquals(this.label, other.label);
+		}
+
+		@Override
+		public int hashCode() {
+			return ObjectUtils.nullSafeHashCode(new Object[] { this.application,
+					this.profiles, this.label });
+		}
+
+		@Override
+		public String toString() {
+			return this.application + "/" + this.profiles + "/" + this.label;
+		}
+
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.StringUtils;
+
+/**
+ * {@link ResourceLoader} that reads files from a git tree (e.g. the tree of a commit)
+ * instead of the file system. Locations that start with the root prefix are resolved
+ * relative to the root of the tree, and anything else is loaded normally. No working tree
+ * is needed, so many trees (e.g. for different labels) can be read at the same time.
+ *
+ */
+public class GitTreeResourceLoader implements ResourceLoader {
+
+	private final Repository repository;
+
+	private final RevTree tree;
+
+	private final String root;
+
+	private final ResourceLoader delegate = new DefaultResourceLoader();
+
+	/**
+	 * @param repository the repository containing the tree
+	 * @param tree the tree to read files from
+	 * @param root the location prefix (e.g. the URI of the working directory) that
+	 * corresponds to the root of the tree
+	 */
+	public GitTreeResourceLoader(Repository repository, RevTree tree, String root) {
+		this.repository = repository;
+		this.tree = tree;
+		this.root = root.endsWith("/") ? root : root + "/";
+	}
+
+	@Override
+	public Resource getResource(String location) {
+		if (location.startsWith(this.root)) {
+			return new GitTreeResource(location, StringUtils.cleanPath(location
+					.substring(this.root.length())));
+		}
+		return this.delegate.getResource(location);
+	}
+
+	@Override
+	public ClassLoader getClassLoader() {
+		return this.delegate.getClassLoader();
+	}
+
+	private class GitTreeResource extends AbstractResource {
+
+		private final String location;
+
+		private final String path;
+
+		private ObjectId blob;
+
+		private boolean resolved;
+
+		GitTreeResource(String location, String path) {
+			this.location = location;
+			this.path = path;
+		}
+
+		@Override
+		public boolean exists() {
+			return getBlob() != null;
+		}
+
+		@Override
+		public String getFilename() {
+			return StringUtils.getFilename(this.path);
+		}
+
+		@Override
+		public String getDescription() {
+			return "git tree resource [" + this.location + "]";
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			ObjectId blob = getBlob();
+			if (blob == null) {
+				throw new FileNotFoundException(getDescription() + " does not exist");
+			}
+			return GitTreeResourceLoader.this.repository.open(blob, Constants.OBJ_BLOB)
+					.openStream();
+		}
+
+		private ObjectId getBlob() {
+			if (!this.resolved) {
+				this.blob = findBlob();
+				this.resolved = true;
+			}
+			return this.blob;
+		}
+
+		private ObjectId findBlob() {
+			if (!StringUtils.hasText(this.path) || this.path.endsWith("/")
+					|| this.path.startsWith("../")) {
+				return null;
+			}
+			try {
+				TreeWalk walk = TreeWalk.forPath(GitTreeResourceLoader.this.repository,
+						this.path, GitTreeResourceLoader.this.tree);
+				if (walk == null) {
+					return null;
+				}
+				try {
+					if ((walk.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE) {
+						return null;
+					}
+					return walk.getObjectId(0);
+				}
+				finally {
+					walk.release();
+				}
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot read " + this.path
+						+ " from git tree", e);
+			}
+		}
+
+	}
+
+}
@@ -20,7 +20,25 @@ import static org.springframework.util.StringUtils.hasText;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,17 +49,32 @@ import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
+import org.eclipse.jgit.api.LsRemoteCommand;
+import org.eclipse.jgit.api.MergeCommand;
 import org.eclipse.jgit.api.PullCommand;
 import org.eclipse.jgit.api.TransportCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.JschConfigSessionFactory;
 import org.eclipse.jgit.transport.OpenSshConfig.Host;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.SshSessionFactory;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.FileUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.config.environment.Environment;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.io.UrlResource;
 import org.springframework.util.Assert;
@@ -55,13 +88,17 @@ import com.jcraft.jsch.Session;
  * @author Dave Syer
  * @author Roy Clarkson
  */
-public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository {
+public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
+		implements VersionedEnvironmentRepository, BatchEnvironmentRepository,
+		DisposableBean, ApplicationEventPublisherAware {
 
 	private static Log logger = LogFactory.getLog(JGitEnvironmentRepository.class);
 
 	private static final String DEFAULT_LABEL = "master";
 	private static final String FILE_URI_PREFIX = "file:";
 
+	private static final int MAX_PARSED_VERSIONS = 8;
+
 	/**
 	 * Timeout (in seconds) for obtaining HTTP or SSH connection (if applicable)
 	 */
@@ -75,6 +112,79 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 	 */
 	private boolean cloneOnStart = false;
 
+	/**
+	 * Flag to indicate that the server should fail to start if the repository cannot be
+	 * cloned on startup (only used with cloneOnStart). Otherwise it is cloned again on the
+	 * first request.
+	 */
+	private boolean required = false;
+
+	private Executor cloneExecutor;
+
+	private volatile Future<?> cloneTask;
+
+	/**
+	 * Flag to indicate that config files should be read straight from the git object
+	 * database (the tree of the commit that the label resolves to) instead of checking
+	 * out the label into the working directory. Requests for different labels can then
+	 * be served concurrently.
+	 */
+	private boolean noCheckout = false;
+
+	/**
+	 * Flag to indicate that the repository should be cloned without a working directory.
+	 * The config files are then always read from the git object database (as with
+	 * noCheckout).
+	 */
+	private boolean bare = false;
+
+	/**
+	 * Labels (branches or tags) to clone from the remote repository. If there are none
+	 * (the default) all branches are cloned and fetched. Otherwise only these labels are
+	 * cloned and fetched, and any other label is fetched when it is first requested.
+	 */
+	private String[] cloneLabels = new String[0];
+
+	/**
+	 * Time (in seconds) between fetches from the remote repository in the background. If
+	 * this is 0 (the default) there are no background fetches, and the remote is fetched
+	 * (and the label pulled) on every request instead.
+	 */
+	private int refreshRate = 0;
+
+	/**
+	 * Flag to indicate that the remote repository should be fetched on every request even
+	 * if it is also fetched in the background (refreshRate &gt; 0).
+	 */
+	private boolean forceFetchOnRequest = false;
+
+	private ScheduledExecutorService refreshScheduler;
+
+	private boolean ownRefreshScheduler;
+
+	private volatile ScheduledFuture<?> refreshTask;
+
+	private volatile boolean destroyed;
+
+	private final Random random = new Random();
+
+	private ApplicationEventPublisher applicationEventPublisher;
+
+	/**
+	 * Parsed config files for the last few commits, shared by all the requests that are
+	 * served from the same commit.
+	 */
+	private final Map<String, ConcurrentMap<String, Object>> parsedFiles = new LinkedHashMap<String, ConcurrentMap<String, Object>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, ConcurrentMap<String, Object>> eldest) {
+			return size() > MAX_PARSED_VERSIONS;
+		}
+	};
+
 	private JGitEnvironmentRepository.JGitFactory gitFactory = new JGitEnvironmentRepository.JGitFactory();
 
 	public JGitEnvironmentRepository(ConfigurableEnvironment environment) {
@@ -89,6 +199,83 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 		this.cloneOnStart = cloneOnStart;
 	}
 
+	public boolean isRequired() {
+		return this.required;
+	}
+
+	public void setRequired(boolean required) {
+		this.required = required;
+	}
+
+	/**
+	 * @param cloneExecutor an executor to clone the repository on startup (if
+	 * cloneOnStart). If there is none the clone happens in the calling thread.
+	 */
+	public void setCloneExecutor(Executor cloneExecutor) {
+		this.cloneExecutor = cloneExecutor;
+	}
+
+	/**
+	 * @return true if the repository is still being cloned on startup
+	 */
+	public boolean isCloning() {
+		Future<?> task = this.cloneTask;
+		return task != null && !task.isDone();
+	}
+
+	public boolean isNoCheckout() {
+		return this.noCheckout;
+	}
+
+	public void setNoCheckout(boolean noCheckout) {
+		this.noCheckout = noCheckout;
+	}
+
+	public boolean isBare() {
+		return this.bare;
+	}
+
+	public void setBare(boolean bare) {
+		this.bare = bare;
+	}
+
+	public String[] getCloneLabels() {
+		return this.cloneLabels;
+	}
+
+	public void setCloneLabels(String... cloneLabels) {
+		this.cloneLabels = cloneLabels == null ? new String[0] : cloneLabels;
+	}
+
+	public int getRefreshRate() {
+		return this.refreshRate;
+	}
+
+	public void setRefreshRate(int refreshRate) {
+		this.refreshRate = refreshRate;
+	}
+
+	public boolean isForceFetchOnRequest() {
+		return this.forceFetchOnRequest;
+	}
+
+	public void setForceFetchOnRequest(boolean forceFetchOnRequest) {
+		this.forceFetchOnRequest = forceFetchOnRequest;
+	}
+
+	public ScheduledExecutorService getRefreshScheduler() {
+		return this.refreshScheduler;
+	}
+
+	/**
+	 * @param refreshScheduler the scheduler for background fetches (if there is a
+	 * refreshRate). Can be shared between repositories. If none is provided a single
+	 * thread scheduler is created (and shut down when this repository is destroyed).
+	 */
+	public void setRefreshScheduler(ScheduledExecutorService refreshScheduler) {
+		this.refreshScheduler = refreshScheduler;
+	}
+
 	public int getTimeout() {
 		return this.timeout;
 	}
@@ -97,6 +284,20 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 		this.timeout = timeout;
 	}
 
+	public ApplicationEventPublisher getApplicationEventPublisher() {
+		return this.applicationEventPublisher;
+	}
+
+	/**
+	 * @param applicationEventPublisher the publisher for a {@link RepositoryFetchedEvent}
+	 * when a fetch brings in new commits (can be null)
+	 */
+	@Override
+	public void setApplicationEventPublisher(
+			ApplicationEventPublisher applicationEventPublisher) {
+		this.applicationEventPublisher = applicationEventPublisher;
+	}
+
 	public JGitFactory getGitFactory() {
 		return this.gitFactory;
 	}
@@ -112,15 +313,59 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 
 	@Override
 	public Environment findOne(String application, String profile, String label) {
+		return findAll(label, Collections.singletonList(new Environment(application,
+				StringUtils.commaDelimitedListToStringArray(profile), label))).get(0);
+	}
+
+	/**
+	 * Load the environments with the same label together, so that the label is only
+	 * fetched and checked out once, and the files they have in common are only parsed
+	 * once.
+	 */
+	@Override
+	public List<Environment> findAll(List<Environment> requests) {
+		Map<String, List<Integer>> labels = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < requests.size(); i++) {
+			String label = requests.get(i).getLabel();
+			if (!labels.containsKey(label)) {
+				labels.put(label, new ArrayList<Integer>());
+			}
+			labels.get(label).add(i);
+		}
+		Environment[] result = new Environment[requests.size()];
+		for (Map.Entry<String, List<Integer>> entry : labels.entrySet()) {
+			List<Environment> group = new ArrayList<Environment>();
+			for (Integer index : entry.getValue()) {
+				group.add(requests.get(index));
+			}
+			List<Environment> loaded = findAll(entry.getKey(), group);
+			for (int i = 0; i < loaded.size(); i++) {
+				result[entry.getValue().get(i)] = loaded.get(i);
+			}
+		}
+		return Arrays.asList(result);
+	}
+
+	private List<Environment> findAll(String label, List<Environment> requests) {
+		awaitClone(false);
 		initialize();
 		Git git = null;
 		try {
 			git = createGitClient();
-			return loadEnvironment(git, application, profile, label);
+			if (shouldFetchLabel()) {
+				ensureLabel(git, label);
+			}
+			if (this.noCheckout || this.bare) {
+				return loadEnvironmentsFromTree(git, requests, label);
+			}
+			return loadEnvironments(git, requests, label);
 		}
 		catch (RefNotFoundException e) {
 			throw new NoSuchLabelException("No such label: " + label);
 		}
+		catch (NoSuchLabelException e) {
+			throw e;
+		}
 		catch (GitAPIException e) {
 			throw new IllegalStateException("Cannot clone or checkout repository", e);
 		}
@@ -139,12 +384,233 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 		}
 	}
 
+	/**
+	 * Resolve the version that a request for this label would load now. If the remote is
+	 * fetched on every request (no background refresh) the version is looked up on the
+	 * remote (without fetching it), otherwise it comes from the local copy.
+	 */
+	@Override
+	public String getVersion(String application, String profile, String label) {
+		if (isFetchOnRequest() && !getUri().startsWith(FILE_URI_PREFIX)) {
+			String version = getRemoteVersion(label);
+			if (version != null) {
+				return version;
+			}
+		}
+		return getLocalVersion(application, profile, label);
+	}
+
+	/**
+	 * Resolve the version from the refs that the local copy already has, without going to
+	 * the network. New commits on the remote are only seen after the next fetch (e.g. by a
+	 * request that loads an environment, or the background refresh).
+	 */
+	@Override
+	public String getLocalVersion(String application, String profile, String label) {
+		if (isWorkingTreeServed()) {
+			return null;
+		}
+		awaitClone(false);
+		Git git = null;
+		try {
+			git = openLocalRepository();
+			return git == null ? null : resolveVersion(git, label);
+		}
+		catch (Exception e) {
+			logger.warn("Could not resolve version for label: " + label, e);
+			return null;
+		}
+		finally {
+			try {
+				if (git != null) {
+					git.getRepository().close();
+				}
+			}
+			catch (Exception e) {
+				logger.warn("Could not close git repository", e);
+			}
+		}
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		Assert.state(getUri() != null,
 				"You need to configure a uri for the git repository");
-		if (this.cloneOnStart) {
+		if (this.cloneOnStart && !getUri().startsWith(FILE_URI_PREFIX)) {
+			FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					timedClone();
+					return null;
+				}
+			});
+			this.cloneTask = task;
+			if (this.cloneExecutor != null) {
+				this.cloneExecutor.execute(task);
+			}
+			else {
+				task.run();
+				awaitClone(this.required);
+			}
+		}
+		if (this.refreshRate > 0) {
+			if (this.refreshScheduler == null) {
+				this.refreshScheduler = Executors
+						.newSingleThreadScheduledExecutor(new ThreadFactory() {
+							@Override
+							public Thread newThread(Runnable runnable) {
+								Thread thread = new Thread(runnable,
+										"config-repo-refresh");
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+				this.ownRefreshScheduler = true;
+			}
+			// Start at a random point in the first period so that lots of repositories
+			// do not all fetch at once
+			scheduleRefresh(this.random.nextInt(this.refreshRate * 1000));
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		this.destroyed = true;
+		ScheduledFuture<?> task = this.refreshTask;
+		if (task != null) {
+			task.cancel(false);
+		}
+		if (this.ownRefreshScheduler) {
+			this.refreshScheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Fetch from the remote repository now (e.g. because it has sent a notification that
+	 * it has changed). Does nothing if the repository has not been cloned yet.
+	 */
+	public void refresh() {
+		fetchIfCloned();
+	}
+
+	private void scheduleRefresh(long delay) {
+		if (this.destroyed) {
+			return;
+		}
+		this.refreshTask = this.refreshScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					fetchIfCloned();
+				}
+				catch (Exception e) {
+					logger.warn("Could not refresh repository: " + getUri(), e);
+				}
+				finally {
+					scheduleRefresh(nextRefreshDelay());
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the refresh rate in milliseconds, plus or minus up to 10% so that
+	 * repositories with the same rate drift apart
+	 */
+	private long nextRefreshDelay() {
+		long rate = this.refreshRate * 1000L;
+		long jitter = rate / 10;
+		if (jitter == 0) {
+			return rate;
+		}
+		return rate - jitter + (long) (this.random.nextDouble() * 2 * jitter);
+	}
+
+	private void fetchIfCloned() {
+		if (getUri().startsWith(FILE_URI_PREFIX) || !isCloned()) {
+			return;
+		}
+		Git git = null;
+		try {
+			git = this.gitFactory.getGitByOpen(getWorkingDirectory());
+			tryFetch(git);
+		}
+		catch (IOException e) {
+			logger.warn("Could not open repository: " + getUri(), e);
+		}
+		finally {
+			if (git != null) {
+				git.getRepository().close();
+			}
+		}
+	}
+
+	/**
+	 * A local repository (file: URI) is loaded from its working tree unless only the
+	 * commits are read, so what is served can differ from any commit.
+	 */
+	private boolean isWorkingTreeServed() {
+		return getUri().startsWith(FILE_URI_PREFIX) && !this.noCheckout && !this.bare;
+	}
+
+	/**
+	 * If there is a background refresh the requests only see the refs that were fetched
+	 * last time, unless they are forced to fetch.
+	 */
+	private boolean isFetchOnRequest() {
+		return this.refreshRate <= 0 || this.forceFetchOnRequest;
+	}
+
+	/**
+	 * Labels that are not in the local copy might still be on the remote, if it is not
+	 * fetched on every request or only some labels are fetched.
+	 */
+	private boolean shouldFetchLabel() {
+		return !getUri().startsWith(FILE_URI_PREFIX)
+				&& (!isFetchOnRequest() || this.cloneLabels.length > 0);
+	}
+
+	/**
+	 * Wait for the clone on startup (if there is one) to finish.
+	 *
+	 * @param failOnError true if a failed clone should be rethrown
+	 */
+	protected void awaitClone(boolean failOnError) {
+		Future<?> task = this.cloneTask;
+		if (task == null) {
+			return;
+		}
+		try {
+			task.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e) {
+			if (failOnError) {
+				throw new IllegalStateException("Cannot clone repository: " + getUri(),
+						e.getCause());
+			}
+		}
+	}
+
+	private void timedClone() throws GitAPIException, IOException {
+		long start = System.currentTimeMillis();
+		try {
 			initClonedRepository();
+			logger.info("Cloned repository " + getUri() + " in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+		catch (GitAPIException | IOException | RuntimeException e) {
+			String message = "Could not clone repository " + getUri() + " (after "
+					+ (System.currentTimeMillis() - start) + "ms)";
+			if (this.required) {
+				logger.error(message, e);
+			}
+			else {
+				logger.warn(message + ", it will be cloned when it is first used", e);
+			}
+			throw e;
 		}
 	}
 
@@ -162,19 +628,146 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 
 	}
 
-	private synchronized Environment loadEnvironment(Git git, String application,
-			String profile, String label) throws GitAPIException {
-		NativeEnvironmentRepository environment = new NativeEnvironmentRepository(
-				getEnvironment());
+	private synchronized List<Environment> loadEnvironments(Git git,
+			List<Environment> requests, String label) throws GitAPIException,
+			IOException {
 		git.getRepository().getConfig().setString("branch", label, "merge", label);
 		Ref ref = checkout(git, label);
 		if (shouldPull(git, ref)) {
-			pull(git, label, ref);
+			if (isFetchOnRequest() && this.cloneLabels.length == 0) {
+				pull(git, label, ref);
+			}
+			else {
+				merge(git, label, ref);
+			}
+		}
+		String[] locations = getSearchLocations(getWorkingDirectory());
+		String version;
+		ConcurrentMap<String, Object> parsed;
+		if (isWorkingTreeServed()) {
+			// A local repository is used in place, so the files might not be committed
+			// and the commit id does not tell whether they have changed
+			version = null;
+			parsed = new ConcurrentHashMap<String, Object>();
 		}
-		environment.setSearchLocations(getSearchLocations(getWorkingDirectory()));
-		Environment result = environment.findOne(application, profile, "");
-		result.setLabel(label);
-		return clean(result);
+		else {
+			version = git.getRepository().resolve(Constants.HEAD).name();
+			parsed = getParsedFiles(version);
+		}
+		List<Environment> results = new ArrayList<Environment>();
+		for (Environment request : requests) {
+			NativeEnvironmentRepository environment = new NativeEnvironmentRepository(
+					getEnvironment());
+			environment.setVersioned(false);
+			environment.setSearchLocations(locations);
+			environment.setConfigFileCache(parsed);
+			Environment result = environment.findOne(request.getName(),
+					StringUtils.arrayToCommaDelimitedString(request.getProfiles()), "");
+			result.setLabel(label);
+			result.setVersion(version);
+			results.add(clean(result));
+		}
+		return results;
+	}
+
+	/**
+	 * Load the environment from the tree of the commit that the label resolves to,
+	 * without touching the working directory (so no need to synchronize).
+	 */
+	private List<Environment> loadEnvironmentsFromTree(Git git,
+			List<Environment> requests, String label) throws IOException {
+		String version = resolveVersion(git, label);
+		if (version == null) {
+			throw new NoSuchLabelException("No such label: " + label);
+		}
+		Repository repository = git.getRepository();
+		RevWalk walk = new RevWalk(repository);
+		try {
+			RevTree tree = walk.parseCommit(ObjectId.fromString(version)).getTree();
+			String root = getWorkingDirectory().toURI().toString();
+			GitTreeResourceLoader resourceLoader = new GitTreeResourceLoader(
+					repository, tree, root);
+			String[] locations = getSearchLocations(repository, tree, root);
+			ConcurrentMap<String, Object> parsed = getParsedFiles(version);
+			List<Environment> results = new ArrayList<Environment>();
+			for (Environment request : requests) {
+				NativeEnvironmentRepository environment = new NativeEnvironmentRepository(
+						getEnvironment());
+				environment.setVersioned(false);
+				environment.setResourceLoader(resourceLoader);
+				environment.setSearchLocations(locations);
+				environment.setConfigFileCache(parsed);
+				Environment result = environment.findOne(request.getName(),
+						StringUtils.arrayToCommaDelimitedString(request.getProfiles()),
+						"");
+				result.setLabel(label);
+				result.setVersion(version);
+				results.add(clean(result));
+			}
+			return results;
+		}
+		finally {
+			walk.release();
+		}
+	}
+
+	private ConcurrentMap<String, Object> getParsedFiles(String version) {
+		synchronized (this.parsedFiles) {
+			ConcurrentMap<String, Object> parsed = this.parsedFiles.get(version);
+			if (parsed == null) {
+				parsed = new ConcurrentHashMap<String, Object>();
+				this.parsedFiles.put(version, parsed);
+			}
+			return parsed;
+		}
+	}
+
+	/**
+	 * The same as {@link #getSearchLocations(File)} but the directories are found in a
+	 * git tree.
+	 */
+	private String[] getSearchLocations(Repository repository, RevTree tree, String root)
+			throws IOException {
+		List<String> locations = new ArrayList<String>();
+		locations.add(root);
+		TreeWalk walk = new TreeWalk(repository);
+		try {
+			walk.addTree(tree);
+			walk.setRecursive(false);
+			while (walk.next()) {
+				if (walk.isSubtree()) {
+					String path = walk.getPathString();
+					if (isSearchPath(path)) {
+						locations.add(root + path + "/");
+					}
+					if (isSearchPathParent(path)) {
+						walk.enterSubtree();
+					}
+				}
+			}
+		}
+		finally {
+			walk.release();
+		}
+		return locations.toArray(new String[0]);
+	}
+
+	/**
+	 * Resolve the commit id that a request for this label would be served from. If there
+	 * is a remote, its tracking branches are preferred because a branch is always pulled
+	 * before it is used.
+	 */
+	private String resolveVersion(Git git, String label) throws IOException {
+		Repository repository = git.getRepository();
+		ObjectId id = null;
+		if (repository.getConfig().getString("remote", "origin", "url") != null) {
+			id = repository.resolve("refs/remotes/origin/" + label + "^{commit}");
+		}
+		if (id == null) {
+			// works for tags, local branches and commit ids
+			id = repository.resolve(label + "^{commit}");
+		}
+		return id == null ? null : id.name();
 	}
 
 	private Ref checkout(Git git, String label) throws GitAPIException {
@@ -217,8 +810,28 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 		}
 	}
 
+	/**
+	 * Bring the current branch up to date with the last fetched state of the remote,
+	 * without going to the network.
+	 */
+	private void merge(Git git, String label, Ref ref) {
+		try {
+			Ref remote = git.getRepository().getRef("refs/remotes/origin/" + label);
+			if (remote != null) {
+				MergeCommand merge = git.merge();
+				merge.include(remote);
+				merge.call();
+			}
+		}
+		catch (Exception e) {
+			logger.warn("Could not merge remote for " + label + " (current ref=" + ref
+					+ "), remote: " + git.getRepository().getConfig().getString("remote",
+							"origin", "url"));
+		}
+	}
+
 	private Git createGitClient() throws IOException, GitAPIException {
-		if (new File(getBasedir(), ".git").exists()) {
+		if (isCloned()) {
 			return openGitRepository();
 		}
 		else {
@@ -226,6 +839,13 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 		}
 	}
 
+	private boolean isCloned() {
+		if (this.bare) {
+			return RepositoryCache.FileKey.isGitRepository(getBasedir(), FS.DETECTED);
+		}
+		return new File(getBasedir(), ".git").exists();
+	}
+
 	// Synchronize here so that multiple requests don't all try and delete the base dir
 	// together (this is a once only operation, so it only holds things up on the first
 	// request).
@@ -243,10 +863,27 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 
 	private Git openGitRepository() throws IOException {
 		Git git = this.gitFactory.getGitByOpen(getWorkingDirectory());
-		tryFetch(git);
+		if (isFetchOnRequest()) {
+			tryFetch(git);
+		}
 		return git;
 	}
 
+	/**
+	 * Open the local copy of the repository as it is, without cloning or fetching.
+	 *
+	 * @return the repository or null if it has not been cloned yet
+	 */
+	private Git openLocalRepository() throws IOException {
+		if (getUri().startsWith(FILE_URI_PREFIX)) {
+			return copyFromLocalRepository();
+		}
+		if (!isCloned()) {
+			return null;
+		}
+		return this.gitFactory.getGitByOpen(getWorkingDirectory());
+	}
+
 	private Git copyFromLocalRepository() throws IOException {
 		Git git;
 		File remote = new UrlResource(StringUtils.cleanPath(getUri())).getFile();
@@ -259,29 +896,171 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 	}
 
 	private Git cloneToBasedir() throws GitAPIException {
+		List<String> branches = getBranchesToClone();
 		CloneCommand clone = this.gitFactory.getCloneCommandByCloneRepository()
 				.setURI(getUri()).setDirectory(getBasedir());
 		setTimeout(clone);
 		if (hasText(getUsername())) {
 			setCredentialsProvider(clone);
 		}
-		return clone.call();
+		if (this.bare) {
+			clone.setBare(true);
+		}
+		if (!branches.isEmpty()) {
+			clone.setBranchesToClone(branches);
+			// Otherwise the remote HEAD is checked out, and it might not have been cloned
+			clone.setBranch(branches.get(0));
+		}
+		Git git = clone.call();
+		if (this.cloneLabels.length > 0) {
+			// Only branches can be cloned, so fetch the tags separately
+			for (String label : this.cloneLabels) {
+				try {
+					ensureLabel(git, label);
+				}
+				catch (IOException e) {
+					logger.warn("Could not fetch label: " + label, e);
+				}
+			}
+		}
+		return git;
+	}
+
+	/**
+	 * The clone fails if it asks for a branch that is not there, so check which of the
+	 * labels are branches on the remote.
+	 */
+	private List<String> getBranchesToClone() throws GitAPIException {
+		List<String> branches = new ArrayList<String>();
+		if (this.cloneLabels.length == 0) {
+			return branches;
+		}
+		LsRemoteCommand command = this.gitFactory.getLsRemoteCommand()
+				.setRemote(getUri()).setHeads(true);
+		setTimeout(command);
+		if (hasText(getUsername())) {
+			setCredentialsProvider(command);
+		}
+		Map<String, Ref> remote = command.callAsMap();
+		for (String label : this.cloneLabels) {
+			if (remote.containsKey(Constants.R_HEADS + label)) {
+				branches.add(Constants.R_HEADS + label);
+			}
+		}
+		return branches;
+	}
+
+	/**
+	 * Look up a branch or tag on the remote (the same as "git ls-remote").
+	 *
+	 * @return the commit id or null if the label is not a branch or tag on the remote (or
+	 * the remote cannot be reached)
+	 */
+	private String getRemoteVersion(String label) {
+		try {
+			LsRemoteCommand command = this.gitFactory.getLsRemoteCommand()
+					.setRemote(getUri()).setHeads(true).setTags(true);
+			setTimeout(command);
+			if (hasText(getUsername())) {
+				setCredentialsProvider(command);
+			}
+			Map<String, Ref> remote = command.callAsMap();
+			Ref ref = remote.get(Constants.R_HEADS + label);
+			if (ref == null) {
+				ref = remote.get(Constants.R_TAGS + label);
+			}
+			if (ref == null) {
+				return null;
+			}
+			ObjectId id = ref.getPeeledObjectId() != null ? ref.getPeeledObjectId()
+					: ref.getObjectId();
+			return id.name();
+		}
+		catch (Exception e) {
+			logger.warn("Could not look up " + label + " on remote: " + getUri() + " ("
+					+ e.getClass() + ": " + e.getMessage() + ")");
+			return null;
+		}
 	}
 
 	private void tryFetch(Git git) {
 		try {
 			FetchCommand fetch = git.fetch();
+			if (this.cloneLabels.length > 0) {
+				fetch.setRefSpecs(getFetchedBranches(git));
+			}
 			setTimeout(fetch);
 			if (hasText(getUsername())) {
 				setCredentialsProvider(fetch);
 			}
-			fetch.call();
+			FetchResult result = fetch.call();
+			if (!result.getTrackingRefUpdates().isEmpty()
+					&& this.applicationEventPublisher != null) {
+				this.applicationEventPublisher.publishEvent(new RepositoryFetchedEvent(
+						this));
+			}
 		}
 		catch (Exception e) {
 			logger.warn("Remote repository not available");
 		}
 	}
 
+	/**
+	 * If only some labels are cloned the fetch has to be limited to the branches that are
+	 * already there, because the remote config still asks for all of them.
+	 */
+	private List<RefSpec> getFetchedBranches(Git git) throws IOException {
+		List<RefSpec> specs = new ArrayList<RefSpec>();
+		for (String branch : git.getRepository().getRefDatabase()
+				.getRefs(getRemoteBranchPrefix()).keySet()) {
+			if (!Constants.HEAD.equals(branch)) {
+				specs.add(branchRefSpec(branch));
+			}
+		}
+		return specs;
+	}
+
+	/**
+	 * Fetch the label from the remote repository if it is not known locally. It might be
+	 * a branch or a tag, so both are tried.
+	 */
+	private void ensureLabel(Git git, String label) throws IOException {
+		if (resolveVersion(git, label) != null) {
+			return;
+		}
+		for (RefSpec spec : Arrays.asList(branchRefSpec(label), new RefSpec("+"
+				+ Constants.R_TAGS + label + ":" + Constants.R_TAGS + label))) {
+			try {
+				FetchCommand fetch = git.fetch().setRefSpecs(spec);
+				setTimeout(fetch);
+				if (hasText(getUsername())) {
+					setCredentialsProvider(fetch);
+				}
+				fetch.call();
+				logger.info("Fetched " + spec.getSource() + " from " + getUri());
+				return;
+			}
+			catch (Exception e) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Could not fetch " + spec.getSource() + " from "
+							+ getUri(), e);
+				}
+			}
+		}
+	}
+
+	private RefSpec branchRefSpec(String branch) {
+		return new RefSpec("+" + Constants.R_HEADS + branch + ":"
+				+ getRemoteBranchPrefix() + branch);
+	}
+
+	/**
+	 * A bare clone keeps the remote branches as its own branches.
+	 */
+	private String getRemoteBranchPrefix() {
+		return this.bare ? Constants.R_HEADS : Constants.R_REMOTES + "origin/";
+	}
+
 	private void deleteBaseDirIfExists() {
 		if (getBasedir().exists()) {
 			try {
@@ -358,5 +1137,9 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 			CloneCommand command = Git.cloneRepository();
 			return command;
 		}
+
+		public LsRemoteCommand getLsRemoteCommand() {
+			return Git.lsRemoteRepository();
+		}
 	}
 }
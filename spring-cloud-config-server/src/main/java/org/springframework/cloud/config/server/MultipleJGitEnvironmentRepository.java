@@ -16,8 +16,16 @@
 
 package org.springframework.cloud.config.server;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cloud.config.environment.Environment;
@@ -42,33 +50,182 @@ import org.springframework.util.StringUtils;
 @ConfigurationProperties("spring.cloud.config.server.git")
 public class MultipleJGitEnvironmentRepository extends JGitEnvironmentRepository {
 
-	private Map<String, PatternMatchingJGitEnvironmentRepository> repos = new LinkedHashMap<String, PatternMatchingJGitEnvironmentRepository>();
+	/**
+	 * Replaced (not changed) once the repositories are initialized, so requests and
+	 * background tasks can iterate it while more are added.
+	 */
+	private volatile Map<String, PatternMatchingJGitEnvironmentRepository> repos = new LinkedHashMap<String, PatternMatchingJGitEnvironmentRepository>();
+
+	private volatile PatternIndex<PatternMatchingJGitEnvironmentRepository> index;
+
+	private volatile boolean initialized;
+
+	/**
+	 * Maximum number of repositories that are cloned at the same time on startup (for
+	 * the ones with cloneOnStart).
+	 */
+	private int cloneParallelism = 4;
 
 	public MultipleJGitEnvironmentRepository(ConfigurableEnvironment environment) {
 		super(environment);
 	}
 
+	public int getCloneParallelism() {
+		return this.cloneParallelism;
+	}
+
+	public void setCloneParallelism(int cloneParallelism) {
+		this.cloneParallelism = cloneParallelism;
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
-		super.afterPropertiesSet();
-		for (String name : this.repos.keySet()) {
-			PatternMatchingJGitEnvironmentRepository repo = this.repos.get(name);
-			repo.setEnvironment(getEnvironment());
-			if (!StringUtils.hasText(repo.getName())) {
-				repo.setName(name);
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, this.cloneParallelism), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "config-repo-clone-"
+								+ this.count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		Map<String, PatternMatchingJGitEnvironmentRepository> repos = this.repos;
+		try {
+			setCloneExecutor(executor);
+			super.afterPropertiesSet();
+			for (String name : repos.keySet()) {
+				initRepository(name, repos.get(name), executor);
 			}
-			if (repo.getPattern() == null || repo.getPattern().length == 0) {
-				repo.setPattern(new String[] { name });
+		}
+		finally {
+			// Let the clones that were started finish, but accept no more
+			executor.shutdown();
+			setCloneExecutor(null);
+		}
+		this.index = buildIndex(repos);
+		this.initialized = true;
+		// Only the required repositories hold up the startup
+		if (isRequired()) {
+			awaitClone(true);
+		}
+		for (PatternMatchingJGitEnvironmentRepository repo : repos.values()) {
+			if (repo.isRequired()) {
+				repo.awaitClone(true);
 			}
-			if (getTimeout() != 0 && repo.getTimeout() == 0) {
-				repo.setTimeout(getTimeout());
+		}
+	}
+
+	@Override
+	public boolean isCloning() {
+		if (super.isCloning()) {
+			return true;
+		}
+		for (PatternMatchingJGitEnvironmentRepository repo : this.repos.values()) {
+			if (repo.isCloning()) {
+				return true;
 			}
-			repo.afterPropertiesSet();
 		}
+		return false;
+	}
+
+	private void initRepository(String name, PatternMatchingJGitEnvironmentRepository repo,
+			Executor executor) throws Exception {
+		repo.setEnvironment(getEnvironment());
+		if (!StringUtils.hasText(repo.getName())) {
+			repo.setName(name);
+		}
+		if (repo.getPattern() == null || repo.getPattern().length == 0) {
+			repo.setPattern(new String[] { name });
+		}
+		if (getTimeout() != 0 && repo.getTimeout() == 0) {
+			repo.setTimeout(getTimeout());
+		}
+		if (isNoCheckout()) {
+			repo.setNoCheckout(true);
+		}
+		if (isBare()) {
+			repo.setBare(true);
+		}
+		if (getRefreshRate() != 0 && repo.getRefreshRate() == 0) {
+			repo.setRefreshRate(getRefreshRate());
+		}
+		if (isForceFetchOnRequest()) {
+			repo.setForceFetchOnRequest(true);
+		}
+		if (repo.getRefreshScheduler() == null) {
+			repo.setRefreshScheduler(getRefreshScheduler());
+		}
+		if (repo.getApplicationEventPublisher() == null) {
+			repo.setApplicationEventPublisher(getApplicationEventPublisher());
+		}
+		repo.setCloneExecutor(executor);
+		repo.afterPropertiesSet();
+		repo.setCloneExecutor(null);
+	}
+
+	private PatternIndex<PatternMatchingJGitEnvironmentRepository> buildIndex(
+			Map<String, PatternMatchingJGitEnvironmentRepository> repos) {
+		PatternIndex<PatternMatchingJGitEnvironmentRepository> index = new PatternIndex<PatternMatchingJGitEnvironmentRepository>();
+		for (PatternMatchingJGitEnvironmentRepository repo : repos.values()) {
+			index.add(repo.getPattern(), repo);
+		}
+		return index;
+	}
+
+	private PatternMatchingJGitEnvironmentRepository findRepository(String application) {
+		PatternIndex<PatternMatchingJGitEnvironmentRepository> index = this.index;
+		if (index == null) {
+			index = buildIndex(this.repos);
+			this.index = index;
+		}
+		return index.find(application);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		for (PatternMatchingJGitEnvironmentRepository repo : this.repos.values()) {
+			repo.destroy();
+		}
+		super.destroy();
 	}
 
-	public void setRepos(Map<String, PatternMatchingJGitEnvironmentRepository> repos) {
-		this.repos.putAll(repos);
+	@Override
+	public void refresh() {
+		super.refresh();
+		for (PatternMatchingJGitEnvironmentRepository repo : this.repos.values()) {
+			repo.refresh();
+		}
+	}
+
+	/**
+	 * Add some repositories (after any existing ones, so they have lower precedence).
+	 * Can be used at runtime, in which case the new repositories are initialized here,
+	 * and then swapped in with the existing ones as a new map (and index), so that
+	 * requests and background tasks never see a map that is being changed.
+	 *
+	 * @param repos the repositories to add, keyed by name
+	 */
+	public synchronized void setRepos(
+			Map<String, PatternMatchingJGitEnvironmentRepository> repos) {
+		Map<String, PatternMatchingJGitEnvironmentRepository> updated = new LinkedHashMap<String, PatternMatchingJGitEnvironmentRepository>(
+				this.repos);
+		updated.putAll(repos);
+		if (this.initialized) {
+			for (String name : repos.keySet()) {
+				try {
+					initRepository(name, repos.get(name), null);
+				}
+				catch (Exception e) {
+					throw new IllegalStateException("Cannot initialize repository: "
+							+ name, e);
+				}
+			}
+		}
+		this.repos = updated;
+		this.index = this.initialized ? buildIndex(updated) : null;
 	}
 
 	public Map<String, PatternMatchingJGitEnvironmentRepository> getRepos() {
@@ -77,14 +234,59 @@ public class MultipleJGitEnvironmentRepository extends JGitEnvironmentRepository
 
 	@Override
 	public Environment findOne(String application, String profile, String label) {
-		for (PatternMatchingJGitEnvironmentRepository repository : this.repos.values()) {
-			Environment source = repository.findOne(application, profile, label);
-			if (source != null) {
-				return source;
+		PatternMatchingJGitEnvironmentRepository repository = findRepository(application);
+		if (repository != null) {
+			return repository.findOne(application, profile, label);
+		}
+		return super.findOne(application, profile, label);
+	}
+
+	@Override
+	public List<Environment> findAll(List<Environment> requests) {
+		Map<JGitEnvironmentRepository, List<Integer>> repositories = new LinkedHashMap<JGitEnvironmentRepository, List<Integer>>();
+		for (int i = 0; i < requests.size(); i++) {
+			JGitEnvironmentRepository repository = findRepository(requests.get(i)
+					.getName());
+			if (repository == null) {
+				repository = this;
+			}
+			if (!repositories.containsKey(repository)) {
+				repositories.put(repository, new ArrayList<Integer>());
 			}
+			repositories.get(repository).add(i);
 		}
+		Environment[] result = new Environment[requests.size()];
+		for (Map.Entry<JGitEnvironmentRepository, List<Integer>> entry : repositories
+				.entrySet()) {
+			List<Environment> group = new ArrayList<Environment>();
+			for (Integer index : entry.getValue()) {
+				group.add(requests.get(index));
+			}
+			List<Environment> loaded = entry.getKey() == this ? super.findAll(group)
+					: entry.getKey().findAll(group);
+			for (int i = 0; i < loaded.size(); i++) {
+				result[entry.getValue().get(i)] = loaded.get(i);
+			}
+		}
+		return Arrays.asList(result);
+	}
 
-		return super.findOne(application, profile, label);
+	@Override
+	public String getVersion(String application, String profile, String label) {
+		PatternMatchingJGitEnvironmentRepository repository = findRepository(application);
+		if (repository != null) {
+			return repository.getVersion(application, profile, label);
+		}
+		return super.getVersion(application, profile, label);
+	}
+
+	@Override
+	public String getLocalVersion(String application, String profile, String label) {
+		PatternMatchingJGitEnvironmentRepository repository = findRepository(application);
+		if (repository != null) {
+			return repository.getLocalVersion(application, profile, label);
+		}
+		return super.getLocalVersion(application, profile, label);
 	}
 
 	public static class PatternMatchingJGitEnvironmentRepository extends
@@ -105,11 +307,7 @@ public class MultipleJGitEnvironmentRepository extends JGitEnvironmentRepository
 		@Override
 		public Environment findOne(String application, String profile, String label) {
 
-			if (this.pattern == null || this.pattern.length == 0) {
-				return null;
-			}
-
-			if (PatternMatchUtils.simpleMatch(this.pattern, application)) {
+			if (matches(application)) {
 				return super.findOne(application, profile, label);
 			}
 
@@ -117,6 +315,16 @@ public class MultipleJGitEnvironmentRepository extends JGitEnvironmentRepository
 
 		}
 
+		public boolean matches(String application) {
+
+			if (this.pattern == null || this.pattern.length == 0) {
+				return false;
+			}
+
+			return PatternMatchUtils.simpleMatch(this.pattern, application);
+
+		}
+
 		public String getName() {
 			return this.name;
 		}
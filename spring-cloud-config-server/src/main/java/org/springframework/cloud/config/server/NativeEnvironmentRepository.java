@@ -17,10 +17,13 @@
 package org.springframework.cloud.config.server;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,14 +37,20 @@ import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
 /**
- * Simple implementation of {@link EnvironmentRepository} that uses a SpringApplication
- * and configuration files located through the normal protocols. The resulting Environment
- * is composed of property sources located using the application name as the config file
- * stem (spring.config.name) and the environment name as a Spring profile.
+ * Simple implementation of {@link EnvironmentRepository} that loads configuration files
+ * located through the normal Spring Boot protocols. The resulting Environment is composed
+ * of property sources located using the application name as the config file stem
+ * (spring.config.name) and the environment name as a Spring profile. By default the files
+ * are read directly with a {@link ConfigFileLoader}, but a SpringApplication can be used
+ * instead (slower, since it creates and closes an application context per request).
  *
  * @author Dave Syer
  * @author Roy Clarkson
@@ -53,6 +62,8 @@ public class NativeEnvironmentRepository implements EnvironmentRepository {
 
 	private static final String DEFAULT_LABEL = "master";
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	/**
 	 * Locations to search for configuration files. Defaults to the same as a Spring Boot
 	 * app so [classpath:/,classpath:/config/,file:./,file:./config/].
@@ -64,15 +75,65 @@ public class NativeEnvironmentRepository implements EnvironmentRepository {
 	 */
 	private boolean failOnError = false;
 
+	/**
+	 * Flag to indicate that a (throwaway) SpringApplication should be used to load the
+	 * configuration files instead of reading them directly (default false).
+	 */
+	private boolean useSpringApplication = false;
+
+	/**
+	 * Flag to indicate that the environments get a version (a hash of their content).
+	 * Repositories that use this one to read their files and have a version of their own
+	 * (e.g. a commit id) switch it off, so the content is not hashed for nothing.
+	 */
+	private boolean versioned = true;
+
 	private static final String[] DEFAULT_LOCATIONS = new String[] { "classpath:/",
 			"classpath:/config/", "file:./", "file:./config/" };
 
 	private ConfigurableEnvironment environment;
 
+	private ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+	private ConcurrentMap<String, Object> configFileCache;
+
 	public NativeEnvironmentRepository(ConfigurableEnvironment environment) {
 		this.environment = environment;
 	}
 
+	public boolean isUseSpringApplication() {
+		return this.useSpringApplication;
+	}
+
+	public void setUseSpringApplication(boolean useSpringApplication) {
+		this.useSpringApplication = useSpringApplication;
+	}
+
+	/**
+	 * @param resourceLoader the resource loader used to read configuration files (not
+	 * used if a SpringApplication does the loading)
+	 */
+	public void setResourceLoader(ResourceLoader resourceLoader) {
+		this.resourceLoader = resourceLoader;
+	}
+
+	/**
+	 * @param configFileCache parsed configuration files to share with other
+	 * repositories that read the same version of the same files (see
+	 * {@link ConfigFileLoader#setCache(ConcurrentMap)})
+	 */
+	public void setConfigFileCache(ConcurrentMap<String, Object> configFileCache) {
+		this.configFileCache = configFileCache;
+	}
+
+	public boolean isVersioned() {
+		return this.versioned;
+	}
+
+	public void setVersioned(boolean versioned) {
+		this.versioned = versioned;
+	}
+
 	public void setFailOnError(boolean failOnError) {
 		this.failOnError = failOnError;
 	}
@@ -88,6 +149,34 @@ public class NativeEnvironmentRepository implements EnvironmentRepository {
 
 	@Override
 	public Environment findOne(String config, String profile, String label) {
+		Environment result = this.useSpringApplication ? findOneWithSpringApplication(
+				config, profile, label) : findOneWithLoader(config, profile, label);
+		if (this.versioned) {
+			result.setVersion(getContentHash(result));
+		}
+		return result;
+	}
+
+	private Environment findOneWithLoader(String config, String profile, String label) {
+		ConfigurableEnvironment environment = getEnvironment(profile);
+		environment.getPropertySources().addFirst(
+				new SimpleCommandLinePropertySource(getArgs(config, label)));
+		Environment result = new Environment(config,
+				StringUtils.commaDelimitedListToStringArray(profile), label);
+		ConfigFileLoader loader = new ConfigFileLoader(this.resourceLoader);
+		loader.setCache(this.configFileCache);
+		for (org.springframework.core.env.PropertySource<?> source : loader
+				.load(environment)) {
+			if (source instanceof MapPropertySource) {
+				result.add(new PropertySource(source.getName(),
+						((MapPropertySource) source).getSource()));
+			}
+		}
+		return clean(result);
+	}
+
+	private Environment findOneWithSpringApplication(String config, String profile,
+			String label) {
 		SpringApplicationBuilder builder = new SpringApplicationBuilder(
 				PropertyPlaceholderAutoConfiguration.class);
 		ConfigurableEnvironment environment = getEnvironment(profile);
@@ -123,6 +212,7 @@ public class NativeEnvironmentRepository implements EnvironmentRepository {
 	protected Environment clean(Environment value) {
 		Environment result = new Environment(value.getName(), value.getProfiles(),
 				value.getLabel());
+		result.setState(value.getState());
 		for (PropertySource source : value.getPropertySources()) {
 			String name = source.getName();
 			if (this.environment.getPropertySources().contains(name)) {
@@ -171,6 +261,21 @@ public class NativeEnvironmentRepository implements EnvironmentRepository {
 		return result;
 	}
 
+	/**
+	 * There is no revision for plain files, so the version is a hash of what was loaded.
+	 */
+	private String getContentHash(Environment environment) {
+		StringBuilder content = new StringBuilder();
+		for (PropertySource source : environment.getPropertySources()) {
+			content.append(source.getName()).append("\n");
+			for (Map.Entry<?, ?> entry : source.getSource().entrySet()) {
+				content.append(entry.getKey()).append("=").append(entry.getValue())
+						.append("\n");
+			}
+		}
+		return DigestUtils.md5DigestAsHex(content.toString().getBytes(UTF8));
+	}
+
 	private String[] getArgs(String config, String label) {
 		List<String> list = new ArrayList<String>();
 		if (!config.startsWith("application")) {
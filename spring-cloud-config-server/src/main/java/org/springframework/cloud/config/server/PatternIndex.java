@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * Index of values keyed by simple patterns (as in {@link PatternMatchUtils}), which finds
+ * the first value (in the order they were added) with a pattern matching a given name.
+ * Patterns are stored in a trie by their literal prefix (up to the first "*"), so a
+ * lookup only has to check the patterns whose prefix matches, plus the ones that start
+ * with a wildcard. The results are remembered per name.
+ *
+ * @param <T> the value type
+ */
+public class PatternIndex<T> {
+
+	private static final int MAX_RESOLVED = 10000;
+
+	private static final Object NONE = new Object();
+
+	private final Node root = new Node();
+
+	private final List<Candidate> wildcards = new ArrayList<Candidate>();
+
+	private final ConcurrentMap<String, Object> resolved = new ConcurrentHashMap<String, Object>();
+
+	private int count;
+
+	/**
+	 * Add a value to the index. Values added earlier take precedence if more than one
+	 * matches.
+	 *
+	 * @param patterns the patterns for the value (null elements are ignored)
+	 * @param value the value
+	 */
+	public void add(String[] patterns, T value) {
+		int order = this.count++;
+		if (patterns == null) {
+			return;
+		}
+		for (String pattern : patterns) {
+			if (pattern == null) {
+				continue;
+			}
+			int wildcard = pattern.indexOf('*');
+			Candidate candidate = new Candidate(order, pattern, value);
+			if (wildcard == 0) {
+				this.wildcards.add(candidate);
+			}
+			else if (wildcard < 0) {
+				node(pattern).exact.add(candidate);
+			}
+			else {
+				candidate.prefixOnly = wildcard == pattern.length() - 1;
+				node(pattern.substring(0, wildcard)).prefixed.add(candidate);
+			}
+		}
+		this.resolved.clear();
+	}
+
+	/**
+	 * @param name the name to match
+	 * @return the first value with a pattern that matches the name, or null if there is
+	 * none
+	 */
+	@SuppressWarnings("unchecked")
+	public T find(String name) {
+		if (name == null) {
+			return null;
+		}
+		Object result = this.resolved.get(name);
+		if (result == null) {
+			Candidate candidate = match(name);
+			result = candidate == null ? NONE : candidate.value;
+			if (this.resolved.size() >= MAX_RESOLVED) {
+				this.resolved.clear();
+			}
+			this.resolved.put(name, result);
+		}
+		return result == NONE ? null : (T) result;
+	}
+
+	private Candidate match(String name) {
+		Candidate best = null;
+		Node node = this.root;
+		for (int i = 0; i < name.length() && node != null; i++) {
+			node = node.children.get(name.charAt(i));
+			if (node != null) {
+				best = best(best, node.prefixed, name);
+			}
+		}
+		if (node != null) {
+			best = best(best, node.exact, name);
+		}
+		return best(best, this.wildcards, name);
+	}
+
+	private Candidate best(Candidate best, List<Candidate> candidates, String name) {
+		for (Candidate candidate : candidates) {
+			if (best != null && candidate.order >= best.order) {
+				continue;
+			}
+			if (candidate.matches(name)) {
+				best = candidate;
+			}
+		}
+		return best;
+	}
+
+	private Node node(String prefix) {
+		Node node = this.root;
+		for (int i = 0; i < prefix.length(); i++) {
+			Character key = prefix.charAt(i);
+			Node child = node.children.get(key);
+			if (child == null) {
+				child = new Node();
+				node.children.put(key, child);
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	private class Node {
+
+		private final Map<Character, Node> children = new HashMap<Character, Node>();
+
+		/**
+		 * Patterns with a wildcard whose literal prefix ends here.
+		 */
+		private final List<Candidate> prefixed = new ArrayList<Candidate>();
+
+		/**
+		 * Patterns without a wildcard that end here.
+		 */
+		private final List<Candidate> exact = new ArrayList<Candidate>();
+
+	}
+
+	private class Candidate {
+
+		private final int order;
+
+		private final String pattern;
+
+		private final T value;
+
+		private boolean prefixOnly;
+
+		Candidate(int order, String pattern, T value) {
+			this.order = order;
+			this.pattern = pattern;
+			this.value = value;
+		}
+
+		/**
+		 * Only called once the trie has established that the literal prefix (or the
+		 * whole pattern if there is no wildcard) matches.
+		 */
+		boolean matches(String name) {
+			if (this.prefixOnly || this.pattern.indexOf('*') < 0) {
+				return true;
+			}
+			return PatternMatchUtils.simpleMatch(this.pattern, name);
+		}
+
+	}
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.boot.bind.PropertiesConfigurationFactory;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.util.StringUtils;
+import org.springframework.validation.BindException;
+
+/**
+ * Converts flat properties (e.g. "a.b[0].c") into nested maps and lists, as used for the
+ * YAML and JSON views of an environment. The result is the same (including the order of
+ * the keys) as binding the properties to a map with Spring Boot, but for simple keys
+ * (dot separated names with at most one list index, where no key is also the parent of
+ * another one) it is built directly in a couple of passes over the keys. Anything else is
+ * still bound, so that the output does not change.
+ *
+ */
+public class PropertyTreeConverter {
+
+	private static final String MAP_PREFIX = "map";
+
+	/**
+	 * @param properties the properties, in the order they should be added (usually
+	 * sorted by key)
+	 * @return nested maps and lists with the same content
+	 * @throws BindException if the properties cannot be bound
+	 */
+	public static Map<String, Object> convert(Map<String, Object> properties)
+			throws BindException {
+		Map<String, Object> result = build(properties);
+		if (result == null) {
+			result = bind(properties);
+		}
+		return result;
+	}
+
+	/**
+	 * Build the result directly if all the keys are simple enough.
+	 *
+	 * @return the result or null if the properties have to be bound
+	 */
+	static Map<String, Object> build(Map<String, Object> properties) {
+		List<Path> paths = new ArrayList<Path>(properties.size());
+		Map<String, Boolean> containers = new HashMap<String, Boolean>();
+		Set<String> leaves = new HashSet<String>();
+		for (Map.Entry<String, Object> entry : properties.entrySet()) {
+			Path path = Path.parse(entry.getKey());
+			if (path == null || entry.getValue() == null
+					|| !path.addContainers(containers)) {
+				return null;
+			}
+			leaves.add(path.toString());
+			paths.add(path);
+		}
+		for (String leaf : leaves) {
+			if (containers.containsKey(leaf)) {
+				return null;
+			}
+		}
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		// The lists are created before anything else (as in the binding) because it
+		// affects the order of the keys
+		for (Path path : paths) {
+			if (path.index >= 0) {
+				path.createList(result);
+			}
+		}
+		for (Path path : paths) {
+			if (!path.setValue(result, properties.get(path.key))) {
+				return null;
+			}
+		}
+		return result;
+	}
+
+	static Map<String, Object> bind(Map<String, Object> data) throws BindException {
+		Map<String, Object> target = new LinkedHashMap<String, Object>();
+		PropertiesConfigurationFactory<Map<String, Object>> factory = new PropertiesConfigurationFactory<Map<String, Object>>(
+				target);
+		LinkedHashMap<String, Object> properties = new LinkedHashMap<String, Object>();
+		for (String key : data.keySet()) {
+			properties.put(MAP_PREFIX + "." + key, data.get(key));
+		}
+		addArrays(target, properties);
+		MutablePropertySources propertySources = new MutablePropertySources();
+		propertySources.addFirst(new MapPropertySource("properties", properties));
+		factory.setPropertySources(propertySources);
+		factory.bindPropertiesToTarget();
+		@SuppressWarnings("unchecked")
+		Map<String, Object> result = (Map<String, Object>) target.get(MAP_PREFIX);
+		return result == null ? new LinkedHashMap<String, Object>() : result;
+	}
+
+	/**
+	 * Create Lists of the right size for any YAML arrays that are going to need to be
+	 * bound. Some of this might be do-able in RelaxedDataBinder, but we need to do it
+	 * here for now. Only supports arrays at leaf level currently (i.e. the properties
+	 * keys end in [*]).
+	 *
+	 * @param target the target Map
+	 * @param properties the properties (with key names to check)
+	 */
+	private static void addArrays(Map<String, Object> target,
+			Map<String, Object> properties) {
+		for (String key : properties.keySet()) {
+			int index = key.indexOf("[");
+			Map<String, Object> current = target;
+			if (index > 0) {
+				String stem = key.substring(0, index);
+				String[] keys = StringUtils.delimitedListToStringArray(stem, ".");
+				for (int i = 0; i < keys.length - 1; i++) {
+					if (current.get(keys[i]) == null) {
+						LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+						current.put(keys[i], map);
+						current = map;
+					}
+					else {
+						@SuppressWarnings("unchecked")
+						Map<String, Object> map = (Map<String, Object>) current
+								.get(keys[i]);
+						current = map;
+					}
+				}
+				String name = keys[keys.length - 1];
+				if (current.get(name) == null) {
+					current.put(name, new ArrayList<Object>());
+				}
+				@SuppressWarnings("unchecked")
+				List<Object> value = (List<Object>) current.get(name);
+				int position = Integer
+						.valueOf(key.substring(index + 1, key.indexOf("]")));
+				while (position >= value.size()) {
+					if (key.indexOf("].", index) > 0) {
+						value.add(new LinkedHashMap<String, Object>());
+					}
+					else {
+						value.add("");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A key split into names, with an optional list index after one of them (e.g.
+	 * "a.b[0].c" is [a, b, c] with index 0 after b).
+	 */
+	private static class Path {
+
+		private final String key;
+
+		private final String[] names;
+
+		/**
+		 * The position in the names of the list (or -1 if there is none).
+		 */
+		private final int list;
+
+		private final int index;
+
+		Path(String key, String[] names, int list, int index) {
+			this.key = key;
+			this.names = names;
+			this.list = list;
+			this.index = index;
+		}
+
+		static Path parse(String key) {
+			String[] names = StringUtils.delimitedListToStringArray(key, ".");
+			int list = -1;
+			int index = -1;
+			for (int i = 0; i < names.length; i++) {
+				String name = names[i];
+				int open = name.indexOf('[');
+				if (open >= 0) {
+					if (list >= 0 || open == 0 || name.indexOf(']') != name.length() - 1
+							|| open + 2 > name.length() - 1) {
+						return null;
+					}
+					String digits = name.substring(open + 1, name.length() - 1);
+					for (int j = 0; j < digits.length(); j++) {
+						if (digits.charAt(j) < '0' || digits.charAt(j) > '9') {
+							return null;
+						}
+					}
+					if (digits.length() > 9
+							|| (digits.length() > 1 && digits.charAt(0) == '0')) {
+						return null;
+					}
+					list = i;
+					index = Integer.parseInt(digits);
+					name = name.substring(0, open);
+					names[i] = name;
+				}
+				if (name.length() == 0 || name.indexOf(']') >= 0) {
+					return null;
+				}
+			}
+			return new Path(key, names, list, index);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < this.names.length; i++) {
+				if (i > 0) {
+					builder.append(".");
+				}
+				builder.append(this.names[i]);
+				if (i == this.list) {
+					builder.append("[").append(this.index).append("]");
+				}
+			}
+			return builder.toString();
+		}
+
+		/**
+		 * Register the parents of this path (and whether they are lists).
+		 *
+		 * @return false if a parent is already registered with a different type
+		 */
+		boolean addContainers(Map<String, Boolean> containers) {
+			StringBuilder prefix = new StringBuilder();
+			for (int i = 0; i < this.names.length; i++) {
+				if (i > 0) {
+					prefix.append(".");
+				}
+				prefix.append(this.names[i]);
+				if (i == this.list) {
+					if (!addContainer(containers, prefix.toString(), true)) {
+						return false;
+					}
+					prefix.append("[").append(this.index).append("]");
+				}
+				if (i < this.names.length - 1
+						&& !addContainer(containers, prefix.toString(), false)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean addContainer(Map<String, Boolean> containers, String path,
+				boolean list) {
+			Boolean existing = containers.put(path, list);
+			return existing == null || existing == list;
+		}
+
+		/**
+		 * The same as addArrays() for a single key.
+		 */
+		void createList(Map<String, Object> target) {
+			Map<String, Object> current = target;
+			for (int i = 0; i < this.list; i++) {
+				current = childMap(current, this.names[i]);
+			}
+			@SuppressWarnings("unchecked")
+			List<Object> value = (List<Object>) current.get(this.names[this.list]);
+			if (value == null) {
+				value = new ArrayList<Object>();
+				current.put(this.names[this.list], value);
+			}
+			while (this.index >= value.size()) {
+				if (this.list < this.names.length - 1) {
+					value.add(new LinkedHashMap<String, Object>());
+				}
+				else {
+					value.add("");
+				}
+			}
+		}
+
+		/**
+		 * @return false if the structure is not as expected (so the binding might do
+		 * something else)
+		 */
+		@SuppressWarnings("unchecked")
+		boolean setValue(Map<String, Object> target, Object value) {
+			Map<String, Object> current = target;
+			for (int i = 0; i < this.names.length; i++) {
+				String name = this.names[i];
+				boolean last = i == this.names.length - 1;
+				if (i == this.list) {
+					Object element = ((List<Object>) current.get(name)).get(this.index);
+					if (last) {
+						((List<Object>) current.get(name)).set(this.index, value);
+						return true;
+					}
+					if (!(element instanceof Map)) {
+						return false;
+					}
+					current = (Map<String, Object>) element;
+				}
+				else if (last) {
+					current.put(name, value);
+				}
+				else {
+					current = childMap(current, name);
+				}
+			}
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static Map<String, Object> childMap(Map<String, Object> map, String name) {
+			Map<String, Object> child = (Map<String, Object>) map.get(name);
+			if (child == null) {
+				child = new LinkedHashMap<String, Object>();
+				map.put(name, child);
+			}
+			return child;
+		}
+
+	}
+
+}
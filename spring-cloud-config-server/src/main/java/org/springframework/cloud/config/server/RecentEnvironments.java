@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Least recently used record of the environments (as loaded from the repository, not
+ * decrypted) that have been sent to clients, keyed by application, profiles, label and
+ * version. A client can only ask for the changes since a version that is in here, so
+ * working them out never has to go back to the repository for an old version.
+ *
+ */
+class RecentEnvironments {
+
+	private final Map<Key, Environment> environments;
+
+	RecentEnvironments(final int maxSize) {
+		Assert.isTrue(maxSize > 0, "Size must be positive");
+		this.environments = new LinkedHashMap<Key, Environment>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Environment> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Remember an environment (if it has a version).
+	 */
+	void put(String name, String profiles, String label, Environment environment) {
+		if (environment.getVersion() == null) {
+			return;
+		}
+		// The caller might add sources (e.g. overrides) to the one it has
+		Environment copy = new Environment(environment.getName(),
+				environment.getProfiles(), environment.getLabel());
+		copy.setVersion(environment.getVersion());
+		copy.setState(environment.getState());
+		for (PropertySource source : environment.getPropertySources()) {
+			copy.add(source);
+		}
+		synchronized (this.environments) {
+			this.environments.put(new Key(name, profiles, label, copy.getVersion()),
+					copy);
+		}
+	}
+
+	/**
+	 * @return the environment with this version, or null if it is not known
+	 */
+	Environment get(String name, String profiles, String label, String version) {
+		synchronized (this.environments) {
+			return this.environments.get(new Key(name, profiles, label, version));
+		}
+	}
+
+	int size() {
+		synchronized (this.environments) {
+			return this.environments.size();
+		}
+	}
+
+	private static class Key {
+
+		private final String name;
+		private final String profiles;
+		private final String label;
+		private final String version;
+
+		Key(String name, String profiles, String label, String version) {
+			this.name = name;
+			this.profiles = profiles;
+			this.label = label;
+			this.version = version;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return ObjectUtils.nullSafeEquals(this.name, other.name)
+					&& ObjectUtils.nullSafeEquals(this.profiles, other.profiles)
+					&& ObjectUtils.nullSafeEquals(this.label, other.label)
+					&& ObjectUtils.nullSafeEquals(this.version, other.version);
+		}
+
+		@Override
+		public int hashCode() {
+			return ObjectUtils.nullSafeHashCode(new Object[] { this.name, this.profiles,
+					this.label, this.version });
+		}
+
+	}
+
+}
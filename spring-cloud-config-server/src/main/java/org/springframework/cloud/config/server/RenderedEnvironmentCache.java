@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Least recently used cache of environments rendered in one of the flat formats
+ * (properties, YAML or JSON), with a gzipped copy of each one. Only safe to use if the
+ * key includes something that changes whenever the content does (e.g. the version of
+ * the label).
+ *
+ */
+class RenderedEnvironmentCache {
+
+	private final Map<CacheKey, Rendered> cache;
+
+	RenderedEnvironmentCache(final int maxSize) {
+		Assert.isTrue(maxSize > 0, "Cache size must be positive");
+		this.cache = new LinkedHashMap<CacheKey, Rendered>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, Rendered> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	Rendered get(CacheKey key) {
+		synchronized (this.cache) {
+			return this.cache.get(key);
+		}
+	}
+
+	Rendered put(CacheKey key, byte[] body) throws IOException {
+		Rendered rendered = new Rendered(body, gzip(body));
+		synchronized (this.cache) {
+			this.cache.put(key, rendered);
+		}
+		return rendered;
+	}
+
+	int size() {
+		synchronized (this.cache) {
+			return this.cache.size();
+		}
+	}
+
+	private byte[] gzip(byte[] body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 32);
+		GZIPOutputStream output = new GZIPOutputStream(bytes);
+		try {
+			output.write(body);
+		}
+		finally {
+			output.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	static class Rendered {
+
+		private final byte[] body;
+
+		private final byte[] gzipped;
+
+		Rendered(byte[] body, byte[] gzipped) {
+			this.body = body;
+			this.gzipped = gzipped;
+		}
+
+		byte[] getBody() {
+			return this.body;
+		}
+
+		byte[] getGzipped() {
+			return this.gzipped;
+		}
+
+	}
+
+	static class CacheKey {
+
+		private final String name;
+		private final String profiles;
+		private final String label;
+		private final String state;
+		private final String format;
+
+		CacheKey(String name, String profiles, String label, String state,
+				String format) {
+			this.name = name;
+			this.profiles = profiles;
+			this.label = label;
+			this.state = state;
+			this.format = format;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return ObjectUtils.nullSafeEquals(this.name, other.name)
+					&& ObjectUtils.nullSafeEquals(this.profiles, other.profiles)
+					&& ObjectUtils.nullSafeEquals(this.label, other.label)
+					&& ObjectUtils.nullSafeEquals(this.state, other.state)
+					&& ObjectUtils.nullSafeEquals(this.format, other.format);
+		}
+
+		@Override
+		public int hashCode() {
+			return ObjectUtils.nullSafeHashCode(new Object[] { this.name, this.profiles,
+					this.label, this.state, this.format });
+		}
+
+		@Override
+		public String toString() {
+			return "[name=" + this.name + ", profiles=" + this.profiles + ", label="
+					+ this.label + ", state=" + this.state + ", format=" + this.format
+					+ "]";
+		}
+
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event published when a fetch from a remote repository has brought in changes (e.g. new
+ * commits on a branch), so the versions that labels resolve to might be different.
+ *
+ */
+@SuppressWarnings("serial")
+public class RepositoryFetchedEvent extends ApplicationEvent {
+
+	public RepositoryFetchedEvent(EnvironmentRepository repository) {
+		super(repository);
+	}
+
+	public EnvironmentRepository getRepository() {
+		return (EnvironmentRepository) getSource();
+	}
+
+}
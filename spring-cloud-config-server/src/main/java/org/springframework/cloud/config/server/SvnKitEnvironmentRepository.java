@@ -61,13 +61,16 @@ public class SvnKitEnvironmentRepository extends AbstractScmEnvironmentRepositor
 							false, getUsername(), getPassword()));
 		}
 		try {
+			long revision;
 			if (new File(getWorkingDirectory(), ".svn").exists()) {
-				update(svnOperationFactory);
+				revision = update(svnOperationFactory);
 			}
 			else {
-				checkout(svnOperationFactory);
+				revision = checkout(svnOperationFactory);
 			}
-			return clean(loadEnvironment(application, profile, label));
+			Environment result = loadEnvironment(application, profile, label);
+			result.setVersion(Long.toString(revision));
+			return clean(result);
 		}
 		catch (SVNException e) {
 			throw new IllegalStateException("Cannot checkout repository", e);
@@ -80,6 +83,8 @@ public class SvnKitEnvironmentRepository extends AbstractScmEnvironmentRepositor
 	private synchronized Environment loadEnvironment(String application, String profile, String label) {
 		final NativeEnvironmentRepository environmentRepository = new NativeEnvironmentRepository(
 				getEnvironment());
+		// The revision is the version
+		environmentRepository.setVersioned(false);
 		String[] locations = getSearchLocations(getSvnPath(
 				getWorkingDirectory(), label));
 		boolean exists = false;
@@ -98,20 +103,20 @@ public class SvnKitEnvironmentRepository extends AbstractScmEnvironmentRepositor
 		return environmentRepository.findOne(application, profile, label);
 	}
 
-	private void checkout(SvnOperationFactory svnOperationFactory) throws SVNException {
+	private long checkout(SvnOperationFactory svnOperationFactory) throws SVNException {
 		logger.debug("Checking out " + getUri() + " to: "
 				+ getWorkingDirectory().getAbsolutePath());
 		final SvnCheckout checkout = svnOperationFactory.createCheckout();
 		checkout.setSource(SvnTarget.fromURL(SVNURL.parseURIEncoded(getUri())));
 		checkout.setSingleTarget(SvnTarget.fromFile(getWorkingDirectory()));
-		checkout.run();
+		return checkout.run();
 	}
 
-	private void update(SvnOperationFactory svnOperationFactory) throws SVNException {
+	private long update(SvnOperationFactory svnOperationFactory) throws SVNException {
 		logger.debug("Repo already checked out - updating instead.");
 		final SvnUpdate update = svnOperationFactory.createUpdate();
 		update.setSingleTarget(SvnTarget.fromFile(getWorkingDirectory()));
-		update.run();
+		return update.run()[0];
 	}
 
 	@Override
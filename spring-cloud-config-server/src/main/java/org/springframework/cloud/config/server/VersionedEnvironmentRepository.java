@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+/**
+ * An {@link EnvironmentRepository} that can cheaply work out the version (e.g. a commit
+ * id) that a label currently resolves to, without loading the whole environment.
+ *
+ */
+public interface VersionedEnvironmentRepository extends EnvironmentRepository {
+
+	/**
+	 * The version that loading the environment now would give. It might mean a look at a
+	 * remote (e.g. if the repository would fetch before loading), so it is up to date but
+	 * not free.
+	 *
+	 * @param application the application name
+	 * @param profile the profiles (comma separated)
+	 * @param label the label (e.g. a branch name or a tag)
+	 * @return the current version of the label, or null if it cannot be determined
+	 */
+	String getVersion(String application, String profile, String label);
+
+	/**
+	 * The version from what the repository already has locally (it does not go to the
+	 * network), so it can be behind a remote until the next time the environment is
+	 * loaded or the repository is refreshed. Cheap enough to call often (e.g. to check
+	 * for changes in the background).
+	 *
+	 * @param application the application name
+	 * @param profile the profiles (comma separated)
+	 * @param label the label (e.g. a branch name or a tag)
+	 * @return the local version of the label, or null if it cannot be determined
+	 */
+	String getLocalVersion(String application, String profile, String label);
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.DumperOptions.FlowStyle;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.serializer.Serializer;
+
+/**
+ * Renders objects as YAML in block style, with the same output as
+ * {@link Yaml#dumpAs(Object, Tag, FlowStyle)}. A {@link Yaml} is not thread safe, so
+ * each thread gets its own one, which is set up once and then reused. The output can be
+ * written straight to a {@link Writer}.
+ *
+ */
+class YamlRenderer {
+
+	private final ThreadLocal<BlockYaml> yaml = new ThreadLocal<BlockYaml>() {
+		@Override
+		protected BlockYaml initialValue() {
+			return new BlockYaml();
+		}
+	};
+
+	/**
+	 * @param data the object to render
+	 * @param rootTag the tag of the document (e.g. {@link Tag#MAP})
+	 * @param output where to write the result
+	 * @throws IOException if the output cannot be written
+	 */
+	void render(Object data, Tag rootTag, Writer output) throws IOException {
+		this.yaml.get().render(data, rootTag, output);
+	}
+
+	String render(Object data, Tag rootTag) {
+		StringWriter output = new StringWriter();
+		try {
+			render(data, rootTag, output);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write YAML", e);
+		}
+		return output.toString();
+	}
+
+	private static class BlockYaml extends Yaml {
+
+		BlockYaml() {
+			super(options());
+		}
+
+		private static DumperOptions options() {
+			DumperOptions options = new DumperOptions();
+			options.setDefaultFlowStyle(FlowStyle.BLOCK);
+			return options;
+		}
+
+		void render(Object data, Tag rootTag, Writer output) throws IOException {
+			Serializer serializer = new Serializer(new Emitter(output,
+					this.dumperOptions), this.resolver, this.dumperOptions, rootTag);
+			serializer.open();
+			serializer.serialize(this.representer.represent(data));
+			serializer.close();
+			output.flush();
+		}
+
+	}
+
+}
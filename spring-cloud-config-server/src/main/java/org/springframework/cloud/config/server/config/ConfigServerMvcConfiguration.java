@@ -15,11 +15,15 @@
  */
 package org.springframework.cloud.config.server.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.cloud.config.server.ConfigServerProperties;
+import org.springframework.cloud.config.server.EnvironmentBatchController;
 import org.springframework.cloud.config.server.EnvironmentController;
 import org.springframework.cloud.config.server.EnvironmentRepository;
+import org.springframework.cloud.config.server.EnvironmentWatcher;
 import org.springframework.cloud.config.server.encryption.EnvironmentEncryptor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -41,15 +45,40 @@ public class ConfigServerMvcConfiguration {
 	@Autowired(required=false)
 	private EnvironmentEncryptor environmentEncryptor;
 
+	@Autowired(required=false)
+	private ObjectMapper objectMapper;
+
 	@Bean
 	public EnvironmentController environmentController() {
 		EnvironmentController controller = new EnvironmentController(repository, environmentEncryptor);
 		controller.setDefaultLabel(getDefaultLabel());
 		controller.setOverrides(server.getOverrides());
 		controller.setStripDocumentFromYaml(server.isStripDocumentFromYaml());
+		if (objectMapper != null) {
+			controller.setObjectMapper(objectMapper);
+		}
+		if (server.getCache().isEnabled()) {
+			controller.setRenderedCacheSize(server.getCache().getMaxRendered());
+		}
+		controller.setRecentVersions(server.getCache().getMaxVersions());
+		controller.setWatcher(environmentWatcher());
 		return controller;
 	}
 
+	@Bean
+	public EnvironmentBatchController environmentBatchController() {
+		return new EnvironmentBatchController(environmentController());
+	}
+
+	@Bean
+	public EnvironmentWatcher environmentWatcher() {
+		EnvironmentWatcher watcher = new EnvironmentWatcher(repository);
+		watcher.setTimeout(server.getWatch().getTimeout());
+		watcher.setStreamTimeout(server.getWatch().getStreamTimeout());
+		watcher.setInterval(server.getWatch().getInterval());
+		return watcher;
+	}
+
 	private String getDefaultLabel() {
 		if (StringUtils.hasText(server.getDefaultLabel())) {
 			return server.getDefaultLabel();
@@ -17,15 +17,19 @@
 package org.springframework.cloud.config.server.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.bootstrap.encrypt.KeyProperties;
 import org.springframework.cloud.bootstrap.encrypt.KeyProperties.KeyStore;
+import org.springframework.cloud.config.server.ConfigServerProperties;
+import org.springframework.cloud.config.server.ConfigServerProperties.Encrypt;
 import org.springframework.cloud.config.server.encryption.CipherEnvironmentEncryptor;
 import org.springframework.cloud.config.server.encryption.EnvironmentEncryptor;
 import org.springframework.cloud.config.server.encryption.KeyStoreTextEncryptorLocator;
+import org.springframework.cloud.config.server.encryption.TextEncryptorLocatorMetrics;
 import org.springframework.cloud.config.server.encryption.TextEncryptorLocator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -47,6 +51,9 @@ import org.springframework.security.rsa.crypto.RsaSecretEncryptor;
 @Configuration
 public class EncryptionAutoConfiguration {
 
+	@Autowired(required = false)
+	private ConfigServerProperties server;
+
 	@ConditionalOnMissingBean(TextEncryptor.class)
 	protected static class DefaultTextEncryptorConfiguration {
 
@@ -62,7 +69,16 @@ public class EncryptionAutoConfiguration {
 	@ConditionalOnProperty(value = "spring.cloud.config.server.encrypt.enabled", matchIfMissing = true)
 	public EnvironmentEncryptor environmentEncryptor(
 			TextEncryptorLocator textEncryptorLocator) {
-		return new CipherEnvironmentEncryptor(textEncryptorLocator);
+		CipherEnvironmentEncryptor encryptor = new CipherEnvironmentEncryptor(
+				textEncryptorLocator);
+		if (this.server != null) {
+			Encrypt encrypt = this.server.getEncrypt();
+			encryptor.setCacheTimeToLive(encrypt.getCacheTimeToLive() * 1000);
+			encryptor.setCacheSize(encrypt.getCacheSize());
+			encryptor.setParallelism(encrypt.getParallelism());
+			encryptor.setParallelThreshold(encrypt.getParallelThreshold());
+		}
+		return encryptor;
 	}
 
 	@Configuration
@@ -75,8 +91,8 @@ public class EncryptionAutoConfiguration {
 		private KeyProperties key;
 
 		@Bean
-		@ConditionalOnMissingBean
-		public TextEncryptorLocator textEncryptorLocator() {
+		@ConditionalOnMissingBean(TextEncryptorLocator.class)
+		public KeyStoreTextEncryptorLocator textEncryptorLocator() {
 			KeyStore keyStore = this.key.getKeyStore();
 			KeyStoreTextEncryptorLocator locator = new KeyStoreTextEncryptorLocator(new KeyStoreKeyFactory(
 					keyStore.getLocation(), keyStore.getPassword().toCharArray()),
@@ -89,4 +105,17 @@ public class EncryptionAutoConfiguration {
 
 	}
 
+	@Configuration
+	@ConditionalOnClass({ RsaSecretEncryptor.class, PublicMetrics.class })
+	@ConditionalOnProperty(value = "encrypt.keyStore.location", matchIfMissing = false)
+	protected static class TextEncryptorLocatorMetricsConfiguration {
+
+		@Bean
+		public TextEncryptorLocatorMetrics textEncryptorLocatorMetrics(
+				TextEncryptorLocator locator) {
+			return new TextEncryptorLocatorMetrics(locator);
+		}
+
+	}
+
 }
@@ -16,9 +16,11 @@
 package org.springframework.cloud.config.server.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.config.server.CachingEnvironmentRepository;
 import org.springframework.cloud.config.server.ConfigServerHealthIndicator;
 import org.springframework.cloud.config.server.ConfigServerProperties;
 import org.springframework.cloud.config.server.EnvironmentRepository;
@@ -27,6 +29,7 @@ import org.springframework.cloud.config.server.NativeEnvironmentRepository;
 import org.springframework.cloud.config.server.SvnKitEnvironmentRepository;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.ConfigurableEnvironment;
 
@@ -41,10 +44,22 @@ public class EnvironmentRepositoryConfiguration {
 
 	@Bean
 	@ConditionalOnProperty(value = "spring.cloud.config.server.health.enabled", matchIfMissing = true)
-	public ConfigServerHealthIndicator configServerHealthIndicator(EnvironmentRepository repository) {
+	public ConfigServerHealthIndicator configServerHealthIndicator(
+			@Qualifier("environmentRepository") EnvironmentRepository repository) {
+		// Always check the real repository, not a cache
 		return new ConfigServerHealthIndicator(repository);
 	}
 
+	@Bean
+	@Primary
+	@ConditionalOnProperty("spring.cloud.config.server.cache.enabled")
+	public CachingEnvironmentRepository cachingEnvironmentRepository(
+			@Qualifier("environmentRepository") EnvironmentRepository repository,
+			ConfigServerProperties server) {
+		return new CachingEnvironmentRepository(repository, server.getCache()
+				.getMaxSize());
+	}
+
 	@Configuration
 	@Profile("native")
 	protected static class NativeRepositoryConfiguration {
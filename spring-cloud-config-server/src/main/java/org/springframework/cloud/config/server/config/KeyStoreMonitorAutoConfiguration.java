@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.bootstrap.encrypt.KeyProperties;
+import org.springframework.cloud.bootstrap.encrypt.KeyProperties.KeyStore;
+import org.springframework.cloud.config.server.ConfigServerProperties;
+import org.springframework.cloud.config.server.encryption.CipherEnvironmentEncryptor;
+import org.springframework.cloud.config.server.encryption.EnvironmentEncryptor;
+import org.springframework.cloud.config.server.encryption.KeyStoreMonitor;
+import org.springframework.cloud.config.server.encryption.KeyStoreTextEncryptorLocator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.rsa.crypto.RsaSecretEncryptor;
+
+/**
+ * Auto configuration for reloading the keystore (and forgetting the keys and decrypted
+ * values) when it changes. It comes after the {@link EncryptionAutoConfiguration} so it
+ * can tell whether the keys come from a keystore.
+ *
+ */
+@Configuration
+@ConditionalOnClass(RsaSecretEncryptor.class)
+@ConditionalOnProperty(value = "encrypt.keyStore.location", matchIfMissing = false)
+@ConditionalOnBean(KeyStoreTextEncryptorLocator.class)
+@EnableConfigurationProperties(KeyProperties.class)
+@AutoConfigureAfter(EncryptionAutoConfiguration.class)
+public class KeyStoreMonitorAutoConfiguration {
+
+	@Autowired
+	private KeyProperties key;
+
+	@Autowired(required = false)
+	private ConfigServerProperties server;
+
+	@Autowired(required = false)
+	private EnvironmentEncryptor environmentEncryptor;
+
+	@Bean
+	@ConditionalOnMissingBean
+	public KeyStoreMonitor keyStoreMonitor(KeyStoreTextEncryptorLocator locator) {
+		KeyStore keyStore = this.key.getKeyStore();
+		KeyStoreMonitor monitor = new KeyStoreMonitor(locator, keyStore.getLocation(),
+				keyStore.getPassword().toCharArray());
+		if (this.environmentEncryptor instanceof CipherEnvironmentEncryptor) {
+			monitor.setEnvironmentEncryptor((CipherEnvironmentEncryptor) this.environmentEncryptor);
+		}
+		if (this.server != null) {
+			monitor.setCheckInterval(this.server.getEncrypt().getKeyStoreCheckInterval() * 1000);
+		}
+		return monitor;
+	}
+
+}
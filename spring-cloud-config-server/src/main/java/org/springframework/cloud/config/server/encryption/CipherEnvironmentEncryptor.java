@@ -16,12 +16,21 @@
 
 package org.springframework.cloud.config.server.encryption;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
@@ -30,6 +39,9 @@ import org.springframework.util.StringUtils;
 
 /**
  * EnvironmentEncryptor that can decrypt property values prefixed with {cipher} marker.
+ * Optionally remembers the decrypted values (keyed by cipher text and encryptor keys) so
+ * the same ciphers do not have to be decrypted again on every request, and can decrypt
+ * environments with a lot of encrypted values on a pool of background threads.
  *
  * @author Dave Syer
  * @author Bartosz Wojtkiewicz
@@ -37,7 +49,8 @@ import org.springframework.util.StringUtils;
  *
  */
 @Component
-public class CipherEnvironmentEncryptor implements EnvironmentEncryptor {
+public class CipherEnvironmentEncryptor implements EnvironmentEncryptor,
+		DisposableBean {
 
 	private static Log logger = LogFactory.getLog(CipherEnvironmentEncryptor.class);
 
@@ -45,11 +58,107 @@ public class CipherEnvironmentEncryptor implements EnvironmentEncryptor {
 
 	private EnvironmentPrefixHelper helper = new EnvironmentPrefixHelper();
 
+	private int cacheSize = 0;
+
+	private long cacheTimeToLive = 0;
+
+	private volatile DecryptedValueCache cache;
+
+	private int parallelism = 0;
+
+	private int parallelThreshold = 100;
+
+	private volatile ExecutorService executor;
+
 	@Autowired
 	public CipherEnvironmentEncryptor(TextEncryptorLocator encryptor) {
 		this.encryptor = encryptor;
 	}
 
+	/**
+	 * @param cacheSize the maximum number of decrypted values to remember (0 to switch
+	 * the cache off)
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+		resetCache();
+	}
+
+	/**
+	 * @param cacheTimeToLive the time in milliseconds to remember a decrypted value for
+	 * (0 to keep it until it is evicted)
+	 */
+	public void setCacheTimeToLive(long cacheTimeToLive) {
+		this.cacheTimeToLive = cacheTimeToLive;
+		resetCache();
+	}
+
+	/**
+	 * Forget all the decrypted values (e.g. when the keys have changed).
+	 */
+	public void clearCache() {
+		DecryptedValueCache cache = this.cache;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * @param parallelism the number of background threads to use for decrypting large
+	 * environments (0 to decrypt everything on the caller thread)
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param parallelThreshold the minimum number of encrypted values in an environment
+	 * for it to be decrypted in parallel
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		ExecutorService executor = this.executor;
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	private ExecutorService getExecutor() {
+		if (this.parallelism <= 0) {
+			return null;
+		}
+		if (this.executor == null) {
+			synchronized (this) {
+				if (this.executor == null) {
+					this.executor = Executors.newFixedThreadPool(this.parallelism,
+							new ThreadFactory() {
+								private final AtomicInteger count = new AtomicInteger();
+
+								@Override
+								public Thread newThread(Runnable runnable) {
+									Thread thread = new Thread(runnable,
+											"config-decrypt-"
+													+ this.count.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+							});
+				}
+			}
+		}
+		return this.executor;
+	}
+
+	private void resetCache() {
+		clearCache();
+		this.cache = this.cacheSize > 0 ? new DecryptedValueCache(this.cacheSize,
+				this.cacheTimeToLive) : null;
+	}
+
 	@Override
 	public Environment decrypt(Environment environment) {
 		return this.encryptor != null ? decrypt(environment, this.encryptor)
@@ -59,34 +168,142 @@ public class CipherEnvironmentEncryptor implements EnvironmentEncryptor {
 	private Environment decrypt(Environment environment, TextEncryptorLocator encryptor) {
 		Environment result = new Environment(environment.getName(),
 				environment.getProfiles(), environment.getLabel());
+		result.setVersion(environment.getVersion());
+		result.setState(environment.getState());
+		List<List<CipherValue>> sources = new ArrayList<List<CipherValue>>();
+		List<CipherValue> all = new ArrayList<CipherValue>();
 		for (PropertySource source : environment.getPropertySources()) {
+			List<CipherValue> ciphers = findCiphers(source.getSource());
+			sources.add(ciphers);
+			all.addAll(ciphers);
+		}
+		decrypt(all, encryptor,
+				StringUtils.arrayToCommaDelimitedString(environment.getProfiles()));
+		for (int i = 0; i < sources.size(); i++) {
+			PropertySource source = environment.getPropertySources().get(i);
+			List<CipherValue> ciphers = sources.get(i);
+			if (ciphers.isEmpty()) {
+				// Nothing to decrypt, so the (possibly cached) source can be shared
+				result.add(source);
+				continue;
+			}
 			Map<Object, Object> map = new LinkedHashMap<Object, Object>(
 					source.getSource());
-			for (Map.Entry<Object, Object> entry : new LinkedHashSet<>(map.entrySet())) {
-				Object key = entry.getKey();
-				String name = key.toString();
-				String value = entry.getValue().toString();
-				if (value.startsWith("{cipher}")) {
-					map.remove(key);
-					try {
-						value = value.substring("{cipher}".length());
-						value = encryptor.locate(
-								this.helper.getEncryptorKeys(name, StringUtils
-										.arrayToCommaDelimitedString(environment
-												.getProfiles()), value)).decrypt(this.helper.stripPrefix(value));
-					}
-					catch (Exception e) {
-						value = "<n/a>";
-						name = "invalid." + name;
-						logger.warn("Cannot decrypt key: " + key + " (" + e.getClass()
-								+ ": " + e.getMessage() + ")");
-					}
-					map.put(name, value);
-				}
+			for (CipherValue cipher : ciphers) {
+				map.remove(cipher.key);
+				map.put(cipher.name, cipher.value);
 			}
 			result.add(new PropertySource(source.getName(), map));
 		}
 		return result;
 	}
 
+	private List<CipherValue> findCiphers(Map<?, ?> source) {
+		List<CipherValue> ciphers = Collections.emptyList();
+		for (Map.Entry<?, ?> entry : source.entrySet()) {
+			Object value = entry.getValue();
+			if (value != null && value.toString().startsWith("{cipher}")) {
+				if (ciphers.isEmpty()) {
+					ciphers = new ArrayList<CipherValue>();
+				}
+				ciphers.add(new CipherValue(entry.getKey(), value.toString().substring(
+						"{cipher}".length())));
+			}
+		}
+		return ciphers;
+	}
+
+	/**
+	 * Decrypt the values in place, in parallel if there are enough of them to make it
+	 * worthwhile. The caller thread takes a share of the work as well.
+	 */
+	private void decrypt(List<CipherValue> ciphers, final TextEncryptorLocator encryptor,
+			final String profiles) {
+		ExecutorService executor = ciphers.size() >= this.parallelThreshold ? getExecutor()
+				: null;
+		if (executor == null) {
+			decrypt(ciphers, encryptor, profiles, 0, ciphers.size());
+			return;
+		}
+		final List<CipherValue> values = ciphers;
+		int chunk = (values.size() + this.parallelism) / (this.parallelism + 1);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		int start = chunk;
+		while (start < values.size()) {
+			final int from = start;
+			final int to = Math.min(start + chunk, values.size());
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					decrypt(values, encryptor, profiles, from, to);
+				}
+			}));
+			start = to;
+		}
+		decrypt(values, encryptor, profiles, 0, Math.min(chunk, values.size()));
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while decrypting", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Cannot decrypt", e.getCause());
+		}
+	}
+
+	private void decrypt(List<CipherValue> ciphers, TextEncryptorLocator encryptor,
+			String profiles, int from, int to) {
+		for (int i = from; i < to; i++) {
+			CipherValue cipher = ciphers.get(i);
+			try {
+				cipher.value = decrypt(encryptor, this.helper.getEncryptorKeys(
+						cipher.name, profiles, cipher.value), this.helper
+						.stripPrefix(cipher.value));
+			}
+			catch (Exception e) {
+				cipher.value = "<n/a>";
+				cipher.name = "invalid." + cipher.name;
+				logger.warn("Cannot decrypt key: " + cipher.key + " (" + e.getClass()
+						+ ": " + e.getMessage() + ")");
+			}
+		}
+	}
+
+	private String decrypt(TextEncryptorLocator encryptor, Map<String, String> keys,
+			String cipher) {
+		DecryptedValueCache cache = this.cache;
+		if (cache == null) {
+			return encryptor.locate(keys).decrypt(cipher);
+		}
+		String value = cache.get(keys, cipher);
+		if (value == null) {
+			value = encryptor.locate(keys).decrypt(cipher);
+			cache.put(keys, cipher, value);
+		}
+		return value;
+	}
+
+	private static class CipherValue {
+
+		private final Object key;
+
+		private String name;
+
+		/**
+		 * The cipher (without the "{cipher}" marker) until it is decrypted.
+		 */
+		private String value;
+
+		CipherValue(Object key, String value) {
+			this.key = key;
+			this.name = key.toString();
+			this.value = value;
+		}
+
+	}
+
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server.encryption;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Least recently used cache of decrypted cipher values, keyed by the cipher text and the
+ * keys used to locate the encryptor (so the same cipher text with a different key alias
+ * is a different entry). Entries expire after a fixed time to live. The plain text is
+ * held in a char array that is overwritten with zeros when the entry is evicted, expires
+ * or is cleared, so the cache itself does not keep secrets in memory any longer than it
+ * has to (the strings handed out to callers are beyond its control).
+ *
+ */
+class DecryptedValueCache {
+
+	private final Map<CacheKey, CachedValue> cache;
+
+	private final long timeToLive;
+
+	/**
+	 * @param maxSize the maximum number of values to keep
+	 * @param timeToLive the time to live of each entry in milliseconds (zero or less
+	 * means they do not expire)
+	 */
+	DecryptedValueCache(final int maxSize, long timeToLive) {
+		Assert.isTrue(maxSize > 0, "Cache size must be positive");
+		this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+		this.cache = new LinkedHashMap<CacheKey, CachedValue>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedValue> eldest) {
+				if (size() > maxSize) {
+					eldest.getValue().wipe();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param keys the keys used to locate the encryptor
+	 * @param cipher the cipher text (without the key prefix)
+	 * @return the plain text or null if it is not cached
+	 */
+	String get(Map<String, String> keys, String cipher) {
+		CacheKey key = new CacheKey(keys, cipher);
+		synchronized (this.cache) {
+			CachedValue entry = this.cache.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.isExpired(System.nanoTime())) {
+				this.cache.remove(key);
+				entry.wipe();
+				return null;
+			}
+			return entry.getValue();
+		}
+	}
+
+	void put(Map<String, String> keys, String cipher, String value) {
+		long expires = this.timeToLive > 0 ? System.nanoTime() + this.timeToLive : 0;
+		CachedValue entry = new CachedValue(value.toCharArray(), expires);
+		synchronized (this.cache) {
+			CachedValue old = this.cache.put(new CacheKey(keys, cipher), entry);
+			if (old != null) {
+				old.wipe();
+			}
+		}
+	}
+
+	/**
+	 * Remove all the values (e.g. when the keys have changed).
+	 */
+	void clear() {
+		synchronized (this.cache) {
+			for (Iterator<CachedValue> iter = this.cache.values().iterator(); iter
+					.hasNext();) {
+				iter.next().wipe();
+				iter.remove();
+			}
+		}
+	}
+
+	int size() {
+		synchronized (this.cache) {
+			return this.cache.size();
+		}
+	}
+
+	private static class CachedValue {
+
+		private final char[] value;
+
+		private final long expires;
+
+		CachedValue(char[] value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+
+		String getValue() {
+			return new String(this.value);
+		}
+
+		boolean isExpired(long now) {
+			return this.expires != 0 && now - this.expires > 0;
+		}
+
+		void wipe() {
+			Arrays.fill(this.value, '\0');
+		}
+
+	}
+
+	private static class CacheKey {
+
+		private final Map<String, String> keys;
+		private final String cipher;
+
+		CacheKey(Map<String, String> keys, String cipher) {
+			this.keys = keys;
+			this.cipher = cipher;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return ObjectUtils.nullSafeEquals(this.cipher, other.cipher)
+					&& ObjectUtils.nullSafeEquals(this.keys, other.keys);
+		}
+
+		@Override
+		public int hashCode() {
+			return ObjectUtils.nullSafeHashCode(new Object[] { this.keys, this.cipher });
+		}
+
+	}
+
+}
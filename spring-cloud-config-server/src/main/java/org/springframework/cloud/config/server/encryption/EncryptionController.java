@@ -15,12 +15,23 @@
  */
 package org.springframework.cloud.config.server.encryption;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLDecoder;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.cloud.config.server.ConfigServerProperties;
@@ -28,6 +39,7 @@ import org.springframework.cloud.context.encrypt.KeyFormatException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.crypto.codec.Base64;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
@@ -57,6 +69,10 @@ public class EncryptionController {
 
 	private EnvironmentPrefixHelper helper = new EnvironmentPrefixHelper();
 
+	// A batch that fails half way has to look broken, not like a shorter array
+	private final JsonFactory jsonFactory = new JsonFactory()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
 	public EncryptionController(TextEncryptorLocator encryptor,
 			ConfigServerProperties configServerProperties) {
 		this.encryptor = encryptor;
@@ -160,6 +176,120 @@ public class EncryptionController {
 		}
 	}
 
+	@RequestMapping(value = "encrypt/batch", method = RequestMethod.POST)
+	public void encryptAll(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		encryptAll(this.properties.getDefaultApplicationName(),
+				this.properties.getDefaultProfile(), request, response);
+	}
+
+	/**
+	 * Encrypt a batch of values, posted either as a JSON array of strings or as plain
+	 * text with one value per line. The ciphers are written out in the same format and
+	 * order as they are read, so large batches are never held in memory.
+	 */
+	@RequestMapping(value = "/encrypt/batch/{name}/{profiles}", method = RequestMethod.POST)
+	public void encryptAll(@PathVariable String name, @PathVariable String profiles,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		checkEncryptorInstalled(name, profiles);
+		int count = transform(request, response, new BatchTransformer(name, profiles) {
+			@Override
+			protected String transform(String input) {
+				Map<String, String> keys = getEncryptorKeys(input);
+				TextEncryptor encryptor = locate(keys);
+				return EncryptionController.this.helper.addPrefix(keys,
+						encryptor.encrypt(input));
+			}
+		});
+		logger.info("Encrypted batch of " + count + " values");
+	}
+
+	@RequestMapping(value = "decrypt/batch", method = RequestMethod.POST)
+	public void decryptAll(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		decryptAll(this.properties.getDefaultApplicationName(),
+				this.properties.getDefaultProfile(), request, response);
+	}
+
+	/**
+	 * Decrypt a batch of values, in the same formats as
+	 * {@link #encryptAll(String, String, HttpServletRequest, HttpServletResponse)}.
+	 * Values that cannot be decrypted come back as null (or an empty line).
+	 */
+	@RequestMapping(value = "/decrypt/batch/{name}/{profiles}", method = RequestMethod.POST)
+	public void decryptAll(@PathVariable String name, @PathVariable String profiles,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		checkEncryptorInstalled(name, profiles);
+		int count = transform(request, response, new BatchTransformer(name, profiles) {
+			@Override
+			protected String transform(String input) {
+				TextEncryptor encryptor = locate(getEncryptorKeys(input));
+				return EncryptionController.this.helper.stripPrefix(encryptor
+						.decrypt(EncryptionController.this.helper.stripPrefix(input)));
+			}
+		});
+		logger.info("Decrypted batch of " + count + " values");
+	}
+
+	private int transform(HttpServletRequest request, HttpServletResponse response,
+			BatchTransformer transformer) throws IOException {
+		boolean json = request.getContentType() != null
+				&& MediaType.APPLICATION_JSON.isCompatibleWith(MediaType
+						.parseMediaType(request.getContentType()));
+		if (request.getCharacterEncoding() == null) {
+			request.setCharacterEncoding("UTF-8");
+		}
+		response.setContentType((json ? MediaType.APPLICATION_JSON
+				: MediaType.TEXT_PLAIN) + ";charset=UTF-8");
+		int count = 0;
+		if (json) {
+			JsonParser parser = this.jsonFactory.createParser(request.getReader());
+			JsonGenerator generator = this.jsonFactory.createGenerator(response
+					.getWriter());
+			try {
+				if (parser.nextToken() != JsonToken.START_ARRAY) {
+					throw new HttpMessageNotReadableException(
+							"Expected a JSON array of values");
+				}
+				generator.writeStartArray();
+				JsonToken token;
+				while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+					if (token == null || token.isStructStart()) {
+						throw new HttpMessageNotReadableException(
+								"Expected a JSON array of values");
+					}
+					String value = token == JsonToken.VALUE_NULL ? null : transformer
+							.apply(parser.getText());
+					if (value == null) {
+						generator.writeNull();
+					}
+					else {
+						generator.writeString(value);
+					}
+					count++;
+				}
+				generator.writeEndArray();
+			}
+			finally {
+				generator.close();
+				parser.close();
+			}
+		}
+		else {
+			BufferedReader reader = request.getReader();
+			Writer writer = response.getWriter();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String value = transformer.apply(line);
+				writer.write(value == null ? "" : value);
+				writer.write("\n");
+				count++;
+			}
+			writer.flush();
+		}
+		return count;
+	}
+
 	private void checkEncryptorInstalled(String name, String profiles) {
 		if (this.encryptor == null
 				|| this.encryptor
@@ -206,6 +336,59 @@ public class EncryptionController {
 
 	}
 
+	/**
+	 * Transforms the values in a batch, locating each encryptor only once.
+	 */
+	private abstract class BatchTransformer {
+
+		private final String name;
+
+		private final String profiles;
+
+		private final Map<Map<String, String>, TextEncryptor> encryptors = new HashMap<Map<String, String>, TextEncryptor>();
+
+		BatchTransformer(String name, String profiles) {
+			this.name = name;
+			this.profiles = profiles;
+		}
+
+		/**
+		 * @return the transformed value, or null if it cannot be transformed
+		 */
+		String apply(String input) {
+			try {
+				return transform(input);
+			}
+			catch (RuntimeException e) {
+				// Not the value itself, it might be a secret
+				logger.warn("Cannot transform value in batch for " + this.name + "/"
+						+ this.profiles + ": " + e);
+				if (logger.isDebugEnabled()) {
+					logger.debug("Cannot transform value in batch", e);
+				}
+				return null;
+			}
+		}
+
+		protected abstract String transform(String input);
+
+		protected Map<String, String> getEncryptorKeys(String input) {
+			return EncryptionController.this.helper.getEncryptorKeys(this.name,
+					this.profiles, input);
+		}
+
+		protected TextEncryptor locate(Map<String, String> keys) {
+			TextEncryptor encryptor = this.encryptors.get(keys);
+			if (encryptor == null) {
+				encryptor = EncryptionController.this.encryptor.locate(keys);
+				// Copy the keys because the caller is allowed to change them
+				this.encryptors.put(new HashMap<String, String>(keys), encryptor);
+			}
+			return encryptor;
+		}
+
+	}
+
 	@ExceptionHandler(KeyNotInstalledException.class)
 	@ResponseBody
 	public ResponseEntity<Map<String, Object>> notInstalled() {
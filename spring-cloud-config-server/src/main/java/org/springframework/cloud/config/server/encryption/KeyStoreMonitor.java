@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.encryption;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.io.Resource;
+import org.springframework.security.rsa.crypto.KeyStoreKeyFactory;
+
+/**
+ * Keeps the caches of keys and decrypted values in step with the keystore. When the
+ * keystore resource is modified (checked in the background every
+ * {@link #setCheckInterval(long) checkInterval} milliseconds), or the environment is
+ * refreshed (e.g. because the secrets have changed), the keystore is reloaded into the
+ * {@link KeyStoreTextEncryptorLocator} and the decrypted values cached by the
+ * {@link CipherEnvironmentEncryptor} are thrown away.
+ *
+ */
+public class KeyStoreMonitor implements ApplicationListener<EnvironmentChangeEvent>,
+		InitializingBean, DisposableBean {
+
+	private static Log logger = LogFactory.getLog(KeyStoreMonitor.class);
+
+	private final KeyStoreTextEncryptorLocator locator;
+
+	private final Resource location;
+
+	private final char[] password;
+
+	private CipherEnvironmentEncryptor environmentEncryptor;
+
+	private long checkInterval = 5000;
+
+	private volatile long lastModified;
+
+	private volatile ScheduledExecutorService scheduler;
+
+	public KeyStoreMonitor(KeyStoreTextEncryptorLocator locator, Resource location,
+			char[] password) {
+		this.locator = locator;
+		this.location = location;
+		this.password = password;
+		this.lastModified = lastModified();
+	}
+
+	/**
+	 * @param environmentEncryptor an encryptor whose decrypted values have to be
+	 * forgotten when the keys change
+	 */
+	public void setEnvironmentEncryptor(CipherEnvironmentEncryptor environmentEncryptor) {
+		this.environmentEncryptor = environmentEncryptor;
+	}
+
+	/**
+	 * @param checkInterval the time in milliseconds between checks for a modified
+	 * keystore (0 to only reload it on a refresh)
+	 */
+	public void setCheckInterval(long checkInterval) {
+		this.checkInterval = checkInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if (this.checkInterval <= 0 || this.lastModified == 0) {
+			// Not a file we can check (e.g. inside a jar), so rely on refresh events
+			return;
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "config-keystore");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkForChanges();
+			}
+		}, this.checkInterval, this.checkInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		ScheduledExecutorService scheduler = this.scheduler;
+		this.scheduler = null;
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(EnvironmentChangeEvent event) {
+		reload();
+	}
+
+	/**
+	 * Reload the keystore if it has been modified since it was last loaded.
+	 *
+	 * @return true if the keystore was reloaded
+	 */
+	public boolean checkForChanges() {
+		long lastModified = lastModified();
+		if (lastModified == 0 || lastModified == this.lastModified) {
+			// Unchanged, or missing (maybe half way through being replaced)
+			return false;
+		}
+		this.lastModified = lastModified;
+		logger.info("Keystore modified, reloading: " + this.location);
+		reload();
+		return true;
+	}
+
+	/**
+	 * Load the keystore again and forget all the keys and decrypted values.
+	 */
+	public void reload() {
+		this.locator.setKeyStoreKeyFactory(new KeyStoreKeyFactory(this.location,
+				this.password));
+		CipherEnvironmentEncryptor environmentEncryptor = this.environmentEncryptor;
+		if (environmentEncryptor != null) {
+			environmentEncryptor.clearCache();
+		}
+	}
+
+	private long lastModified() {
+		try {
+			return this.location.lastModified();
+		}
+		catch (IOException e) {
+			return 0;
+		}
+	}
+
+}
@@ -17,11 +17,15 @@
 package org.springframework.cloud.config.server.encryption;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.security.rsa.crypto.KeyStoreKeyFactory;
 import org.springframework.security.rsa.crypto.RsaAlgorithm;
 import org.springframework.security.rsa.crypto.RsaSecretEncryptor;
+import org.springframework.util.ObjectUtils;
 
 /**
  * A {@link TextEncryptorLocator} that pulls RSA key pairs out of a keystore. The input
@@ -29,6 +33,12 @@ import org.springframework.security.rsa.crypto.RsaSecretEncryptor;
  * input map is not, in general, the secret in the keystore, but is dereferenced through a
  * {@link SecretLocator} (so for example you can keep a table of encrypted secrets and
  * update it separately to the keystore).
+ * <p>
+ * Unwrapping a key pair is expensive, so the encryptors are cached by alias and the
+ * secret that the {@link SecretLocator} returns (so a change in the table of secrets is
+ * picked up without clearing the cache). If the keystore itself changes the cache is
+ * cleared by switching to the new one with {@link #setKeyStoreKeyFactory} (see
+ * {@link KeyStoreMonitor}). The cache counts hits and misses so it can be monitored.
  *
  * @author Dave Syer
  *
@@ -39,7 +49,13 @@ public class KeyStoreTextEncryptorLocator implements TextEncryptorLocator {
 
 	private final static String SECRET = "secret";
 
-	private KeyStoreKeyFactory keys;
+	/**
+	 * The aliases and secrets can come from user input, so don't let the cache grow
+	 * without limit.
+	 */
+	private static final int MAX_CACHED = 1000;
+
+	private volatile KeyStoreKeyFactory keys;
 
 	private String defaultSecret;
 
@@ -51,6 +67,12 @@ public class KeyStoreTextEncryptorLocator implements TextEncryptorLocator {
 	private boolean strong = false;
 	private String salt = "deadbeef";
 
+	private final ConcurrentMap<CacheKey, TextEncryptor> cache = new ConcurrentHashMap<CacheKey, TextEncryptor>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
 	public KeyStoreTextEncryptorLocator(KeyStoreKeyFactory keys, String defaultSecret,
 			String defaultAlias) {
 		this.keys = keys;
@@ -58,31 +80,117 @@ public class KeyStoreTextEncryptorLocator implements TextEncryptorLocator {
 		this.defaultSecret = defaultSecret;
 	}
 
+	/**
+	 * Switch to a new keystore (e.g. because the file has changed) and clear the cache.
+	 *
+	 * @param keys the key factory for the new keystore
+	 */
+	public void setKeyStoreKeyFactory(KeyStoreKeyFactory keys) {
+		this.keys = keys;
+		clearCache();
+	}
+
 	/**
 	 * @param secretLocator the secretLocator to set
 	 */
 	public void setSecretLocator(SecretLocator secretLocator) {
 		this.secretLocator = secretLocator;
+		clearCache();
 	}
 
 	public void setRsaAlgorithm(RsaAlgorithm rsaAlgorithm) {
 		this.rsaAlgorithm = rsaAlgorithm;
+		clearCache();
 	}
 
 	public void setStrong(boolean strong) {
 		this.strong = strong;
+		clearCache();
 	}
 
 	public void setSalt(String salt) {
 		this.salt = salt;
+		clearCache();
+	}
+
+	/**
+	 * Forget all the encryptors that have been created so far (e.g. when the keystore
+	 * or the secrets have changed).
+	 */
+	public void clearCache() {
+		this.cache.clear();
+	}
+
+	/**
+	 * @return the number of encryptors in the cache
+	 */
+	public int getCacheSize() {
+		return this.cache.size();
+	}
+
+	/**
+	 * @return the number of times an encryptor was found in the cache
+	 */
+	public long getCacheHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return the number of times an encryptor had to be created
+	 */
+	public long getCacheMisses() {
+		return this.misses.get();
 	}
 
 	@Override
 	public TextEncryptor locate(Map<String, String> keys) {
 		String alias = keys.containsKey(KEY) ? keys.get(KEY) : this.defaultAlias;
 		String secret = keys.containsKey(SECRET) ? keys.get(SECRET) : this.defaultSecret;
-		return new RsaSecretEncryptor(this.keys.getKeyPair(alias,
-				this.secretLocator.locate(secret)), this.rsaAlgorithm, this.salt, this.strong);
+		char[] password = this.secretLocator.locate(secret);
+		CacheKey key = new CacheKey(alias, password);
+		TextEncryptor encryptor = this.cache.get(key);
+		if (encryptor != null) {
+			this.hits.incrementAndGet();
+			return encryptor;
+		}
+		this.misses.incrementAndGet();
+		encryptor = new RsaSecretEncryptor(this.keys.getKeyPair(alias, password),
+				this.rsaAlgorithm, this.salt, this.strong);
+		if (this.cache.size() >= MAX_CACHED) {
+			this.cache.clear();
+		}
+		this.cache.put(key, encryptor);
+		return encryptor;
+	}
+
+	private static class CacheKey {
+
+		private final String alias;
+		private final char[] password;
+
+		CacheKey(String alias, char[] password) {
+			this.alias = alias;
+			this.password = password == null ? null : password.clone();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return ObjectUtils.nullSafeEquals(this.alias, other.alias)
+					&& ObjectUtils.nullSafeEquals(this.password, other.password);
+		}
+
+		@Override
+		public int hashCode() {
+			return ObjectUtils.nullSafeHashCode(new Object[] { this.alias, this.password });
+		}
+
 	}
 
 }
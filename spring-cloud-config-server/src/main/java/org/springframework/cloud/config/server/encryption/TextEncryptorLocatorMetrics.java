@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server.encryption;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * {@link PublicMetrics} for the encryptor cache in a {@link KeyStoreTextEncryptorLocator}
+ * (so the hit ratio can be used to decide whether the cache is working). Other kinds of
+ * {@link TextEncryptorLocator} have no metrics.
+ *
+ */
+public class TextEncryptorLocatorMetrics implements PublicMetrics {
+
+	private final TextEncryptorLocator locator;
+
+	public TextEncryptorLocatorMetrics(TextEncryptorLocator locator) {
+		this.locator = locator;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		if (this.locator instanceof KeyStoreTextEncryptorLocator) {
+			KeyStoreTextEncryptorLocator locator = (KeyStoreTextEncryptorLocator) this.locator;
+			metrics.add(new Metric<Integer>("encrypt.keys.cache.size", locator
+					.getCacheSize()));
+			metrics.add(new Metric<Long>("encrypt.keys.cache.hits", locator
+					.getCacheHits()));
+			metrics.add(new Metric<Long>("encrypt.keys.cache.misses", locator
+					.getCacheMisses()));
+		}
+		return metrics;
+	}
+
+}
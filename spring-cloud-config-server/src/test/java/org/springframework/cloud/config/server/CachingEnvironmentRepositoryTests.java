@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+
+/**
+ */
+public class CachingEnvironmentRepositoryTests {
+
+	private VersionedEnvironmentRepository delegate = Mockito
+			.mock(VersionedEnvironmentRepository.class);
+
+	private CachingEnvironmentRepository repository = new CachingEnvironmentRepository(
+			this.delegate, 2);
+
+	@Before
+	public void init() {
+		Mockito.when(this.delegate.findOne(Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyString())).thenReturn(environment("foo"));
+		Mockito.when(this.delegate.getVersion(Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyString())).thenReturn("v1");
+	}
+
+	@Test
+	public void cachedForSameVersion() {
+		this.repository.findOne("foo", "default", "master");
+		this.repository.findOne("foo", "default", "master");
+		Mockito.verify(this.delegate, Mockito.times(1)).findOne("foo", "default",
+				"master");
+	}
+
+	@Test
+	public void reloadedForNewVersion() {
+		this.repository.findOne("foo", "default", "master");
+		Mockito.when(this.delegate.getVersion("foo", "default", "master"))
+				.thenReturn("v2");
+		this.repository.findOne("foo", "default", "master");
+		Mockito.verify(this.delegate, Mockito.times(2)).findOne("foo", "default",
+				"master");
+	}
+
+	@Test
+	public void cachedUnderLoadedVersion() {
+		Environment environment = environment("foo");
+		environment.setVersion("v2");
+		Mockito.when(this.delegate.findOne("foo", "default", "master")).thenReturn(
+				environment);
+		// The delegate had not seen v2 until it loaded the environment
+		this.repository.findOne("foo", "default", "master");
+		Mockito.when(this.delegate.getVersion("foo", "default", "master"))
+				.thenReturn("v2");
+		this.repository.findOne("foo", "default", "master");
+		Mockito.verify(this.delegate, Mockito.times(1)).findOne("foo", "default",
+				"master");
+	}
+
+	@Test
+	public void notCachedWithoutVersion() {
+		Mockito.when(this.delegate.getVersion("foo", "default", "master")).thenReturn(
+				null);
+		this.repository.findOne("foo", "default", "master");
+		this.repository.findOne("foo", "default", "master");
+		Mockito.verify(this.delegate, Mockito.times(2)).findOne("foo", "default",
+				"master");
+		assertEquals(0, this.repository.size());
+	}
+
+	@Test
+	public void notCachedIfDelegateHasNoVersions() {
+		EnvironmentRepository delegate = Mockito.mock(EnvironmentRepository.class);
+		CachingEnvironmentRepository repository = new CachingEnvironmentRepository(
+				delegate);
+		repository.findOne("foo", "default", "master");
+		repository.findOne("foo", "default", "master");
+		Mockito.verify(delegate, Mockito.times(2)).findOne("foo", "default", "master");
+	}
+
+	@Test
+	public void copyKeepsVersion() {
+		Environment environment = environment("foo");
+		environment.setVersion("v1");
+		environment.setState("clean");
+		Mockito.when(this.delegate.findOne("foo", "default", "master")).thenReturn(
+				environment);
+		Environment result = this.repository.findOne("foo", "default", "master");
+		assertEquals("v1", result.getVersion());
+		assertEquals("clean", result.getState());
+	}
+
+	@Test
+	public void callersCannotChangeCachedValue() {
+		Environment first = this.repository.findOne("foo", "default", "master");
+		first.addFirst(new PropertySource("overrides", Collections.singletonMap("a",
+				"b")));
+		Environment second = this.repository.findOne("foo", "default", "master");
+		assertNotSame(first, second);
+		assertEquals(1, second.getPropertySources().size());
+	}
+
+	@Test
+	public void leastRecentlyUsedEvicted() {
+		this.repository.findOne("foo", "default", "master");
+		this.repository.findOne("bar", "default", "master");
+		this.repository.findOne("foo", "default", "master");
+		this.repository.findOne("spam", "default", "master");
+		assertEquals(2, this.repository.size());
+		this.repository.findOne("foo", "default", "master");
+		Mockito.verify(this.delegate, Mockito.times(1)).findOne("foo", "default",
+				"master");
+		this.repository.findOne("bar", "default", "master");
+		Mockito.verify(this.delegate, Mockito.times(2)).findOne("bar", "default",
+				"master");
+	}
+
+	@Test
+	public void evictApplication() {
+		this.repository.findOne("foo", "default", "master");
+		this.repository.findOne("bar", "default", "master");
+		this.repository.evict("foo");
+		assertEquals(1, this.repository.size());
+		this.repository.findOne("foo", "default", "master");
+		Mockito.verify(this.delegate, Mockito.times(2)).findOne("foo", "default",
+				"master");
+	}
+
+	@Test
+	public void evictAll() {
+		this.repository.findOne("foo", "default", "master");
+		this.repository.findOne("bar", "default", "master");
+		this.repository.evictAll();
+		assertEquals(0, this.repository.size());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void batchLoadsMissesTogether() {
+		VersionedEnvironmentRepository delegate = Mockito.mock(
+				VersionedEnvironmentRepository.class,
+				Mockito.withSettings().extraInterfaces(BatchEnvironmentRepository.class));
+		Mockito.when(delegate.getVersion(Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyString())).thenReturn("v1");
+		Mockito.when(delegate.findOne("foo", "default", "master")).thenReturn(
+				environment("foo"));
+		Mockito.when(((BatchEnvironmentRepository) delegate).findAll(
+				Mockito.anyListOf(Environment.class))).thenReturn(
+				Arrays.asList(environment("bar"), environment("spam")));
+		CachingEnvironmentRepository repository = new CachingEnvironmentRepository(
+				delegate);
+		repository.findOne("foo", "default", "master");
+		List<Environment> result = repository.findAll(Arrays.asList(
+				new Environment("bar", new String[] { "default" }, "master"),
+				new Environment("foo", new String[] { "default" }, "master"),
+				new Environment("spam", new String[] { "default" }, "master")));
+		assertEquals("bar", result.get(0).getName());
+		assertEquals("foo", result.get(1).getName());
+		assertEquals("spam", result.get(2).getName());
+		@SuppressWarnings("rawtypes")
+		ArgumentCaptor<List> requests = ArgumentCaptor.forClass(List.class);
+		Mockito.verify((BatchEnvironmentRepository) delegate).findAll(requests.capture());
+		// Only the misses, in one go
+		assertEquals(2, requests.getValue().size());
+		assertEquals(3, repository.size());
+		// One look up of the version for the label (and application)
+		Mockito.verify(delegate, Mockito.times(1)).getVersion("bar", "default",
+				"master");
+		repository.findAll(Arrays.asList(new Environment("bar",
+				new String[] { "default" }, "master")));
+		Mockito.verify((BatchEnvironmentRepository) delegate, Mockito.times(1))
+				.findAll(Mockito.anyListOf(Environment.class));
+	}
+
+	@Test(expected = NoSuchLabelException.class)
+	public void exceptionsNotWrapped() {
+		Mockito.when(this.delegate.findOne("foo", "default", "missing")).thenThrow(
+				new NoSuchLabelException("No such label: missing"));
+		this.repository.findOne("foo", "default", "missing");
+	}
+
+	private Environment environment(String name) {
+		Environment environment = new Environment(name, "default");
+		environment.add(new PropertySource("one", Collections.singletonMap("a", "b")));
+		return environment;
+	}
+
+}
@@ -42,4 +42,14 @@ public class ConfigServerHealthIndicatorTests {
 		when(repository.findOne(anyString(), anyString(), anyString())).thenThrow(new RuntimeException());
 		assertEquals("wrong exception status", Status.DOWN, indicator.health().getStatus());
 	}
+
+	@Test
+	public void cloningStatusIsOutOfService() {
+		JGitEnvironmentRepository cloning = mock(JGitEnvironmentRepository.class);
+		when(cloning.isCloning()).thenReturn(true);
+		indicator = new ConfigServerHealthIndicator(cloning);
+		indicator.init();
+		assertEquals("wrong cloning status", Status.OUT_OF_SERVICE, indicator.health()
+				.getStatus());
+	}
 }
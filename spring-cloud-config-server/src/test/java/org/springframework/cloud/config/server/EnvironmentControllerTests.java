@@ -15,27 +15,38 @@
  */
 package org.springframework.cloud.config.server;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.encryption.CipherEnvironmentEncryptor;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.StreamUtils;
 
 /**
  * @author Dave Syer
@@ -43,6 +54,9 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
  */
 public class EnvironmentControllerTests {
 
+	private static final MediaType TEXT_PLAIN_UTF8 = new MediaType("text", "plain",
+			Charset.forName("UTF-8"));
+
 	@Rule
 	public ExpectedException expected = ExpectedException.none();
 
@@ -182,7 +196,7 @@ public class EnvironmentControllerTests {
 		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
 		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.yml"))
 		.andExpect(
-				MockMvcResultMatchers.content().contentType(MediaType.TEXT_PLAIN))
+				MockMvcResultMatchers.content().contentType(TEXT_PLAIN_UTF8))
 				.andExpect(MockMvcResultMatchers.content().string("{}\n"));
 	}
 
@@ -203,7 +217,7 @@ public class EnvironmentControllerTests {
 		Mockito.when(this.repository.findOne("foo", "bar", "other")).thenReturn(this.environment);
 		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
 		mvc.perform(MockMvcRequestBuilders.get("/other/foo-bar.yml")).andExpect(
-				MockMvcResultMatchers.content().contentType(MediaType.TEXT_PLAIN));
+				MockMvcResultMatchers.content().contentType(TEXT_PLAIN_UTF8));
 	}
 
 	@Test
@@ -211,7 +225,7 @@ public class EnvironmentControllerTests {
 		Mockito.when(this.repository.findOne("foo", "bar", "other")).thenReturn(this.environment);
 		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
 		mvc.perform(MockMvcRequestBuilders.get("/other/foo-bar.properties")).andExpect(
-				MockMvcResultMatchers.content().contentType(MediaType.TEXT_PLAIN));
+				MockMvcResultMatchers.content().contentType(TEXT_PLAIN_UTF8));
 	}
 
 	@Test
@@ -219,7 +233,7 @@ public class EnvironmentControllerTests {
 		Mockito.when(this.repository.findOne("foo", "bar", "master")).thenReturn(this.environment);
 		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
 		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.properties")).andExpect(
-				MockMvcResultMatchers.content().contentType(MediaType.TEXT_PLAIN));
+				MockMvcResultMatchers.content().contentType(TEXT_PLAIN_UTF8));
 	}
 
 	@Test
@@ -278,4 +292,253 @@ public class EnvironmentControllerTests {
 				.getPropertySources().get(0).getSource().toString());
 	}
 
+	@Test
+	public void etagFromVersion() throws Exception {
+		VersionedEnvironmentRepository repository = Mockito
+				.mock(VersionedEnvironmentRepository.class);
+		Mockito.when(repository.getDefaultLabel()).thenReturn("master");
+		Mockito.when(repository.getVersion("foo", "bar", "master")).thenReturn("abc");
+		this.environment.setVersion("abc");
+		Mockito.when(repository.findOne("foo", "bar", "master")).thenReturn(
+				this.environment);
+		this.controller = new EnvironmentController(repository,
+				new CipherEnvironmentEncryptor(null));
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+		String etag = mvc.perform(MockMvcRequestBuilders.get("/foo/bar"))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().string("ETag", notNullValue()))
+				.andReturn().getResponse().getHeader("ETag");
+		mvc.perform(MockMvcRequestBuilders.get("/foo/bar").header("If-None-Match", etag))
+				.andExpect(MockMvcResultMatchers.status().isNotModified());
+		// Loaded once per request, and the version comes from what was loaded
+		Mockito.verify(repository, Mockito.times(2)).findOne("foo", "bar", "master");
+		mvc.perform(
+				MockMvcRequestBuilders.get("/foo-bar.properties").header(
+						"If-None-Match", etag)).andExpect(
+				MockMvcResultMatchers.status().isNotModified());
+		this.environment.setVersion("def");
+		mvc.perform(MockMvcRequestBuilders.get("/foo/bar").header("If-None-Match", etag))
+				.andExpect(MockMvcResultMatchers.status().isOk());
+	}
+
+	@Test
+	public void etagChangesWithOverrides() throws Exception {
+		VersionedEnvironmentRepository repository = Mockito
+				.mock(VersionedEnvironmentRepository.class);
+		Mockito.when(repository.getDefaultLabel()).thenReturn("master");
+		this.environment.setVersion("abc");
+		Mockito.when(repository.findOne("foo", "bar", "master")).thenReturn(
+				this.environment);
+		this.controller = new EnvironmentController(repository,
+				new CipherEnvironmentEncryptor(null));
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+		String etag = mvc.perform(MockMvcRequestBuilders.get("/foo/bar")).andReturn()
+				.getResponse().getHeader("ETag");
+		this.controller.setOverrides(Collections.singletonMap("foo", "bar"));
+		mvc.perform(MockMvcRequestBuilders.get("/foo/bar").header("If-None-Match", etag))
+				.andExpect(MockMvcResultMatchers.status().isOk());
+	}
+
+	@Test
+	public void noEtagWithoutVersion() throws Exception {
+		Mockito.when(this.repository.findOne("foo", "bar", "master")).thenReturn(
+				this.environment);
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+		mvc.perform(MockMvcRequestBuilders.get("/foo/bar"))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().doesNotExist("ETag"));
+	}
+
+	@Test
+	public void changesSinceVersion() throws Exception {
+		VersionedEnvironmentRepository repository = Mockito
+				.mock(VersionedEnvironmentRepository.class);
+		Mockito.when(repository.getDefaultLabel()).thenReturn("master");
+		Environment previous = new Environment("foo", "bar");
+		previous.setVersion("v1");
+		previous.add(new PropertySource("one", map("a", "b", "c", "d")));
+		previous.add(new PropertySource("two", map("e", "f")));
+		Environment current = new Environment("foo", "bar");
+		current.setVersion("v2");
+		current.add(new PropertySource("three", map("g", "h")));
+		current.add(new PropertySource("one", map("a", "x", "y", "z")));
+		current.add(new PropertySource("two", map("e", "f")));
+		Mockito.when(repository.findOne("foo", "bar", "master")).thenReturn(previous,
+				current);
+		this.controller = new EnvironmentController(repository,
+				new CipherEnvironmentEncryptor(null));
+		assertEquals("v1", this.controller.labelled("foo", "bar", "master", null)
+				.getVersion());
+		ResponseEntity<Environment> response = this.controller.labelledSince("foo",
+				"bar", "master", "v1", null);
+		assertEquals("v1", response.getHeaders().getFirst("X-Config-Since"));
+		Environment changes = response.getBody();
+		assertEquals("v2", changes.getVersion());
+		assertEquals(3, changes.getPropertySources().size());
+		assertEquals("{g=h}", changes.getPropertySources().get(0).getSource()
+				.toString());
+		assertEquals("{a=x, y=z, c=null}", changes.getPropertySources().get(1)
+				.getSource().toString());
+		assertEquals("{}", changes.getPropertySources().get(2).getSource().toString());
+	}
+
+	@Test
+	public void changesSinceUnknownVersion() throws Exception {
+		VersionedEnvironmentRepository repository = Mockito
+				.mock(VersionedEnvironmentRepository.class);
+		Mockito.when(repository.getDefaultLabel()).thenReturn("master");
+		this.environment.setVersion("v2");
+		this.environment.add(new PropertySource("one", map("a", "b")));
+		Mockito.when(repository.findOne("foo", "bar", "master")).thenReturn(
+				this.environment);
+		this.controller = new EnvironmentController(repository,
+				new CipherEnvironmentEncryptor(null));
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+		mvc.perform(MockMvcRequestBuilders.get("/foo/bar?since=v1"))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().doesNotExist("X-Config-Since"))
+				.andExpect(MockMvcResultMatchers.content().string(
+						containsString("\"a\":\"b\"")));
+		// The server never goes back to the repository for a version it did not send
+		Mockito.verify(repository, Mockito.never()).findOne("foo", "bar", "v1");
+	}
+
+	@Test
+	public void renderedPropertiesAreCached() throws Exception {
+		VersionedEnvironmentRepository repository = Mockito
+				.mock(VersionedEnvironmentRepository.class);
+		Mockito.when(repository.getDefaultLabel()).thenReturn("master");
+		this.environment.setVersion("abc");
+		this.environment.add(new PropertySource("one", map("a.b", "c", "d", "e")));
+		Mockito.when(repository.findOne("foo", "bar", "master")).thenReturn(
+				this.environment);
+		this.controller = new EnvironmentController(repository,
+				new CipherEnvironmentEncryptor(null));
+		this.controller.setRenderedCacheSize(10);
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.properties"))
+				.andExpect(MockMvcResultMatchers.content().string("a.b: c\nd: e"))
+				.andExpect(MockMvcResultMatchers.header().doesNotExist("Content-Encoding"));
+		byte[] gzipped = mvc
+				.perform(MockMvcRequestBuilders.get("/foo-bar.properties").header(
+						"Accept-Encoding", "gzip, deflate"))
+				.andExpect(MockMvcResultMatchers.header().string("Content-Encoding", "gzip"))
+				.andReturn().getResponse().getContentAsByteArray();
+		assertEquals("a.b: c\nd: e", StreamUtils.copyToString(new GZIPInputStream(
+				new ByteArrayInputStream(gzipped)), Charset.forName("UTF-8")));
+		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.json")).andExpect(
+				MockMvcResultMatchers.content().string("{\"a\":{\"b\":\"c\"},\"d\":\"e\"}"));
+		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.json")).andExpect(
+				MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON));
+		// Same version so it is not rendered again
+		this.environment.addFirst(new PropertySource("two", map("d", "f")));
+		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.properties")).andExpect(
+				MockMvcResultMatchers.content().string("a.b: c\nd: e"));
+		this.environment.setVersion("def");
+		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.properties")).andExpect(
+				MockMvcResultMatchers.content().string("a.b: c\nd: f"));
+		Mockito.verify(repository, Mockito.never()).getVersion("foo", "bar", "master");
+	}
+
+	@Test
+	public void propertiesInUtf8() throws Exception {
+		this.environment.add(new PropertySource("one", map("a", "caf\u00e9")));
+		Mockito.when(this.repository.findOne("foo", "bar", "master")).thenReturn(
+				this.environment);
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+		byte[] body = mvc.perform(MockMvcRequestBuilders.get("/foo-bar.properties"))
+				.andExpect(MockMvcResultMatchers.content().contentType(TEXT_PLAIN_UTF8))
+				.andReturn().getResponse().getContentAsByteArray();
+		assertEquals("a: caf\u00e9", new String(body, Charset.forName("UTF-8")));
+	}
+
+	@Test
+	public void gzippedHasItsOwnEtag() throws Exception {
+		this.environment.setVersion("abc");
+		this.environment.add(new PropertySource("one", map("a", "b")));
+		Mockito.when(this.repository.findOne("foo", "bar", "master")).thenReturn(
+				this.environment);
+		this.controller.setRenderedCacheSize(10);
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller).build();
+		String plain = mvc.perform(MockMvcRequestBuilders.get("/foo-bar.properties"))
+				.andReturn().getResponse().getHeader("ETag");
+		String gzipped = mvc
+				.perform(MockMvcRequestBuilders.get("/foo-bar.properties").header(
+						"Accept-Encoding", "gzip"))
+				.andExpect(MockMvcResultMatchers.header().string("Content-Encoding", "gzip"))
+				.andReturn().getResponse().getHeader("ETag");
+		assertNotNull(plain);
+		assertNotEquals(plain, gzipped);
+		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.properties")
+				.header("Accept-Encoding", "gzip").header("If-None-Match", gzipped))
+				.andExpect(MockMvcResultMatchers.status().isNotModified());
+		mvc.perform(MockMvcRequestBuilders.get("/foo-bar.properties")
+				.header("Accept-Encoding", "gzip").header("If-None-Match", plain))
+				.andExpect(MockMvcResultMatchers.status().isOk());
+	}
+
+	@Test
+	public void batch() throws Exception {
+		this.controller.setOverrides(Collections.singletonMap("foo", "bar"));
+		Environment other = new Environment("spam", "bucket");
+		Mockito.when(this.repository.findOne("foo", "bar", "master")).thenReturn(
+				this.environment);
+		Mockito.when(this.repository.findOne("spam", "bucket,more", "other"))
+				.thenReturn(other);
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller,
+				new EnvironmentBatchController(this.controller)).build();
+		mvc.perform(
+				MockMvcRequestBuilders
+						.post("/")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(
+								"[{\"name\":\"foo\",\"profiles\":[\"bar\"]},"
+										+ "{\"name\":\"spam\",\"profiles\":[\"bucket\",\"more\"],\"label\":\"other\"}]"))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(
+						MockMvcResultMatchers.content().string(
+								containsString("[{\"name\":\"foo\"")))
+				.andExpect(
+						MockMvcResultMatchers.content().string(
+								containsString("{\"name\":\"spam\"")));
+		Mockito.verify(this.repository).findOne("spam", "bucket,more", "other");
+	}
+
+	@Test
+	public void batchOnlyForPost() throws Exception {
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(this.controller,
+				new EnvironmentBatchController(this.controller)).build();
+		mvc.perform(MockMvcRequestBuilders.get("/")).andExpect(
+				MockMvcResultMatchers.status().isMethodNotAllowed());
+	}
+
+	@Test
+	public void batchFromBatchRepository() throws Exception {
+		BatchEnvironmentRepository repository = Mockito
+				.mock(BatchEnvironmentRepository.class);
+		Mockito.when(repository.getDefaultLabel()).thenReturn("master");
+		Mockito.when(repository.findAll(Mockito.anyListOf(Environment.class)))
+				.thenReturn(Collections.singletonList(this.environment));
+		this.controller = new EnvironmentController(repository,
+				new CipherEnvironmentEncryptor(null));
+		List<Environment> result = this.controller.batch(Collections
+				.singletonList(new Environment("foo", new String[] { "bar" }, null)));
+		assertEquals(1, result.size());
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ArgumentCaptor<List<Environment>> requests = (ArgumentCaptor) ArgumentCaptor
+				.forClass(List.class);
+		Mockito.verify(repository).findAll(requests.capture());
+		assertEquals("master", requests.getValue().get(0).getLabel());
+		Mockito.verify(repository, Mockito.never()).findOne(Mockito.anyString(),
+				Mockito.anyString(), Mockito.anyString());
+	}
+
+	private Map<String, Object> map(String... entries) {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < entries.length; i += 2) {
+			map.put(entries[i], entries[i + 1]);
+		}
+		return map;
+	}
+
 }
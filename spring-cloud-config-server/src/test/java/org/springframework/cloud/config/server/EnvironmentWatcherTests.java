@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+
+public class EnvironmentWatcherTests {
+
+	private VersionedEnvironmentRepository repository = Mockito
+			.mock(VersionedEnvironmentRepository.class);
+
+	private EnvironmentWatcher watcher = new EnvironmentWatcher(this.repository);
+
+	@After
+	public void close() throws Exception {
+		this.watcher.destroy();
+	}
+
+	@Test
+	public void answersStraightAwayIfVersionIsOld() {
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v2");
+		DeferredResult<ResponseEntity<Map<String, String>>> result = this.watcher
+				.watch("foo", "default", "master", "v1");
+		assertTrue(result.hasResult());
+		assertEquals("v2", getResult(result).getBody().get("version"));
+		assertEquals(0, this.watcher.getWatchCount());
+	}
+
+	@Test
+	public void waitsForNewVersion() {
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v1");
+		this.watcher.setInterval(60000);
+		DeferredResult<ResponseEntity<Map<String, String>>> first = this.watcher
+				.watch("foo", "default", "master", "v1");
+		DeferredResult<ResponseEntity<Map<String, String>>> second = this.watcher
+				.watch("foo", "default", "master", "v1");
+		assertFalse(first.hasResult());
+		assertEquals(2, this.watcher.getWatchCount());
+		this.watcher.check();
+		assertFalse(first.hasResult());
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v2");
+		this.watcher.check();
+		assertEquals("v2", getResult(first).getBody().get("version"));
+		assertEquals("v2", getResult(second).getBody().get("version"));
+		assertEquals(0, this.watcher.getWatchCount());
+		// Both watches were answered with one lookup of the version
+		Mockito.verify(this.repository, Mockito.times(4)).getLocalVersion("foo", "default",
+				"master");
+	}
+
+	@Test
+	public void notImplementedWithoutVersions() {
+		EnvironmentWatcher watcher = new EnvironmentWatcher(
+				Mockito.mock(EnvironmentRepository.class));
+		assertEquals(HttpStatus.NOT_IMPLEMENTED,
+				getResult(watcher.watch("foo", "default", "master", "v1"))
+						.getStatusCode());
+	}
+
+	@Test
+	public void asyncRequest() throws Exception {
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v1");
+		Mockito.when(this.repository.getDefaultLabel()).thenReturn("master");
+		EnvironmentController controller = new EnvironmentController(this.repository,
+				null);
+		controller.setWatcher(this.watcher);
+		this.watcher.setInterval(10);
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+		MvcResult result = mvc
+				.perform(
+						MockMvcRequestBuilders.get("/foo/default/master/watch").param(
+								"version", "v1"))
+				.andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v2");
+		mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(
+						MockMvcResultMatchers.content().string("{\"version\":\"v2\"}"));
+	}
+
+	@Test
+	public void streamsNewVersions() throws Exception {
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v1");
+		Mockito.when(this.repository.getDefaultLabel()).thenReturn("master");
+		EnvironmentController controller = new EnvironmentController(this.repository,
+				null);
+		controller.setWatcher(this.watcher);
+		this.watcher.setInterval(60000);
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+		MvcResult first = mvc
+				.perform(MockMvcRequestBuilders.get("/foo/default/master/events"))
+				.andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+		MvcResult second = mvc
+				.perform(MockMvcRequestBuilders.get("/foo/default/master/events"))
+				.andExpect(MockMvcResultMatchers.request().asyncStarted()).andReturn();
+		assertEquals(2, this.watcher.getSubscriberCount());
+		String content = first.getResponse().getContentAsString();
+		assertTrue("Wrong content: " + content, content.contains("event:version\nid:v1\n"));
+		assertTrue("Wrong content: " + content, content.contains("\"label\":\"master\""));
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v2");
+		this.watcher.check();
+		assertTrue(first.getResponse().getContentAsString().contains("id:v2\n"));
+		assertTrue(second.getResponse().getContentAsString().contains("id:v2\n"));
+		// Once when each stream opened, once for both of them
+		Mockito.verify(this.repository, Mockito.times(3)).getLocalVersion("foo", "default",
+				"master");
+		this.watcher.check();
+		assertEquals(1, StringUtils.countOccurrencesOf(first.getResponse()
+				.getContentAsString(), "id:v2"));
+	}
+
+	@Test
+	public void streamNotOpenedForUnknownLabel() throws Exception {
+		Mockito.when(this.repository.getDefaultLabel()).thenReturn("master");
+		Mockito.when(this.repository.findOne("foo", "default", "nope")).thenThrow(
+				new NoSuchLabelException("No such label: nope"));
+		EnvironmentController controller = new EnvironmentController(this.repository,
+				null);
+		controller.setWatcher(this.watcher);
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+		mvc.perform(MockMvcRequestBuilders.get("/foo/default/nope/events"))
+				.andExpect(MockMvcResultMatchers.status().isNotFound());
+		assertEquals(0, this.watcher.getSubscriberCount());
+	}
+
+	@Test
+	public void loadsEnvironmentIfVersionNotKnownYet() {
+		Environment environment = new Environment("foo", "default");
+		environment.setVersion("v1");
+		Mockito.when(this.repository.findOne("foo", "default", "master")).thenReturn(
+				environment);
+		this.watcher.setInterval(60000);
+		DeferredResult<ResponseEntity<Map<String, String>>> result = this.watcher
+				.watch("foo", "default", "master", "v1");
+		assertFalse(result.hasResult());
+		assertEquals(1, this.watcher.getWatchCount());
+	}
+
+	@Test
+	public void checksWhenRepositoryIsFetched() throws Exception {
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v1");
+		this.watcher.setInterval(60000);
+		DeferredResult<ResponseEntity<Map<String, String>>> result = this.watcher
+				.watch("foo", "default", "master", "v1");
+		Mockito.when(this.repository.getLocalVersion("foo", "default", "master")).thenReturn(
+				"v2");
+		this.watcher.onApplicationEvent(new RepositoryFetchedEvent(this.repository));
+		long timeout = System.currentTimeMillis() + 5000;
+		while (!result.hasResult() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals("v2", getResult(result).getBody().get("version"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private ResponseEntity<Map<String, String>> getResult(
+			DeferredResult<ResponseEntity<Map<String, String>>> result) {
+		return (ResponseEntity<Map<String, String>>) result.getResult();
+	}
+
+}
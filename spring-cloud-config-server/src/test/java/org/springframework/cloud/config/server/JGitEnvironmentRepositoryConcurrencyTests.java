@@ -18,10 +18,12 @@ package org.springframework.cloud.config.server;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -90,6 +92,34 @@ public class JGitEnvironmentRepositoryConcurrencyTests {
 		assertEquals("master", environment.getLabel());
 	}
 
+	@Test
+	public void noCheckoutMixedLabels() throws Exception {
+		String uri = ConfigServerTestUtils.prepareLocalRepo();
+		this.context = new SpringApplicationBuilder(TestConfiguration.class).web(false)
+				.properties("spring.cloud.config.server.git.uri:" + uri,
+						"spring.cloud.config.server.git.noCheckout:true").run();
+		final EnvironmentRepository repository = this.context
+				.getBean(EnvironmentRepository.class);
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		List<Future<Boolean>> tasks = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < 30; i++) {
+			final String label = i % 2 == 0 ? "master" : "raw";
+			tasks.add(threads.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					Environment environment = repository.findOne("bar", "staging",
+							label);
+					return environment.getPropertySources().get(1).getSource()
+							.containsKey("raw") == "raw".equals(label);
+				}
+			}));
+		}
+		for (Future<Boolean> future : tasks) {
+			assertTrue(future.get());
+		}
+		threads.shutdown();
+	}
+
 	@Configuration
 	@Import({ PropertyPlaceholderAutoConfiguration.class,
 		EnvironmentRepositoryConfiguration.class })
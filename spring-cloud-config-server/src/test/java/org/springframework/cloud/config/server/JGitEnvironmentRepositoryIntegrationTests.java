@@ -103,6 +103,33 @@ public class JGitEnvironmentRepositoryIntegrationTests {
 				.get("foo"));
 	}
 
+	@Test
+	public void cachedUntilNewCommit() throws Exception {
+		ConfigServerTestUtils.prepareLocalRepo();
+		String uri = ConfigServerTestUtils.copyLocalRepo("config-copy");
+		// Not a file: URI, so it is cloned and only committed changes are served
+		this.context = new SpringApplicationBuilder(TestConfiguration.class).web(false)
+				.run("--spring.cloud.config.server.git.uri="
+						+ ResourceUtils.getFile(uri).getAbsolutePath(),
+						"--spring.cloud.config.server.cache.enabled=true");
+		EnvironmentRepository repository = this.context
+				.getBean(EnvironmentRepository.class);
+		assertTrue(repository instanceof CachingEnvironmentRepository);
+		Environment environment = repository.findOne("bar", "staging", "master");
+		assertEquals("bar", environment.getPropertySources().get(0).getSource()
+				.get("foo"));
+		Git git = Git.open(ResourceUtils.getFile(uri).getAbsoluteFile());
+		git.checkout().setName("master").call();
+		StreamUtils.copy("foo: foo", Charset.defaultCharset(), new FileOutputStream(
+				ResourceUtils.getFile(uri + "/bar.properties")));
+		git.add().addFilepattern("bar.properties").call();
+		git.commit().setMessage("Updated for cache").call();
+		environment = repository.findOne("bar", "staging", "master");
+		assertEquals("foo", environment.getPropertySources().get(0).getSource()
+				.get("foo"));
+		assertEquals(2, ((CachingEnvironmentRepository) repository).size());
+	}
+
 	@Test
 	public void nested() throws IOException {
 		String uri = ConfigServerTestUtils.prepareLocalRepo("another-config-repo");
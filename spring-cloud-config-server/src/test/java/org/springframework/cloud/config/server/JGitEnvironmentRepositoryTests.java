@@ -20,17 +20,28 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.TransportException;
 import org.eclipse.jgit.util.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.ConfigServerTestUtils;
 import org.springframework.cloud.config.server.JGitEnvironmentRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StreamUtils;
 
 /**
  * @author Dave Syer
@@ -60,6 +71,8 @@ public class JGitEnvironmentRepositoryTests {
 		assertEquals(2, environment.getPropertySources().size());
 		assertEquals(repository.getUri() + "/bar.properties", environment
 				.getPropertySources().get(0).getName());
+		assertEquals(repository.getVersion("bar", "staging", "master"),
+				environment.getVersion());
 	}
 
 	@Test
@@ -126,6 +139,362 @@ public class JGitEnvironmentRepositoryTests {
 				.getPropertySources().get(0).getName());
 	}
 	
+	@Test
+	public void noCheckoutSameAsCheckout() throws Exception {
+		for (String label : new String[] { "master", "raw", "foo" }) {
+			repository.setNoCheckout(false);
+			Environment expected = repository.findOne("bar", "staging", label);
+			repository.setNoCheckout(true);
+			Environment environment = repository.findOne("bar", "staging", label);
+			assertEquals(label, environment.getLabel());
+			// The working tree of a local repository might not match any commit
+			assertNull(expected.getVersion());
+			assertNotNull(environment.getVersion());
+			assertEquals(expected.getPropertySources().size(), environment
+					.getPropertySources().size());
+			for (int i = 0; i < expected.getPropertySources().size(); i++) {
+				assertEquals(expected.getPropertySources().get(i).getName(), environment
+						.getPropertySources().get(i).getName());
+				assertEquals(expected.getPropertySources().get(i).getSource(),
+						environment.getPropertySources().get(i).getSource());
+			}
+		}
+	}
+
+	@Test
+	public void findAllSameAsFindOne() throws Exception {
+		for (boolean noCheckout : new boolean[] { false, true }) {
+			repository.setNoCheckout(noCheckout);
+			List<Environment> environments = repository.findAll(Arrays.asList(
+					new Environment("bar", new String[] { "staging" }, "master"),
+					new Environment("foo", new String[] { "development" }, "raw"),
+					new Environment("foo", new String[] { "staging", "other" }, "master")));
+			assertEquals(3, environments.size());
+			assertSameEnvironment(repository.findOne("bar", "staging", "master"),
+					environments.get(0));
+			assertSameEnvironment(repository.findOne("foo", "development", "raw"),
+					environments.get(1));
+			assertSameEnvironment(repository.findOne("foo", "staging,other", "master"),
+					environments.get(2));
+		}
+	}
+
+	@Test
+	public void parsedFilesSharedBetweenApplications() throws Exception {
+		repository.setNoCheckout(true);
+		Environment bar = repository.findOne("bar", "staging", "master");
+		Environment foo = repository.findOne("foo", "staging", "master");
+		assertSame(getSource(bar, "/application.yml"), getSource(foo, "/application.yml"));
+		assertNotSame(getSource(bar, "/application.yml"),
+				getSource(repository.findOne("bar", "staging", "raw"), "/application.yml"));
+	}
+
+	private Map<?, ?> getSource(Environment environment, String path) {
+		for (PropertySource source : environment.getPropertySources()) {
+			if (source.getName().equals(repository.getUri() + path)) {
+				return source.getSource();
+			}
+		}
+		return null;
+	}
+
+	private void assertSameEnvironment(Environment expected, Environment environment) {
+		assertEquals(expected.getName(), environment.getName());
+		assertArrayEquals(expected.getProfiles(), environment.getProfiles());
+		assertEquals(expected.getLabel(), environment.getLabel());
+		assertEquals(expected.getVersion(), environment.getVersion());
+		assertEquals(expected.getPropertySources().size(), environment
+				.getPropertySources().size());
+		for (int i = 0; i < expected.getPropertySources().size(); i++) {
+			assertEquals(expected.getPropertySources().get(i).getName(), environment
+					.getPropertySources().get(i).getName());
+			assertEquals(expected.getPropertySources().get(i).getSource(), environment
+					.getPropertySources().get(i).getSource());
+		}
+	}
+
+	@Test
+	public void noCheckoutLeavesWorkingTreeAlone() throws Exception {
+		repository.setNoCheckout(true);
+		Git git = Git.open(ResourceUtils.getFile(repository.getUri()));
+		String branch = git.getRepository().getBranch();
+		Environment environment = repository.findOne("bar", "staging", "master");
+		assertEquals(branch, git.getRepository().getBranch());
+		assertEquals(repository.getUri() + "/application.yml", environment
+				.getPropertySources().get(1).getName());
+		assertFalse(environment.getPropertySources().get(1).getSource()
+				.containsKey("raw"));
+		environment = repository.findOne("bar", "staging", "raw");
+		assertEquals(true, environment.getPropertySources().get(1).getSource()
+				.get("raw"));
+	}
+
+	@Test
+	public void noCheckoutNested() throws IOException {
+		String uri = ConfigServerTestUtils.prepareLocalRepo("another-config-repo");
+		repository.setUri(uri);
+		repository.setSearchPaths(new String[] { "sub*" });
+		repository.setNoCheckout(true);
+		Environment environment = repository.findOne("bar", "staging", "master");
+		assertEquals(2, environment.getPropertySources().size());
+		assertEquals(repository.getUri() + "/sub/application.yml", environment
+				.getPropertySources().get(0).getName());
+	}
+
+	@Test
+	public void nestedSearchPathSameInBothModes() throws Exception {
+		File remote = prepareRemote();
+		Git git = Git.open(remote);
+		git.checkout().setName("master").call();
+		File dir = new File(remote, "config/bar");
+		dir.mkdirs();
+		StreamUtils.copy("foo: nested", Charset.defaultCharset(), new FileOutputStream(
+				new File(dir, "bar.properties")));
+		git.add().addFilepattern("config").call();
+		git.commit().setMessage("Nested config").call();
+		git.getRepository().close();
+		for (String searchPath : new String[] { "config/bar", "config/*", "*/b*" }) {
+			repository.setSearchPaths(searchPath);
+			for (boolean noCheckout : new boolean[] { false, true }) {
+				repository.setNoCheckout(noCheckout);
+				Environment environment = repository.findOne("bar", "staging", "master");
+				assertEquals(searchPath + " (noCheckout=" + noCheckout + ")",
+						repository.getUri() + "/config/bar/bar.properties", environment
+								.getPropertySources().get(0).getName());
+			}
+		}
+		// A pattern without a "/" only matches the top level (as it always did)
+		repository.setSearchPaths("*");
+		for (boolean noCheckout : new boolean[] { false, true }) {
+			repository.setNoCheckout(noCheckout);
+			assertNull(getSource(repository.findOne("bar", "staging", "master"),
+					"/config/bar/bar.properties"));
+		}
+	}
+
+	@Test(expected = NoSuchLabelException.class)
+	public void noCheckoutInvalidLabel() {
+		repository.setNoCheckout(true);
+		repository.findOne("bar", "staging", "unknownlabel");
+	}
+
+	@Test
+	public void backgroundRefreshNotFetchedOnRequest() throws Exception {
+		File remote = prepareRemote();
+		repository.setRefreshRate(3600);
+		repository.afterPropertiesSet();
+		try {
+			assertEquals("bar", findFoo("master"));
+			updateRemote(remote);
+			assertEquals("bar", findFoo("master"));
+			repository.refresh();
+			assertEquals("foo", findFoo("master"));
+		}
+		finally {
+			repository.destroy();
+		}
+	}
+
+	@Test
+	public void refreshPublishesEventWhenFetched() throws Exception {
+		File remote = prepareRemote();
+		ApplicationEventPublisher publisher = Mockito
+				.mock(ApplicationEventPublisher.class);
+		repository.setApplicationEventPublisher(publisher);
+		assertEquals("bar", findFoo("master"));
+		repository.refresh();
+		Mockito.verify(publisher, Mockito.never()).publishEvent(
+				Mockito.any(RepositoryFetchedEvent.class));
+		updateRemote(remote);
+		repository.refresh();
+		Mockito.verify(publisher).publishEvent(Mockito.any(RepositoryFetchedEvent.class));
+	}
+
+	@Test
+	public void noVersionForLocalWorkingTree() throws Exception {
+		Environment environment = repository.findOne("bar", "staging", "master");
+		assertNull(environment.getVersion());
+		assertNull(repository.getVersion("bar", "staging", "master"));
+		assertNull(repository.getLocalVersion("bar", "staging", "master"));
+	}
+
+	@Test
+	public void localVersionDoesNotFetch() throws Exception {
+		File remote = prepareRemote();
+		assertNull(repository.getLocalVersion("bar", "staging", "master"));
+		String version = repository.findOne("bar", "staging", "master").getVersion();
+		updateRemote(remote);
+		assertEquals(version, repository.getLocalVersion("bar", "staging", "master"));
+		repository.refresh();
+		assertNotEquals(version, repository.getLocalVersion("bar", "staging", "master"));
+	}
+
+	@Test
+	public void versionFromRemoteIfFetchedOnRequest() throws Exception {
+		File remote = prepareRemote();
+		String version = repository.findOne("bar", "staging", "master").getVersion();
+		assertEquals(version, repository.getVersion("bar", "staging", "master"));
+		updateRemote(remote);
+		String latest = repository.getVersion("bar", "staging", "master");
+		assertNotEquals(version, latest);
+		// Only looked, did not fetch
+		assertEquals(version, repository.getLocalVersion("bar", "staging", "master"));
+		assertEquals(latest, repository.findOne("bar", "staging", "master")
+				.getVersion());
+	}
+
+	@Test
+	public void localVersionIfRefreshedInBackground() throws Exception {
+		File remote = prepareRemote();
+		repository.setRefreshRate(3600);
+		String version = repository.findOne("bar", "staging", "master").getVersion();
+		updateRemote(remote);
+		assertEquals(version, repository.getVersion("bar", "staging", "master"));
+	}
+
+	@Test
+	public void backgroundRefreshNoCheckout() throws Exception {
+		File remote = prepareRemote();
+		repository.setRefreshRate(3600);
+		repository.setNoCheckout(true);
+		repository.afterPropertiesSet();
+		try {
+			assertEquals("bar", findFoo("master"));
+			updateRemote(remote);
+			assertEquals("bar", findFoo("master"));
+			repository.refresh();
+			assertEquals("foo", findFoo("master"));
+		}
+		finally {
+			repository.destroy();
+		}
+	}
+
+	@Test
+	public void backgroundRefreshForceFetchOnRequest() throws Exception {
+		File remote = prepareRemote();
+		repository.setRefreshRate(3600);
+		repository.setForceFetchOnRequest(true);
+		repository.afterPropertiesSet();
+		try {
+			assertEquals("bar", findFoo("master"));
+			updateRemote(remote);
+			assertEquals("foo", findFoo("master"));
+		}
+		finally {
+			repository.destroy();
+		}
+	}
+
+	@Test
+	public void backgroundRefreshFetches() throws Exception {
+		File remote = prepareRemote();
+		repository.setRefreshRate(1);
+		repository.afterPropertiesSet();
+		try {
+			assertEquals("bar", findFoo("master"));
+			updateRemote(remote);
+			long timeout = System.currentTimeMillis() + 10000;
+			while (!"foo".equals(findFoo("master"))
+					&& System.currentTimeMillis() < timeout) {
+				Thread.sleep(100);
+			}
+			assertEquals("foo", findFoo("master"));
+		}
+		finally {
+			repository.destroy();
+		}
+	}
+
+	@Test
+	public void cloneLabelsFetchesOtherLabelsOnDemand() throws Exception {
+		prepareRemote();
+		repository.setCloneLabels("master");
+		assertEquals("bar", findFoo("master"));
+		assertNull(getLocalRef("refs/remotes/origin/raw"));
+		assertEquals("raw", repository.findOne("bar", "staging", "raw").getLabel());
+		assertNotNull(getLocalRef("refs/remotes/origin/raw"));
+		assertEquals("foo", repository.findOne("bar", "staging", "foo").getLabel());
+		assertNotNull(getLocalRef("refs/tags/foo"));
+	}
+
+	@Test(expected = NoSuchLabelException.class)
+	public void cloneLabelsInvalidLabel() throws Exception {
+		prepareRemote();
+		repository.setCloneLabels("master");
+		repository.findOne("bar", "staging", "unknownlabel");
+	}
+
+	@Test
+	public void bareClone() throws Exception {
+		File remote = prepareRemote();
+		repository.setBare(true);
+		assertEquals("bar", findFoo("master"));
+		assertTrue(new File(basedir, "HEAD").exists());
+		assertFalse(new File(basedir, "bar.properties").exists());
+		assertEquals("raw", repository.findOne("bar", "staging", "raw").getLabel());
+		updateRemote(remote);
+		assertEquals("foo", findFoo("master"));
+	}
+
+	@Test
+	public void bareCloneLabelsBackgroundRefresh() throws Exception {
+		File remote = prepareRemote();
+		repository.setBare(true);
+		repository.setCloneLabels("master", "foo");
+		repository.setRefreshRate(3600);
+		repository.afterPropertiesSet();
+		try {
+			assertEquals("bar", findFoo("master"));
+			assertNotNull(getLocalRef("refs/tags/foo"));
+			assertNull(getLocalRef("refs/heads/raw"));
+			updateRemote(remote);
+			assertEquals("bar", findFoo("master"));
+			repository.refresh();
+			assertEquals("foo", findFoo("master"));
+			assertEquals("raw", repository.findOne("bar", "staging", "raw").getLabel());
+			assertNotNull(getLocalRef("refs/heads/raw"));
+		}
+		finally {
+			repository.destroy();
+		}
+	}
+
+	private Object getLocalRef(String name) throws IOException {
+		Git git = Git.open(basedir);
+		try {
+			return git.getRepository().getRef(name);
+		}
+		finally {
+			git.getRepository().close();
+		}
+	}
+
+	private File prepareRemote() throws IOException {
+		ConfigServerTestUtils.deleteLocalRepo("config-copy");
+		File remote = ResourceUtils.getFile(ConfigServerTestUtils
+				.copyLocalRepo("config-copy")).getAbsoluteFile();
+		// Not a file: URI so it is cloned (and fetched) like a real remote
+		repository.setUri(remote.getAbsolutePath());
+		repository.setBasedir(basedir);
+		return remote;
+	}
+
+	private void updateRemote(File remote) throws Exception {
+		Git git = Git.open(remote);
+		git.checkout().setName("master").call();
+		StreamUtils.copy("foo: foo", Charset.defaultCharset(), new FileOutputStream(
+				new File(remote, "bar.properties")));
+		git.add().addFilepattern("bar.properties").call();
+		git.commit().setMessage("Updated for refresh").call();
+		git.getRepository().close();
+	}
+
+	private Object findFoo(String label) {
+		return repository.findOne("bar", "staging", label).getPropertySources().get(0)
+				.getSource().get("foo");
+	}
+
 	@Test
 	public void uriWithHostOnly() throws Exception {
 		repository.setUri("git://localhost");
@@ -194,6 +563,44 @@ public class JGitEnvironmentRepositoryTests {
 		verify(mockGit, times(0)).fetch();
 	}
 
+	@Test
+	public void afterPropertiesSet_CloneFailsNotRequired_NoException()
+			throws Exception {
+		Git mockGit = mock(Git.class);
+		CloneCommand mockCloneCommand = mock(CloneCommand.class);
+
+		when(mockCloneCommand.setURI(anyString())).thenReturn(mockCloneCommand);
+		when(mockCloneCommand.setDirectory(any(File.class))).thenReturn(mockCloneCommand);
+		when(mockCloneCommand.call()).thenThrow(new TransportException("Planned"));
+
+		JGitEnvironmentRepository envRepository = new JGitEnvironmentRepository(
+				environment);
+		envRepository.setGitFactory(new MockGitFactory(mockGit, mockCloneCommand));
+		envRepository.setUri("http://somegitserver/somegitrepo");
+		envRepository.setCloneOnStart(true);
+		envRepository.afterPropertiesSet();
+		verify(mockCloneCommand, times(1)).call();
+		assertFalse(envRepository.isCloning());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void afterPropertiesSet_CloneFailsRequired_Exception() throws Exception {
+		Git mockGit = mock(Git.class);
+		CloneCommand mockCloneCommand = mock(CloneCommand.class);
+
+		when(mockCloneCommand.setURI(anyString())).thenReturn(mockCloneCommand);
+		when(mockCloneCommand.setDirectory(any(File.class))).thenReturn(mockCloneCommand);
+		when(mockCloneCommand.call()).thenThrow(new TransportException("Planned"));
+
+		JGitEnvironmentRepository envRepository = new JGitEnvironmentRepository(
+				environment);
+		envRepository.setGitFactory(new MockGitFactory(mockGit, mockCloneCommand));
+		envRepository.setUri("http://somegitserver/somegitrepo");
+		envRepository.setCloneOnStart(true);
+		envRepository.setRequired(true);
+		envRepository.afterPropertiesSet();
+	}
+
 	class MockGitFactory extends JGitEnvironmentRepository.JGitFactory {
 		
 		private Git mockGit;
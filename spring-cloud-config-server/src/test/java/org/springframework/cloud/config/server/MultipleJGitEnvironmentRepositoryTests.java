@@ -16,9 +16,14 @@
 package org.springframework.cloud.config.server;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.junit.Before;
@@ -28,6 +33,7 @@ import org.springframework.cloud.config.server.ConfigServerTestUtils;
 import org.springframework.cloud.config.server.MultipleJGitEnvironmentRepository;
 import org.springframework.cloud.config.server.MultipleJGitEnvironmentRepository.PatternMatchingJGitEnvironmentRepository;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.ResourceUtils;
 
 /**
  * 
@@ -118,6 +124,71 @@ public class MultipleJGitEnvironmentRepositoryTests {
 				.getPropertySources().get(0).getName());
 	}	
 
+	@Test
+	public void mappingRepoAddedAtRuntime() throws Exception {
+		repository.afterPropertiesSet();
+		Environment environment = repository.findOne("test2-svc", "staging", "master");
+		assertEquals(repository.getUri() + "/application.yml", environment
+				.getPropertySources().get(0).getName());
+		String test1Uri = ConfigServerTestUtils.prepareLocalRepo("test1-config-repo");
+		Map<String, PatternMatchingJGitEnvironmentRepository> before = repository
+				.getRepos();
+		repository.setRepos(Collections.singletonMap("test2",
+				createRepository("test2", "test2-*", test1Uri)));
+		// Swapped for a new map, so anything iterating the old one is not disturbed
+		assertFalse(before.containsKey("test2"));
+		assertTrue(repository.getRepos().containsKey("test2"));
+		environment = repository.findOne("test2-svc", "staging", "master");
+		assertEquals(getUri("test2-*") + "/application.yml", environment
+				.getPropertySources().get(0).getName());
+	}
+
+	@Test
+	public void cloneOnStartInParallel() throws Exception {
+		String remote = ResourceUtils.getFile(
+				ConfigServerTestUtils.prepareLocalRepo("test1-config-repo"))
+				.getAbsolutePath();
+		Map<String, PatternMatchingJGitEnvironmentRepository> repos = new LinkedHashMap<String, PatternMatchingJGitEnvironmentRepository>();
+		for (int i = 0; i < 4; i++) {
+			PatternMatchingJGitEnvironmentRepository repo = createRepository("clone" + i,
+					"clone" + i + "-*", remote);
+			repo.setCloneOnStart(true);
+			repo.setBasedir(new File("target/clones/clone" + i));
+			repos.put("clone" + i, repo);
+		}
+		repository.setRepos(repos);
+		repository.setCloneParallelism(2);
+		repository.afterPropertiesSet();
+		for (int i = 0; i < 4; i++) {
+			Environment environment = repository.findOne("clone" + i + "-svc",
+					"staging", "master");
+			assertEquals(repos.get("clone" + i).getUri() + "/application.yml",
+					environment.getPropertySources().get(0).getName());
+		}
+		assertFalse(repository.isCloning());
+	}
+
+	@Test
+	public void cloneOnStartFailureIgnoredIfNotRequired() throws Exception {
+		PatternMatchingJGitEnvironmentRepository repo = createRepository("missing",
+				"missing-*", new File("target/no-such-repo").getAbsolutePath());
+		repo.setCloneOnStart(true);
+		repository.setRepos(Collections.singletonMap("missing", repo));
+		repository.afterPropertiesSet();
+		Environment environment = repository.findOne("test1-svc", "staging", "master");
+		assertEquals(2, environment.getPropertySources().size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void cloneOnStartFailureFatalIfRequired() throws Exception {
+		PatternMatchingJGitEnvironmentRepository repo = createRepository("missing",
+				"missing-*", new File("target/no-such-repo").getAbsolutePath());
+		repo.setCloneOnStart(true);
+		repo.setRequired(true);
+		repository.setRepos(Collections.singletonMap("missing", repo));
+		repository.afterPropertiesSet();
+	}
+
 	private String getUri(String pattern) {
 		String uri = null;
 		
@@ -17,8 +17,12 @@ package org.springframework.cloud.config.server;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.NativeEnvironmentRepository;
 import org.springframework.core.env.StandardEnvironment;
 
@@ -35,6 +39,23 @@ public class NativeEnvironmentRepositoryTests {
 	public void vanilla() {
 		Environment environment = repository.findOne("foo", "development", "master");
 		assertEquals(2, environment.getPropertySources().size());
+		assertNotNull(environment.getVersion());
+	}
+
+	@Test
+	public void versionIsContentHash() {
+		String version = repository.findOne("foo", "development", "master")
+				.getVersion();
+		assertEquals(version, repository.findOne("foo", "development", "master")
+				.getVersion());
+		assertNotEquals(version, repository.findOne("foo", "default", "master")
+				.getVersion());
+	}
+
+	@Test
+	public void noVersionIfNotVersioned() {
+		repository.setVersioned(false);
+		assertNull(repository.findOne("foo", "development", "master").getVersion());
 	}
 
 	@Test
@@ -69,4 +90,62 @@ public class NativeEnvironmentRepositoryTests {
 				environment.getPropertySources().get(1).getSource().get("foo"));
 	}
 
+	@Test
+	public void profileDocumentsAndIncludes() {
+		repository.setSearchLocations("classpath:/test");
+		Environment environment = repository.findOne("bar", "development", "master");
+		assertEquals(3, environment.getPropertySources().size());
+		assertEquals("classpath:/test/bar.yml#development", environment
+				.getPropertySources().get(0).getName());
+		assertEquals("classpath:/test/bar.yml#included", environment
+				.getPropertySources().get(1).getName());
+	}
+
+	@Test
+	public void sameAsSpringApplication() {
+		assertSameAsSpringApplication("foo", "development", "master");
+		assertSameAsSpringApplication("foo", "default", "master");
+	}
+
+	@Test
+	public void prefixedSameAsSpringApplication() {
+		repository.setSearchLocations("classpath:/test");
+		assertSameAsSpringApplication("foo", "development", "dev");
+		assertSameAsSpringApplication("bar", "development,cloud", "master");
+		assertSameAsSpringApplication("bar", "cloud,development", "dev");
+		assertSameAsSpringApplication("application", "default", "master");
+	}
+
+	@Test
+	public void prefixedWithFileSameAsSpringApplication() {
+		repository.setSearchLocations("file:./src/test/resources/test",
+				"classpath:/config-repo/application.yml");
+		assertSameAsSpringApplication("bar", "cloud", "dev");
+		assertSameAsSpringApplication("foo", "development", "master");
+	}
+
+	private void assertSameAsSpringApplication(String application, String profile,
+			String label) {
+		repository.setUseSpringApplication(false);
+		Environment direct = repository.findOne(application, profile, label);
+		repository.setUseSpringApplication(true);
+		Environment expected = repository.findOne(application, profile, label);
+		assertEquals(expected.getName(), direct.getName());
+		assertArrayEquals(expected.getProfiles(), direct.getProfiles());
+		assertEquals(expected.getLabel(), direct.getLabel());
+		assertEquals(names(expected), names(direct));
+		for (int i = 0; i < expected.getPropertySources().size(); i++) {
+			assertEquals(expected.getPropertySources().get(i).getSource(), direct
+					.getPropertySources().get(i).getSource());
+		}
+	}
+
+	private List<String> names(Environment environment) {
+		List<String> names = new ArrayList<String>();
+		for (PropertySource source : environment.getPropertySources()) {
+			names.add(source.getName());
+		}
+		return names;
+	}
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ */
+public class PatternIndexTests {
+
+	private PatternIndex<String> index = new PatternIndex<String>();
+
+	@Test
+	public void exact() {
+		this.index.add(new String[] { "foo" }, "one");
+		assertEquals("one", this.index.find("foo"));
+		assertNull(this.index.find("foobar"));
+		assertNull(this.index.find("fo"));
+		assertNull(this.index.find(null));
+	}
+
+	@Test
+	public void prefix() {
+		this.index.add(new String[] { "team-a-*" }, "a");
+		this.index.add(new String[] { "team-b-*" }, "b");
+		assertEquals("a", this.index.find("team-a-foo"));
+		assertEquals("b", this.index.find("team-b-"));
+		assertNull(this.index.find("team-c-foo"));
+	}
+
+	@Test
+	public void wildcards() {
+		this.index.add(new String[] { "*-dev", "x*y*z" }, "one");
+		assertEquals("one", this.index.find("foo-dev"));
+		assertEquals("one", this.index.find("x123y456z"));
+		assertNull(this.index.find("x123z"));
+		assertNull(this.index.find("foo-prod"));
+	}
+
+	@Test
+	public void firstMatchWins() {
+		this.index.add(new String[] { "foo*" }, "one");
+		this.index.add(new String[] { "foo" }, "two");
+		this.index.add(new String[] { "*" }, "three");
+		assertEquals("one", this.index.find("foo"));
+		assertEquals("three", this.index.find("bar"));
+	}
+
+	@Test
+	public void laterWildcardDoesNotOverrideEarlierPrefix() {
+		this.index.add(new String[] { "*" }, "one");
+		this.index.add(new String[] { "foo*" }, "two");
+		assertEquals("one", this.index.find("foo"));
+	}
+
+	@Test
+	public void longestPrefixNotPreferred() {
+		this.index.add(new String[] { "f*" }, "one");
+		this.index.add(new String[] { "foo*" }, "two");
+		assertEquals("one", this.index.find("foobar"));
+	}
+
+	@Test
+	public void rememberedResultsForgottenWhenAdding() {
+		assertNull(this.index.find("foo"));
+		this.index.add(new String[] { "foo" }, "one");
+		assertEquals("one", this.index.find("foo"));
+	}
+
+	@Test
+	public void nullPatterns() {
+		this.index.add(null, "one");
+		this.index.add(new String[] { null, "foo" }, "two");
+		assertEquals("two", this.index.find("foo"));
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+
+public class PropertyTreeConverterTests {
+
+	@Test
+	public void nestedKeys() throws Exception {
+		assertSameAsBinding(true, "spring.application.name", "app", "server.port",
+				8080, "a.b.c", "d", "a.b.e", true);
+	}
+
+	@Test
+	public void lists() throws Exception {
+		assertSameAsBinding(true, "a.a", "1", "a.b[0]", "x", "a.b[1]", "y");
+		assertSameAsBinding(true, "a[2]", "z");
+		assertSameAsBinding(true, "a[10]", "x", "a[9]", "y");
+	}
+
+	@Test
+	public void listsOfMaps() throws Exception {
+		assertSameAsBinding(true, "a[0].b", "1", "a[0].c", "2", "a[1].b", "3");
+		assertSameAsBinding(true, "a[0]", "x", "a[1].b", "y", "a[3]", "z");
+	}
+
+	@Test
+	public void namesAreNotChanged() throws Exception {
+		assertSameAsBinding(true, "Foo.Bar", "1", "foo-bar.baz_qux", "2", "FOO_BAR",
+				"3", "a b.c", "4", "a.0.b", "5", "a.1", "6");
+	}
+
+	@Test
+	public void parentAndChildAreBound() throws Exception {
+		assertSameAsBinding(false, "a", "x", "a.b", "y");
+		assertSameAsBinding(false, "a", "y", "a[0]", "x");
+	}
+
+	@Test
+	public void unusualKeysAreBound() throws Exception {
+		assertSameAsBinding(false, "a..b", "1");
+		assertSameAsBinding(false, ".a", "1");
+		assertSameAsBinding(false, "a[0].b[0]", "1", "a[0].b[1]", "2");
+		assertSameAsBinding(false, "a[01]", "1");
+	}
+
+	@Test
+	public void sameAsBindingForRandomKeys() throws Exception {
+		Random random = new Random(0);
+		String[] names = { "a", "b", "B", "c-d", "e_f", "0" };
+		for (int run = 0; run < 2000; run++) {
+			Map<String, Object> properties = new TreeMap<String, Object>();
+			int count = 1 + random.nextInt(6);
+			for (int i = 0; i < count; i++) {
+				StringBuilder key = new StringBuilder();
+				int depth = 1 + random.nextInt(3);
+				for (int j = 0; j < depth; j++) {
+					if (j > 0) {
+						key.append(".");
+					}
+					key.append(names[random.nextInt(names.length)]);
+					if (random.nextInt(4) == 0) {
+						key.append("[").append(random.nextInt(3)).append("]");
+					}
+				}
+				properties.put(key.toString(), random.nextBoolean() ? "v" + i : i);
+			}
+			Map<String, Object> built = PropertyTreeConverter.build(properties);
+			if (built == null) {
+				continue;
+			}
+			Map<String, Object> bound = PropertyTreeConverter.bind(properties);
+			assertEquals(properties.toString(), describe(bound), describe(built));
+		}
+	}
+
+	private void assertSameAsBinding(boolean direct, Object... entries)
+			throws Exception {
+		Map<String, Object> properties = new TreeMap<String, Object>();
+		for (int i = 0; i < entries.length; i += 2) {
+			properties.put((String) entries[i], entries[i + 1]);
+		}
+		Map<String, Object> built = PropertyTreeConverter.build(properties);
+		if (direct) {
+			assertNotNull(built);
+		}
+		else {
+			assertNull(built);
+		}
+		Map<String, Object> bound;
+		try {
+			bound = PropertyTreeConverter.bind(properties);
+		}
+		catch (Exception e) {
+			return;
+		}
+		assertEquals(describe(bound), describe(PropertyTreeConverter.convert(properties)));
+	}
+
+	/**
+	 * The YAML output (which depends on the order of the keys) and the types of the
+	 * values.
+	 */
+	private String describe(Map<String, Object> map) {
+		return new Yaml().dumpAsMap(map) + types(map);
+	}
+
+	private String types(Object value) {
+		StringBuilder builder = new StringBuilder();
+		if (value instanceof Map) {
+			builder.append("{");
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				builder.append(entry.getKey()).append("=")
+						.append(types(entry.getValue())).append(",");
+			}
+			builder.append("}");
+		}
+		else if (value instanceof List) {
+			builder.append("[");
+			for (Object item : (List<?>) value) {
+				builder.append(types(item)).append(",");
+			}
+			builder.append("]");
+		}
+		else {
+			builder.append(value.getClass().getName());
+		}
+		return builder.toString();
+	}
+
+}
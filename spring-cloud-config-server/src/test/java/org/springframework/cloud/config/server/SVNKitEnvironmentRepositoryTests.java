@@ -54,6 +54,7 @@ public class SVNKitEnvironmentRepositoryTests {
 	public void vanilla() {
 		Environment environment = repository.findOne("bar", "staging", "trunk");
 		assertEquals(2, environment.getPropertySources().size());
+		assertTrue(Long.valueOf(environment.getVersion()) > 0);
 		assertTrue(environment.getPropertySources().get(0).getName()
 				.contains("bar.properties"));
 		assertTrue(environment.getPropertySources().get(1).getName()
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.yaml.snakeyaml.DumperOptions.FlowStyle;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.Tag;
+
+public class YamlRendererTests {
+
+	private YamlRenderer renderer = new YamlRenderer();
+
+	@Test
+	public void sameAsYaml() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("a", "b");
+		map.put("c", Arrays.<Object> asList("d", 1, true));
+		Map<String, Object> nested = new LinkedHashMap<String, Object>();
+		nested.put("f", "multi\nline");
+		nested.put("g", "");
+		map.put("e", nested);
+		assertSame(map, Tag.MAP);
+		assertSame(new LinkedHashMap<String, Object>(), Tag.MAP);
+		assertSame(Arrays.asList("a", "b"), Tag.SEQ);
+		assertSame(Arrays.asList(map, nested), Tag.SEQ);
+		assertSame("foo", Tag.STR);
+		assertSame(123, Tag.STR);
+	}
+
+	@Test
+	public void concurrentRendering() throws Exception {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < 100; i++) {
+			map.put("key" + i, Arrays.asList("value" + i, i));
+		}
+		final String expected = new Yaml().dumpAsMap(map);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 40; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return YamlRendererTests.this.renderer.render(map, Tag.MAP);
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				assertEquals(expected, result.get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private void assertSame(Object value, Tag tag) {
+		assertEquals(new Yaml().dumpAs(value, tag, FlowStyle.BLOCK),
+				this.renderer.render(value, tag));
+		// Again with the same instance
+		assertEquals(new Yaml().dumpAs(value, tag, FlowStyle.BLOCK),
+				this.renderer.render(value, tag));
+	}
+
+}
@@ -18,9 +18,16 @@ package org.springframework.cloud.config.server.encryption;
 
 import static java.util.UUID.randomUUID;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.springframework.cloud.config.environment.Environment;
@@ -66,4 +73,88 @@ public class CipherEnvironmentEncryptorTests {
 		assertEquals(secret, this.encryptor.decrypt(environment).getPropertySources().get(0).getSource().get(environment.getName()));
 	}
 
+	@Test
+	public void shouldShareSourceWithoutCipher() {
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a", Collections.<Object, Object> singletonMap(
+				"foo", "bar")));
+		assertSame(environment.getPropertySources().get(0), this.encryptor
+				.decrypt(environment).getPropertySources().get(0));
+	}
+
+	@Test
+	public void shouldCacheDecryptedValues() {
+		final AtomicInteger count = new AtomicInteger();
+		CipherEnvironmentEncryptor encryptor = new CipherEnvironmentEncryptor(
+				new TextEncryptorLocator() {
+					@Override
+					public TextEncryptor locate(Map<String, String> keys) {
+						count.incrementAndGet();
+						return CipherEnvironmentEncryptorTests.this.textEncryptor;
+					}
+				});
+		encryptor.setCacheSize(10);
+		String cipher = this.textEncryptor.encrypt("secret");
+		Environment environment = new Environment("name", "profile", "label");
+		Map<Object, Object> source = new LinkedHashMap<Object, Object>();
+		source.put("foo", "{cipher}" + cipher);
+		source.put("bar", "{cipher}{key:other}" + cipher);
+		environment.add(new PropertySource("a", source));
+		for (int i = 0; i < 3; i++) {
+			Map<?, ?> result = encryptor.decrypt(environment).getPropertySources()
+					.get(0).getSource();
+			assertEquals("secret", result.get("foo"));
+			assertEquals("secret", result.get("bar"));
+		}
+		// Once for each key
+		assertEquals(2, count.get());
+		encryptor.clearCache();
+		encryptor.decrypt(environment);
+		assertEquals(4, count.get());
+	}
+
+	@Test
+	public void shouldDecryptInParallelInSameOrder() throws Exception {
+		final Set<String> threads = Collections
+				.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		CipherEnvironmentEncryptor encryptor = new CipherEnvironmentEncryptor(
+				new TextEncryptorLocator() {
+					@Override
+					public TextEncryptor locate(Map<String, String> keys) {
+						threads.add(Thread.currentThread().getName());
+						return CipherEnvironmentEncryptorTests.this.textEncryptor;
+					}
+				});
+		encryptor.setParallelism(3);
+		encryptor.setParallelThreshold(10);
+		Environment environment = new Environment("name", "profile", "label");
+		for (int i = 0; i < 3; i++) {
+			Map<Object, Object> source = new LinkedHashMap<Object, Object>();
+			for (int j = 0; j < 50; j++) {
+				source.put("plain" + j, "value" + j);
+				source.put("secret" + j, "{cipher}"
+						+ (j % 10 == 0 ? "garbage" : this.textEncryptor.encrypt("s" + j)));
+			}
+			environment.add(new PropertySource("source" + i, source));
+		}
+		try {
+			Environment parallel = encryptor.decrypt(environment);
+			assertTrue(threads.size() > 1);
+			Environment serial = this.encryptor.decrypt(environment);
+			for (int i = 0; i < 3; i++) {
+				Map<?, ?> expected = serial.getPropertySources().get(i).getSource();
+				Map<?, ?> actual = parallel.getPropertySources().get(i).getSource();
+				assertEquals(new ArrayList<Object>(expected.entrySet()),
+						new ArrayList<Object>(actual.entrySet()));
+			}
+			assertEquals("s1", parallel.getPropertySources().get(0).getSource()
+					.get("secret1"));
+			assertEquals("<n/a>", parallel.getPropertySources().get(0).getSource()
+					.get("invalid.secret0"));
+		}
+		finally {
+			encryptor.destroy();
+		}
+	}
+
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.config.server.encryption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DecryptedValueCacheTests {
+
+	private Map<String, String> keys = Collections.singletonMap("key", "mytest");
+
+	@Test
+	public void scopedByKeys() {
+		DecryptedValueCache cache = new DecryptedValueCache(10, 0);
+		cache.put(this.keys, "cipher", "foo");
+		assertEquals("foo", cache.get(this.keys, "cipher"));
+		assertNull(cache.get(Collections.singletonMap("key", "other"), "cipher"));
+		assertNull(cache.get(this.keys, "other"));
+	}
+
+	@Test
+	public void leastRecentlyUsedEvicted() {
+		DecryptedValueCache cache = new DecryptedValueCache(2, 0);
+		cache.put(this.keys, "one", "1");
+		cache.put(this.keys, "two", "2");
+		cache.get(this.keys, "one");
+		cache.put(this.keys, "three", "3");
+		assertEquals(2, cache.size());
+		assertEquals("1", cache.get(this.keys, "one"));
+		assertNull(cache.get(this.keys, "two"));
+	}
+
+	@Test
+	public void expired() throws Exception {
+		DecryptedValueCache cache = new DecryptedValueCache(10, 1);
+		cache.put(this.keys, "cipher", "foo");
+		Thread.sleep(20L);
+		assertNull(cache.get(this.keys, "cipher"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void cleared() {
+		DecryptedValueCache cache = new DecryptedValueCache(10, 0);
+		cache.put(this.keys, "cipher", "foo");
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get(this.keys, "cipher"));
+	}
+
+}
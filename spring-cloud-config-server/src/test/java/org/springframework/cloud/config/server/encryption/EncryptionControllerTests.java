@@ -18,12 +18,22 @@ package org.springframework.cloud.config.server.encryption;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.junit.Test;
 import org.springframework.cloud.config.server.ConfigServerProperties;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.crypto.encrypt.Encryptors;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.security.rsa.crypto.RsaSecretEncryptor;
@@ -121,4 +131,80 @@ public class EncryptionControllerTests {
 		assertEquals("Wrong decrypted plaintext: " + decrypt, "foo bar", decrypt);
 	}
 
+	@Test
+	public void batchJson() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		TextEncryptorLocator locator = new TextEncryptorLocator() {
+
+			private RsaSecretEncryptor encryptor = new RsaSecretEncryptor();
+
+			@Override
+			public TextEncryptor locate(Map<String, String> keys) {
+				count.incrementAndGet();
+				return this.encryptor;
+			}
+		};
+		this.controller = new EncryptionController(locator, this.properties);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.controller.encryptAll("app", "default",
+				batch(MediaType.APPLICATION_JSON, "[\"foo\",\"bar\",\"{key:mykey}spam\"]"),
+				response);
+		assertEquals("application/json;charset=UTF-8", response.getContentType());
+		// One for the installed check and one for each key
+		assertEquals(3, count.get());
+		List<?> ciphers = new ObjectMapper().readValue(response.getContentAsString(),
+				List.class);
+		assertEquals(3, ciphers.size());
+		assertTrue(ciphers.get(2).toString().startsWith("{key:mykey}"));
+		List<Object> input = new ArrayList<Object>(ciphers);
+		input.add("garbage");
+		response = new MockHttpServletResponse();
+		this.controller.decryptAll("app", "default", batch(MediaType.APPLICATION_JSON,
+				new ObjectMapper().writeValueAsString(input)), response);
+		assertEquals("[\"foo\",\"bar\",\"spam\",null]", response.getContentAsString());
+	}
+
+	@Test
+	public void batchJsonNotClosedWhenMalformed() throws Exception {
+		this.controller = new EncryptionController(new SingleTextEncryptorLocator(
+				new RsaSecretEncryptor()), this.properties);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			this.controller.encryptAll("app", "default", batch(
+					MediaType.APPLICATION_JSON, "[\"foo\",{\"bar\":\"spam\"}]"),
+					response);
+			fail("Expected HttpMessageNotReadableException");
+		}
+		catch (HttpMessageNotReadableException e) {
+			// expected
+		}
+		String body = response.getContentAsString();
+		assertTrue("Wrong body: " + body, body.startsWith("[\""));
+		assertFalse("Wrong body: " + body, body.endsWith("]"));
+	}
+
+	@Test
+	public void batchText() throws Exception {
+		this.controller = new EncryptionController(new SingleTextEncryptorLocator(
+				new RsaSecretEncryptor()), this.properties);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.controller.encryptAll(batch(MediaType.TEXT_PLAIN, "foo\n\nbar baz\n"),
+				response);
+		String[] ciphers = response.getContentAsString().split("\n");
+		assertEquals(3, ciphers.length);
+		response = new MockHttpServletResponse();
+		this.controller.decryptAll(batch(MediaType.TEXT_PLAIN, ciphers[0] + "\n"
+				+ ciphers[1] + "\n" + ciphers[2]), response);
+		assertEquals("text/plain;charset=UTF-8", response.getContentType());
+		assertEquals("foo\n\nbar baz\n", response.getContentAsString());
+	}
+
+	private MockHttpServletRequest batch(MediaType type, String body) {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/");
+		request.setContentType(type.toString());
+		request.setCharacterEncoding("UTF-8");
+		request.setContent(body.getBytes(Charset.forName("UTF-8")));
+		return request;
+	}
+
 }
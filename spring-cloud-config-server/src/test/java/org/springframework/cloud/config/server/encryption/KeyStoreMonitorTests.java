@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.encryption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.autoconfigure.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.config.EncryptionAutoConfiguration;
+import org.springframework.cloud.config.server.config.KeyStoreMonitorAutoConfiguration;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.security.rsa.crypto.KeyStoreKeyFactory;
+import org.springframework.util.FileCopyUtils;
+
+public class KeyStoreMonitorTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File keystore;
+
+	private KeyStoreTextEncryptorLocator locator;
+
+	private KeyStoreMonitor monitor;
+
+	private AnnotationConfigApplicationContext context;
+
+	@Before
+	public void init() throws Exception {
+		this.keystore = this.folder.newFile("server.jks");
+		FileCopyUtils.copy(FileCopyUtils.copyToByteArray(new ClassPathResource(
+				"server.jks").getInputStream()), this.keystore);
+		this.keystore.setLastModified(this.keystore.lastModified() - 10000);
+		this.locator = new KeyStoreTextEncryptorLocator(new KeyStoreKeyFactory(
+				new FileSystemResource(this.keystore), "letmein".toCharArray()),
+				"changeme", "mytestkey");
+		this.monitor = new KeyStoreMonitor(this.locator, new FileSystemResource(
+				this.keystore), "letmein".toCharArray());
+	}
+
+	@After
+	public void close() {
+		if (this.context != null) {
+			this.context.close();
+		}
+	}
+
+	@Test
+	public void reloadedWhenModified() {
+		TextEncryptor encryptor = this.locator.locate(Collections
+				.<String, String> emptyMap());
+		assertFalse(this.monitor.checkForChanges());
+		assertSame(encryptor,
+				this.locator.locate(Collections.<String, String> emptyMap()));
+		this.keystore.setLastModified(this.keystore.lastModified() + 5000);
+		assertTrue(this.monitor.checkForChanges());
+		assertFalse(this.monitor.checkForChanges());
+		assertNotSame(encryptor,
+				this.locator.locate(Collections.<String, String> emptyMap()));
+	}
+
+	@Test
+	public void decryptedValuesForgottenOnRefresh() {
+		final AtomicInteger count = new AtomicInteger();
+		CipherEnvironmentEncryptor encryptor = new CipherEnvironmentEncryptor(
+				new TextEncryptorLocator() {
+					@Override
+					public TextEncryptor locate(Map<String, String> keys) {
+						count.incrementAndGet();
+						return KeyStoreMonitorTests.this.locator.locate(keys);
+					}
+				});
+		encryptor.setCacheSize(10);
+		this.monitor.setEnvironmentEncryptor(encryptor);
+		String cipher = this.locator.locate(Collections.<String, String> emptyMap())
+				.encrypt("secret");
+		Environment environment = new Environment("name", "profile", "label");
+		Map<Object, Object> source = new LinkedHashMap<Object, Object>();
+		source.put("foo", "{cipher}" + cipher);
+		environment.add(new PropertySource("a", source));
+		encryptor.decrypt(environment);
+		encryptor.decrypt(environment);
+		assertEquals(1, count.get());
+		this.monitor.onApplicationEvent(new EnvironmentChangeEvent(Collections
+				.<String> emptySet()));
+		assertEquals("secret", encryptor.decrypt(environment).getPropertySources()
+				.get(0).getSource().get("foo"));
+		assertEquals(2, count.get());
+	}
+
+	@Test
+	public void monitorConfiguredWithKeyStore() {
+		this.context = new AnnotationConfigApplicationContext();
+		EnvironmentTestUtils.addEnvironment(this.context,
+				"encrypt.keyStore.location:file:" + this.keystore.getAbsolutePath(),
+				"encrypt.keyStore.password:letmein",
+				"encrypt.keyStore.alias:mytestkey", "encrypt.keyStore.secret:changeme");
+		this.context.register(PropertyPlaceholderAutoConfiguration.class,
+				EncryptionAutoConfiguration.class,
+				KeyStoreMonitorAutoConfiguration.class);
+		this.context.refresh();
+		assertNotNull(this.context.getBean(KeyStoreMonitor.class));
+	}
+
+}
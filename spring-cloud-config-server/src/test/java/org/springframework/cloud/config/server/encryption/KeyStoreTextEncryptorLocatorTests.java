@@ -17,6 +17,8 @@
 package org.springframework.cloud.config.server.encryption;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -69,4 +71,43 @@ public class KeyStoreTextEncryptorLocatorTests {
 		assertEquals("foo", encryptor.decrypt(encryptor.encrypt("foo")));
 	}
 
+	@Test
+	public void testCachedEncryptor() {
+		TextEncryptor encryptor = this.locator.locate(Collections
+				.<String, String> emptyMap());
+		assertSame(encryptor,
+				this.locator.locate(Collections.singletonMap("key", "mytestkey")));
+		assertEquals(1, this.locator.getCacheSize());
+		assertEquals(1, this.locator.getCacheHits());
+		assertEquals(1, this.locator.getCacheMisses());
+		this.locator.clearCache();
+		assertNotSame(encryptor,
+				this.locator.locate(Collections.<String, String> emptyMap()));
+		assertEquals(2, this.locator.getCacheMisses());
+		assertEquals(3, new TextEncryptorLocatorMetrics(this.locator).metrics().size());
+	}
+
+	@Test
+	public void testCachedBySecretFromLocator() {
+		final Map<String, String> secrets = new HashMap<String, String>();
+		secrets.put("changeme", "changeme");
+		this.locator.setSecretLocator(new SecretLocator() {
+			@Override
+			public char[] locate(String secret) {
+				return secrets.get(secret).toCharArray();
+			}
+		});
+		TextEncryptor encryptor = this.locator.locate(Collections
+				.<String, String> emptyMap());
+		assertSame(encryptor,
+				this.locator.locate(Collections.<String, String> emptyMap()));
+		// Same secret in the request, but it now dereferences to a different password
+		secrets.put("changeme", "letmein");
+		TextEncryptor other = this.locator.locate(Collections
+				.<String, String> singletonMap("key", "mykey"));
+		assertNotSame(encryptor, other);
+		assertEquals("foo", other.decrypt(other.encrypt("foo")));
+		assertEquals(2, this.locator.getCacheMisses());
+	}
+
 }